@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.irp.BitCounter;
+import org.harctoolbox.irp.Protocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the stages of {@link Analysis}, in the order they are used by {@link AnalyzedFrame}.
+ * The input is the sequences of "A to Z.ict" (one remote), or a multiple thereof.
+ * Every stage but the first works on an Analysis created during setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+@State(Scope.Benchmark)
+public class AnalysisBenchmark {
+
+    /**
+     * Number of sequences; 0 means the sequences of the fixture, once.
+     */
+    @Param({ "0", "1000" })
+    public int sequences;
+
+    private Map<String, IrSequence> irSequences;
+    private PropertiesSnapshot properties;
+    private double frequency;
+    private Analysis analysis;
+    private List<Protocol> protocols;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InvalidArgumentException {
+        properties = Properties.getInstance().snapshot();
+        SequenceImporter.Imported imported = SequenceImporter.importFile(Fixtures.fixture(), properties);
+        frequency = imported.getFrequencyWithDefault();
+        irSequences = sequences == 0 ? imported.getSequences() : Fixtures.sequences(sequences);
+        analysis = new Analysis(irSequences, frequency, properties);
+        protocols = analysis.getProtocols();
+    }
+
+    /**
+     * Construction of the Analyzer, which does the cleaning and the repeat finding.
+     * @return the analysis
+     * @throws InvalidArgumentException
+     */
+    @Benchmark
+    public Analysis analyzer() throws InvalidArgumentException {
+        return new Analysis(irSequences, frequency, properties);
+    }
+
+    @Benchmark
+    public String printStatistics() {
+        return analysis.statistics();
+    }
+
+    @Benchmark
+    public List<String> repeatReducedIrSignal() {
+        List<String> result = new ArrayList<>(analysis.size());
+        for (int i = 0; i < analysis.size(); i++)
+            result.add(analysis.cleanedSignal(i));
+        return result;
+    }
+
+    @Benchmark
+    public List<String> toTimingsString() {
+        List<String> result = new ArrayList<>(analysis.size());
+        for (int i = 0; i < analysis.size(); i++)
+            result.add(analysis.timingsString(i));
+        return result;
+    }
+
+    @Benchmark
+    public List<Protocol> searchBestProtocol() {
+        return analysis.searchBestProtocol();
+    }
+
+    @Benchmark
+    public List<Protocol> substituteConstantVariables() {
+        List<Protocol> result = new ArrayList<>(protocols.size());
+        protocols.forEach((protocol) -> {
+            result.add(protocol != null ? protocol.substituteConstantVariables() : null);
+        });
+        return result;
+    }
+
+    @Benchmark
+    public Map<String, BitCounter> scrutinizeProtocols() {
+        return BitCounter.scrutinizeProtocols(protocols);
+    }
+}
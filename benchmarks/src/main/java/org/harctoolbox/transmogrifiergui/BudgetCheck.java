@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JInternalFrame;
+import javax.swing.SwingUtilities;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.ircore.ModulatedIrSequence;
+
+/**
+ * Performance regression check: runs fixed synthetic workloads (import, table model, analysis, table diff, session restore),
+ * measures wall time and bytes allocated by all threads (some workloads use parallel streams), and compares them to the budgets in a file.
+ * A measurement exceeding its budget times the tolerance (default 2) is a failure, and makes the program exit with 1.
+ * A missing budget is only reported, unless --require-budgets is given, which makes it a failure too.
+ *
+ * Time budgets are relative to a calibration workload using only the JDK, recorded with the budgets as calibration.millis:
+ * on a machine that runs the calibration twice as slow, the time limits are twice as large.
+ * Allocations do not depend on the machine, and are compared as they are.
+ *
+ * Usage: BudgetCheck [--record] [--require-budgets] [--tolerance t] [--time-tolerance t] [--allocation-tolerance t] budgets-file
+ *
+ * With --record, the measured values are written to the budgets file, to establish a new baseline.
+ */
+public final class BudgetCheck {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+    private static final int IMPORT_CAPTURES = 10000;
+    private static final int MODEL_ROWS = 10000;
+    private static final int ANALYSIS_CAPTURES = 1000;
+    private static final int DIFF_ROWS = 10000;
+    private static final int DIFF_RENAME_INTERVAL = 10;
+    private static final int SESSION_TABLES = 100;
+    private static final int SESSION_ROWS = 100;
+    private static final long SEED = 4711L;
+
+    private static final int CALIBRATION_VALUES = 1000000;
+
+    private static final String MILLIS = ".millis";
+    private static final String BYTES = ".bytes";
+    private static final String CALIBRATION = "calibration";
+
+    private static void usage(int exitcode) {
+        (exitcode == 0 ? System.out : System.err).println("Usage: BudgetCheck [--record] [--require-budgets] [--tolerance t] [--time-tolerance t] [--allocation-tolerance t] budgets-file");
+        System.exit(exitcode);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        boolean record = false;
+        boolean requireBudgets = false;
+        double timeTolerance = 2.0;
+        double allocationTolerance = 2.0;
+        File budgetsFile = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--record":
+                        record = true;
+                        break;
+                    case "--require-budgets":
+                        requireBudgets = true;
+                        break;
+                    case "--tolerance":
+                        timeTolerance = allocationTolerance = Double.parseDouble(args[++i]);
+                        break;
+                    case "--time-tolerance":
+                        timeTolerance = Double.parseDouble(args[++i]);
+                        break;
+                    case "--allocation-tolerance":
+                        allocationTolerance = Double.parseDouble(args[++i]);
+                        break;
+                    case "--help":
+                        usage(0);
+                        break;
+                    default:
+                        budgetsFile = new File(args[i]);
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            usage(1);
+        }
+        if (budgetsFile == null)
+            usage(1);
+
+        try {
+            java.util.Properties budgets = new java.util.Properties();
+            if (budgetsFile.exists())
+                try (InputStream in = new FileInputStream(budgetsFile)) {
+                    budgets.load(in);
+                }
+            BudgetCheck check = new BudgetCheck();
+            Measurement calibration = check.measure(BudgetCheck::calibrate);
+            double speed = timeScale(calibration, budgets);
+            System.out.println(CALIBRATION + ": " + calibration.millis + " ms" + (Double.isNaN(speed) ? " (no recorded calibration)"
+                    : String.format(" (time limits scaled by %.2f)", speed)));
+            Map<String, Measurement> measurements = check.runAll();
+            int failures = 0;
+            for (Map.Entry<String, Measurement> kvp : measurements.entrySet())
+                failures += report(kvp.getKey(), kvp.getValue(), budgets, Double.isNaN(speed) ? timeTolerance : speed * timeTolerance,
+                        allocationTolerance, requireBudgets && !record);
+            if (record) {
+                budgets.setProperty(CALIBRATION + MILLIS, Long.toString(calibration.millis));
+                measurements.entrySet().forEach((kvp) -> {
+                    budgets.setProperty(kvp.getKey() + MILLIS, Long.toString(kvp.getValue().millis));
+                    budgets.setProperty(kvp.getKey() + BYTES, Long.toString(kvp.getValue().bytes));
+                });
+                try (OutputStream out = new FileOutputStream(budgetsFile)) {
+                    budgets.store(out, "Performance budgets, recorded by BudgetCheck --record");
+                }
+                System.out.println("Budgets recorded in " + budgetsFile);
+            } else if (failures > 0) {
+                System.out.println(failures + " budget(s) exceeded or missing. To establish a baseline, run BudgetCheck --record " + budgetsFile);
+                System.exit(1);
+            }
+        } catch (IOException | InvalidArgumentException ex) {
+            System.err.println(ex.getLocalizedMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * @return calibration time now relative to the recorded one, NaN if none recorded.
+     */
+    private static double timeScale(Measurement calibration, java.util.Properties budgets) {
+        String recorded = budgets.getProperty(CALIBRATION + MILLIS);
+        if (recorded == null || recorded.isEmpty() || Long.parseLong(recorded) <= 0L)
+            return Double.NaN;
+        return Math.max(calibration.millis, 1L) / (double) Long.parseLong(recorded);
+    }
+
+    /**
+     * Sorting and hashing of pseudo random numbers; uses only the JDK, so it only depends on the machine and the JVM.
+     */
+    private static Object calibrate() {
+        Random random = new Random(SEED);
+        double[] values = new double[CALIBRATION_VALUES];
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextGaussian();
+        Arrays.sort(values);
+        Map<Long, Integer> histogram = new HashMap<>(1024);
+        for (double value : values)
+            histogram.merge(Math.round(100 * value), 1, Integer::sum);
+        return histogram.size();
+    }
+
+    private static int report(String name, Measurement measurement, java.util.Properties budgets, double timeTolerance,
+            double allocationTolerance, boolean requireBudgets) {
+        int failures = 0;
+        String millisBudget = budgets.getProperty(name + MILLIS);
+        String bytesBudget = budgets.getProperty(name + BYTES);
+        StringBuilder str = new StringBuilder(128);
+        str.append(name).append(": ").append(measurement.millis).append(" ms");
+        if (millisBudget != null && !millisBudget.isEmpty()) {
+            long limit = (long) (Long.parseLong(millisBudget) * timeTolerance);
+            boolean ok = measurement.millis <= limit;
+            str.append(" (limit ").append(limit).append(ok ? ")" : ", EXCEEDED)");
+            failures += ok ? 0 : 1;
+        } else {
+            str.append(requireBudgets ? " (NO BUDGET)" : " (no budget)");
+            failures += requireBudgets ? 1 : 0;
+        }
+        str.append(", ").append(measurement.bytes).append(" bytes");
+        if (bytesBudget != null && !bytesBudget.isEmpty()) {
+            long limit = (long) (Long.parseLong(bytesBudget) * allocationTolerance);
+            boolean ok = measurement.bytes <= limit;
+            str.append(" (limit ").append(limit).append(ok ? ")" : ", EXCEEDED)");
+            failures += ok ? 0 : 1;
+        } else {
+            str.append(requireBudgets ? " (NO BUDGET)" : " (no budget)");
+            failures += requireBudgets ? 1 : 0;
+        }
+        System.out.println(str);
+        return failures;
+    }
+
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final PropertiesSnapshot properties;
+    // Keeps the configuration; loggers are only weakly referenced.
+    private final Logger importLogger;
+
+    private BudgetCheck() {
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        properties = Properties.getInstance().snapshot();
+        importLogger = Logger.getLogger(SequenceImporter.class.getName());
+        importLogger.setLevel(Level.WARNING);
+    }
+
+    private Map<String, Measurement> runAll() throws IOException, InvalidArgumentException {
+        Map<String, Measurement> result = new LinkedHashMap<>(8);
+        File dir = Files.createTempDirectory("budgetcheck").toFile();
+        try {
+            File ict = new File(dir, "captures.ict");
+            new CaptureGenerator(SEED).write(ict, SequenceImporter.Format.ict, IMPORT_CAPTURES);
+            File text = new File(dir, "captures.txt");
+            new CaptureGenerator(SEED).write(text, SequenceImporter.Format.text, IMPORT_CAPTURES);
+
+            result.put("import-ict", measure(() -> TableInternalFrame.loadFile(ict, properties)));
+            result.put("import-text", measure(() -> TableInternalFrame.loadFile(text, properties)));
+
+            CaptureGenerator modelGenerator = new CaptureGenerator(SEED);
+            List<RawIrSequence> rows = new ArrayList<>(MODEL_ROWS);
+            for (int i = 0; i < MODEL_ROWS; i++) {
+                CaptureGenerator.Capture capture = modelGenerator.next();
+                rows.add(new RawIrSequence(capture.toIrSequence(), capture.getName()));
+            }
+            result.put("model", measure(() -> {
+                RawIrSequence.RawTableModel model = new RawIrSequence.RawTableModel();
+                rows.forEach((row) -> {
+                    model.addSequence(row);
+                });
+                model.getNonUniqueNames();
+                return model;
+            }));
+
+            // New rows every run, since a row keeps its storage; includes decoding every row once.
+            result.put("model-compact", measure(() -> {
+                RawIrSequence.RawTableModel model = new RawIrSequence.RawTableModel();
+                model.setCompactStorage(true);
+                rows.forEach((row) -> {
+                    model.addSequence(new RawIrSequence(row.getIrSequence(), row.getName()));
+                });
+                long durations = 0L;
+                for (int row = 0; row < model.getRowCount(); row++)
+                    durations += model.getCapturedIrSequence(row).getIrSequence().getLength();
+                return durations;
+            }));
+
+            Map<String, IrSequence> sequences = new LinkedHashMap<>(2 * ANALYSIS_CAPTURES);
+            CaptureGenerator analysisGenerator = new CaptureGenerator(SEED);
+            for (int i = 0; i < ANALYSIS_CAPTURES; i++) {
+                CaptureGenerator.Capture capture = analysisGenerator.next();
+                sequences.put(capture.getName(), capture.toIrSequence());
+            }
+            result.put("analysis", measure(() -> {
+                Analysis analysis = new Analysis(sequences, ModulatedIrSequence.DEFAULT_FREQUENCY, properties);
+                analysis.statistics();
+                analysis.bitStatistics();
+                return analysis;
+            }));
+
+            // The same captures with other jitter, as from a re-capture of the remote, with some renamed.
+            Map<String, IrSequence> session = new LinkedHashMap<>(2 * DIFF_ROWS);
+            Map<String, IrSequence> recaptured = new LinkedHashMap<>(2 * DIFF_ROWS);
+            CaptureGenerator sessionGenerator = new CaptureGenerator(SEED);
+            CaptureGenerator recaptureGenerator = new CaptureGenerator(SEED);
+            recaptureGenerator.setJitter(0.05);
+            for (int i = 0; i < DIFF_ROWS; i++) {
+                CaptureGenerator.Capture capture = sessionGenerator.next();
+                session.put(capture.getName(), capture.toIrSequence());
+                CaptureGenerator.Capture recapture = recaptureGenerator.next();
+                recaptured.put(recapture.getName() + (i % DIFF_RENAME_INTERVAL == 0 ? "_renamed" : ""), recapture.toIrSequence());
+            }
+            result.put("diff", measure(() -> SessionDiff.compare(session, recaptured, properties)));
+
+            File sessionFile = new File(dir, "session." + SessionFile.EXTENSION);
+            writeSession(sessionFile);
+            result.put("session-restore", measure(() -> {
+                List<TableInternalFrame.TableKit> kits = new ArrayList<>(SESSION_TABLES);
+                for (SessionFile.Entry entry : SessionFile.read(sessionFile).getEntries())
+                    kits.add(entry.toTableKit());
+                return kits;
+            }));
+        } finally {
+            Fixtures.delete(dir);
+        }
+        return result;
+    }
+
+    /**
+     * Writes a session of SESSION_TABLES tables, with SESSION_ROWS rows each.
+     */
+    private static void writeSession(File file) throws IOException {
+        CaptureGenerator generator = new CaptureGenerator(SEED);
+        List<SequenceImporter.Imported> tables = new ArrayList<>(SESSION_TABLES);
+        for (int t = 0; t < SESSION_TABLES; t++) {
+            Map<String, IrSequence> sequences = new LinkedHashMap<>(2 * SESSION_ROWS);
+            for (int i = 0; i < SESSION_ROWS; i++) {
+                CaptureGenerator.Capture capture = generator.next();
+                sequences.put(capture.getName(), capture.toIrSequence());
+            }
+            tables.add(new SequenceImporter.Imported(sequences, null, SequenceImporter.Format.ict));
+        }
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                JInternalFrame[] frames = new JInternalFrame[tables.size()];
+                for (int t = 0; t < frames.length; t++)
+                    frames[t] = new TableInternalFrame(tables.get(t), "table-" + t);
+                try {
+                    SessionFile.snapshot(frames, false).write(file);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                for (JInternalFrame frame : frames)
+                    frame.dispose();
+            });
+        } catch (InterruptedException | InvocationTargetException ex) {
+            throw new IOException(ex.getCause() != null ? ex.getCause() : ex);
+        }
+    }
+
+    /**
+     * Runs the workload a few times for warmup, then measures some more runs, and returns the fastest of those,
+     * with its allocation.
+     */
+    private Measurement measure(Workload workload) throws IOException, InvalidArgumentException {
+        for (int i = 0; i < WARMUP_RUNS; i++)
+            workload.run();
+        Measurement best = null;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            Map<Long, Long> bytes0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            workload.run();
+            long t1 = System.nanoTime();
+            Map<Long, Long> bytes1 = allocatedBytes();
+            long bytes = 0L;
+            for (Map.Entry<Long, Long> kvp : bytes1.entrySet())
+                bytes += kvp.getValue() - bytes0.getOrDefault(kvp.getKey(), 0L);
+            Measurement measurement = new Measurement((t1 - t0) / 1000000L, bytes);
+            if (best == null || measurement.millis < best.millis)
+                best = measurement;
+        }
+        return best;
+    }
+
+    /**
+     * Allocation of all live threads, so that work in the common fork join pool is counted too.
+     * Allocation of a thread that dies during a run is lost; the pool keeps its threads alive for a minute.
+     * @return bytes allocated so far, by thread id.
+     */
+    private Map<Long, Long> allocatedBytes() {
+        long[] ids = threadMXBean.getAllThreadIds();
+        long[] bytes = threadMXBean.getThreadAllocatedBytes(ids);
+        Map<Long, Long> result = new HashMap<>(2 * ids.length);
+        for (int i = 0; i < ids.length; i++)
+            if (bytes[i] >= 0L)
+                result.put(ids[i], bytes[i]);
+        return result;
+    }
+
+    private interface Workload {
+        Object run() throws IOException, InvalidArgumentException;
+    }
+
+    private static class Measurement {
+
+        private final long millis;
+        private final long bytes;
+
+        Measurement(long millis, long bytes) {
+            this.millis = millis;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSequence;
+
+/**
+ * Input files for the benchmarks, derived from the bundled "A to Z.ict".
+ */
+final class Fixtures {
+
+    private static final String FIXTURE_PROPERTY = "benchmark.fixture";
+    private static final String[] FIXTURE_CANDIDATES = {
+        "src/test/ict/A to Z.ict",
+        "../src/test/ict/A to Z.ict"
+    };
+    private static final String NOTE = "note=";
+
+    /**
+     * @return The fixture, as given by the system property benchmark.fixture, or found relative to the current directory.
+     * @throws IOException if not found.
+     */
+    static File fixture() throws IOException {
+        String name = System.getProperty(FIXTURE_PROPERTY);
+        if (name != null)
+            return new File(name);
+        for (String candidate : FIXTURE_CANDIDATES) {
+            File file = new File(candidate);
+            if (file.canRead())
+                return file;
+        }
+        throw new IOException("Fixture not found; set the system property " + FIXTURE_PROPERTY);
+    }
+
+    /**
+     * Writes the fixture, repeated scale times, in ICT format. Commands are renamed to keep the names unique.
+     * @param dir
+     * @param scale
+     * @return the file written
+     * @throws IOException
+     */
+    static File scaledIct(File dir, int scale) throws IOException {
+        List<String> lines = Files.readAllLines(fixture().toPath(), StandardCharsets.UTF_8);
+        int firstNote = 0;
+        while (firstNote < lines.size() && !lines.get(firstNote).startsWith(NOTE))
+            firstNote++;
+
+        File file = new File(dir, "ict-" + scale + ".ict");
+        try (BufferedWriter out = newWriter(file)) {
+            for (int i = 0; i < firstNote; i++) {
+                String line = lines.get(i);
+                if (line.startsWith("sample_count ")) {
+                    long count = Long.parseLong(line.substring("sample_count ".length()).trim());
+                    line = "sample_count " + count * scale;
+                }
+                out.write(line);
+                out.newLine();
+            }
+            for (int copy = 0; copy < scale; copy++) {
+                for (int i = firstNote; i < lines.size(); i++) {
+                    String line = lines.get(i);
+                    out.write(line);
+                    if (copy > 0 && line.startsWith(NOTE))
+                        out.write(" #" + copy);
+                    out.newLine();
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Writes the sequences of the fixture, repeated scale times, as text, one named sequence per line.
+     * @param dir
+     * @param scale
+     * @return the file written
+     * @throws IOException
+     * @throws InvalidArgumentException
+     */
+    static File scaledText(File dir, int scale) throws IOException, InvalidArgumentException {
+        Map<String, IrSequence> sequences = SequenceImporter.importFile(fixture(), Properties.getInstance().snapshot()).getSequences();
+        File file = new File(dir, "text-" + scale + ".txt");
+        try (BufferedWriter out = newWriter(file)) {
+            for (int copy = 0; copy < scale; copy++) {
+                for (Map.Entry<String, IrSequence> kvp : sequences.entrySet()) {
+                    out.write(kvp.getKey().replace(' ', '_'));
+                    if (copy > 0)
+                        out.write("_" + copy);
+                    IrSequence sequence = kvp.getValue();
+                    for (int i = 0; i < sequence.getLength(); i++)
+                        out.write((i % 2 == 0 ? " +" : " -") + Math.round(sequence.get(i)));
+                    out.newLine();
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Returns the sequences of the fixture, cycled until count sequences; names are kept unique.
+     * @param count
+     * @return Named sequences in fixture order.
+     * @throws IOException
+     * @throws InvalidArgumentException
+     */
+    static Map<String, IrSequence> sequences(int count) throws IOException, InvalidArgumentException {
+        Map<String, IrSequence> fixture = SequenceImporter.importFile(fixture(), Properties.getInstance().snapshot()).getSequences();
+        List<Map.Entry<String, IrSequence>> entries = new ArrayList<>(fixture.entrySet());
+        Map<String, IrSequence> result = new LinkedHashMap<>(2 * count);
+        for (int i = 0; i < count; i++) {
+            Map.Entry<String, IrSequence> entry = entries.get(i % entries.size());
+            int copy = i / entries.size();
+            result.put(copy == 0 ? entry.getKey() : entry.getKey() + " #" + copy, entry.getValue());
+        }
+        return result;
+    }
+
+    private static BufferedWriter newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes the directory and the files therein.
+     * @param dir
+     */
+    static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        dir.delete();
+    }
+
+    private Fixtures() {
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.beans.PropertyVetoException;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.swing.JDesktopPane;
+import javax.swing.JInternalFrame;
+import javax.swing.SwingUtilities;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSequence;
+
+/**
+ * Leak check of the frame lifecycle: opens and closes a number of table frames (and every tenth time an analysis frame)
+ * in a desktop, and checks that the closed frames can be garbage collected,
+ * that the signal count is restored, and that the heap has not grown.
+ * Meant to be run with a small, fixed heap (e.g. -Xmx64m), so that a leak also shows as OutOfMemoryError.
+ * Exits with 1 on failure.
+ *
+ * Usage: FrameLeakCheck [--frames N] [--max-growth megabytes]
+ */
+public final class FrameLeakCheck {
+
+    private static final int DEFAULT_FRAMES = 1000;
+    private static final int ANALYSIS_INTERVAL = 10;
+    private static final int WARMUP_FRAMES = 50;
+    private static final int MAX_SURVIVORS = 2; // Swing may keep the last closed frame, e.g. as focus owner
+    private static final int GC_ATTEMPTS = 10;
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private static void usage(int exitcode) {
+        (exitcode == 0 ? System.out : System.err).println("Usage: FrameLeakCheck [--frames N] [--max-growth megabytes]");
+        System.exit(exitcode);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int frames = DEFAULT_FRAMES;
+        long maxGrowth = 8L;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--frames":
+                        frames = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-growth":
+                        maxGrowth = Long.parseLong(args[++i]);
+                        break;
+                    case "--help":
+                        usage(0);
+                        break;
+                    default:
+                        usage(1);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            usage(1);
+        }
+
+        try {
+            FrameLeakCheck check = new FrameLeakCheck();
+            boolean ok = check.run(frames, maxGrowth * MEGABYTE);
+            System.exit(ok ? 0 : 1);
+        } catch (IOException | InvalidArgumentException | InterruptedException | InvocationTargetException ex) {
+            System.err.println(ex);
+            System.exit(1);
+        }
+    }
+
+    private final SequenceImporter.Imported imported;
+    private final Map<String, IrSequence> sequences;
+    private final JDesktopPane desktop = new JDesktopPane();
+
+    private FrameLeakCheck() throws IOException, InvalidArgumentException {
+        imported = SequenceImporter.importFile(Fixtures.fixture(), Properties.getInstance().snapshot());
+        sequences = imported.getSequences();
+    }
+
+    private boolean run(int frames, long maxGrowth) throws InterruptedException, InvocationTargetException, InvalidArgumentException {
+        int baseCount = NamedIrSignal.getCount();
+        long baseReferences = SignalStore.getInstance().getReferences();
+        List<WeakReference<JInternalFrame>> closed = new ArrayList<>(frames + frames / ANALYSIS_INTERVAL);
+        long baseHeap = 0L;
+        for (int i = 0; i < frames; i++) {
+            if (i == WARMUP_FRAMES)
+                baseHeap = usedHeapAfterGc();
+            boolean analyze = i % ANALYSIS_INTERVAL == 0;
+            Analysis analysis = analyze ? new Analysis(sequences, imported.getFrequencyWithDefault(), Properties.getInstance().snapshot()) : null;
+            String name = "frame-" + i;
+            SwingUtilities.invokeAndWait(() -> {
+                closed.add(new WeakReference<>(openAndClose(new TableInternalFrame(imported, name))));
+                if (analysis != null)
+                    closed.add(new WeakReference<>(openAndClose(new AnalyzedFrame(name, analysis))));
+            });
+        }
+        long heap = usedHeapAfterGc();
+
+        int survivors = 0;
+        for (int attempt = 0; attempt < GC_ATTEMPTS; attempt++) {
+            survivors = 0;
+            for (WeakReference<JInternalFrame> ref : closed)
+                if (ref.get() != null)
+                    survivors++;
+            if (survivors <= MAX_SURVIVORS)
+                break;
+            usedHeapAfterGc();
+        }
+        int count = NamedIrSignal.getCount() - baseCount;
+        long references = SignalStore.getInstance().getReferences() - baseReferences;
+        int remaining = desktop.getAllFrames().length;
+        long growth = frames > WARMUP_FRAMES ? heap - baseHeap : 0L;
+
+        System.out.println(String.format("Frames opened and closed: %d, not collected: %d (max %d)", closed.size(), survivors, MAX_SURVIVORS));
+        System.out.println(String.format("Frames remaining in desktop: %d", remaining));
+        System.out.println(String.format("Signal count change: %d", count));
+        System.out.println(String.format("Signal store reference change: %d", references));
+        System.out.println(String.format("Heap growth after warmup: %.1f MB (max %d MB)", growth / (double) MEGABYTE, maxGrowth / MEGABYTE));
+        boolean ok = survivors <= MAX_SURVIVORS && remaining == 0 && count == 0 && references == 0L && growth <= maxGrowth;
+        System.out.println(ok ? "OK" : "LEAK");
+        return ok;
+    }
+
+    private JInternalFrame openAndClose(JInternalFrame frame) {
+        desktop.add(frame);
+        frame.setVisible(true);
+        try {
+            frame.setClosed(true);
+        } catch (PropertyVetoException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return frame;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20L);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link TableInternalFrame#loadFile}, i.e. import and table model creation,
+ * for ICT and text files of 1, 10, and 100 times the size of "A to Z.ict".
+ * Besides operations per second, the secondary results "sequences" and "megabytes" are reported per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+public class ImportBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({ "ict", "text" })
+        public SequenceImporter.Format format;
+
+        @Param({ "1", "10", "100" })
+        public int scale;
+
+        private File dir;
+        private File file;
+        private PropertiesSnapshot settings;
+        private int sequences;
+        private double megabytes;
+        // Keeps the configuration; loggers are only weakly referenced.
+        private Logger importLogger;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException, InvalidArgumentException {
+            // Every text import logs the failed ICT attempt; that is not what is to be measured.
+            importLogger = Logger.getLogger(SequenceImporter.class.getName());
+            importLogger.setLevel(Level.WARNING);
+            settings = Properties.getInstance().snapshot();
+            dir = Files.createTempDirectory("importbenchmark").toFile();
+            file = format == SequenceImporter.Format.ict ? Fixtures.scaledIct(dir, scale) : Fixtures.scaledText(dir, scale);
+            megabytes = file.length() / 1000000.0;
+            sequences = TableInternalFrame.loadFile(file, settings).getTableModel().getRowCount();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            Fixtures.delete(dir);
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+
+        public long sequences;
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            sequences = 0;
+            megabytes = 0;
+        }
+    }
+
+    @Benchmark
+    public TableInternalFrame.TableKit loadFile(Input input, Throughput throughput) throws IOException, InvalidArgumentException {
+        TableInternalFrame.TableKit tableKit = TableInternalFrame.loadFile(input.file, input.settings);
+        throughput.sequences += input.sequences;
+        throughput.megabytes += input.megabytes;
+        return tableKit;
+    }
+}
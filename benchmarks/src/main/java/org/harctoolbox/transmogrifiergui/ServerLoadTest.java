@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency and throughput of the {@link AnalysisServer}: a number of clients post the fixture,
+ * one request after the other, for a given time. Unless a URL is given, the server is started in this JVM, on localhost.
+ * By default, there are twice as many clients as the server can hold (threads + queue),
+ * so that the server is overloaded, and the 429 path is measured too.
+ *
+ * Usage: ServerLoadTest [--clients N] [--duration seconds] [--threads N] [--queue N] [--url url]
+ */
+public final class ServerLoadTest {
+
+    private static void usage(int exitcode) {
+        (exitcode == 0 ? System.out : System.err).println("Usage: ServerLoadTest [--clients N] [--duration seconds] [--threads N] [--queue N] [--url url]");
+        System.exit(exitcode);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int clients = 0; // default depends on threads and queue
+        int duration = 20;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = AnalysisServer.DEFAULT_QUEUE;
+        String url = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--clients":
+                        clients = Integer.parseInt(args[++i]);
+                        break;
+                    case "--duration":
+                        duration = Integer.parseInt(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--queue":
+                        queue = Integer.parseInt(args[++i]);
+                        break;
+                    case "--url":
+                        url = args[++i];
+                        break;
+                    case "--help":
+                        usage(0);
+                        break;
+                    default:
+                        usage(1);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            usage(1);
+        }
+
+        int capacity = threads + Math.max(1, queue);
+        if (clients <= 0)
+            clients = 2 * capacity;
+        else if (clients <= capacity && url == null)
+            System.err.println("Warning: " + clients + " clients cannot overload a server holding " + capacity + " requests");
+
+        AnalysisServer server = null;
+        try {
+            if (url == null) {
+                server = new AnalysisServer(Properties.getInstance().snapshot(), threads, queue,
+                        AnalysisServer.DEFAULT_MAX_BODY, AnalysisServer.DEFAULT_TIMEOUT);
+                server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                url = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort() + "/analyze";
+            }
+            byte[] body = Files.readAllBytes(Fixtures.fixture().toPath());
+            new ServerLoadTest(new URL(url), body).run(clients, duration * 1000L);
+        } catch (IOException | InterruptedException ex) {
+            System.err.println(ex);
+            System.exit(1);
+        } finally {
+            if (server != null)
+                server.stop();
+        }
+    }
+
+    private final URL url;
+    private final byte[] body;
+    private final AtomicInteger ok = new AtomicInteger();
+    private final AtomicInteger tooMany = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>(100000));
+
+    private ServerLoadTest(URL url, byte[] body) {
+        this.url = url;
+        this.body = body;
+    }
+
+    private void run(int clients, long millis) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < end)
+                    post();
+            }, "client-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        System.out.println(String.format("%s, %d clients, %.1f s", url, clients, seconds));
+        System.out.println(String.format("Requests: %d ok, %d rejected (429), %d failed", ok.get(), tooMany.get(), failed.get()));
+        System.out.println(String.format("Throughput: %.1f ok/s", ok.get() / seconds));
+        if (!sorted.isEmpty())
+            System.out.println(String.format("Latency ms: median %.1f, 90%% %.1f, 99%% %.1f, max %.1f",
+                    percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), sorted.get(sorted.size() - 1) / 1e6));
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        return sorted.get(Math.min(sorted.size() - 1, (int) (p * sorted.size()))) / 1e6;
+    }
+
+    private void post() {
+        long start = System.nanoTime();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                byte[] buffer = new byte[8192];
+                if (in != null)
+                    while (in.read(buffer) >= 0) {
+                        // discard
+                    }
+            }
+            if (status == 200) {
+                ok.incrementAndGet();
+                latencies.add(System.nanoTime() - start);
+            } else if (status == 429) {
+                tooMany.incrementAndGet();
+                Thread.sleep(10L);
+            } else
+                failed.incrementAndGet();
+        } catch (IOException ex) {
+            failed.incrementAndGet();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
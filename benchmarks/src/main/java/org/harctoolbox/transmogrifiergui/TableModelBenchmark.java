@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableModel;
+import javax.swing.table.TableRowSorter;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.ircore.IrSignal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the table models ({@link NamedIrSignal.LearnedIrSignalTableModel} and subclasses)
+ * for 1000, 10000, and 100000 rows. Runs headless.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+@State(Scope.Benchmark)
+public class TableModelBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int rows;
+
+    private List<RawIrSequence> rawIrSequences;
+    private List<RawIrSignal> rawIrSignals;
+    private RawIrSequence.RawTableModel sequenceModel;
+    private TableInternalFrame frame;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InvalidArgumentException, InterruptedException, InvocationTargetException {
+        Map<String, IrSequence> sequences = Fixtures.sequences(rows);
+        rawIrSequences = new ArrayList<>(rows);
+        rawIrSignals = new ArrayList<>(rows);
+        sequences.entrySet().forEach((kvp) -> {
+            rawIrSequences.add(new RawIrSequence(kvp.getValue(), kvp.getKey()));
+            rawIrSignals.add(new RawIrSignal(new IrSignal(kvp.getValue(), null, null, null, null), kvp.getKey()));
+        });
+        sequenceModel = newSequenceModel();
+        SequenceImporter.Imported imported = new SequenceImporter.Imported(sequences, null, SequenceImporter.Format.ict);
+        SwingUtilities.invokeAndWait(() -> {
+            frame = new TableInternalFrame(imported, "benchmark");
+        });
+    }
+
+    private RawIrSequence.RawTableModel newSequenceModel() {
+        RawIrSequence.RawTableModel model = new RawIrSequence.RawTableModel();
+        rawIrSequences.forEach((sequence) -> {
+            model.addSequence(sequence);
+        });
+        return model;
+    }
+
+    @Benchmark
+    public RawIrSequence.RawTableModel addSequence() {
+        return newSequenceModel();
+    }
+
+    @Benchmark
+    public RawIrSignal.RawTableModel addSignal() {
+        RawIrSignal.RawTableModel model = new RawIrSignal.RawTableModel();
+        rawIrSignals.forEach((signal) -> {
+            model.addSignal(signal);
+        });
+        return model;
+    }
+
+    @Benchmark
+    public List<String> getNonUniqueNames() {
+        return sequenceModel.getNonUniqueNames();
+    }
+
+    @Benchmark
+    public List<Integer> getUnusedColumns() {
+        return sequenceModel.getUnusedColumns();
+    }
+
+    @Benchmark
+    public List<Integer> getUninterestingColumns() {
+        return sequenceModel.getUninterestingColumns();
+    }
+
+    /**
+     * Sorts on the name column, with a new sorter every time, so that every invocation really sorts.
+     * @return the sorter
+     */
+    @Benchmark
+    public TableRowSorter<TableModel> sortByName() {
+        TableRowSorter<TableModel> sorter = new TableRowSorter<>(sequenceModel);
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(0 /* name */, SortOrder.DESCENDING)));
+        return sorter;
+    }
+
+    @Benchmark
+    public Map<String, IrSequence> getIrSequences() {
+        return frame.getIrSequences();
+    }
+}
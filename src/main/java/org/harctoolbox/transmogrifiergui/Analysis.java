@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.harctoolbox.analyze.Analyzer;
+import org.harctoolbox.analyze.NoDecoderMatchException;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrCoreUtils;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.ircore.ThisCannotHappenException;
+import org.harctoolbox.irp.BitCounter;
+import org.harctoolbox.irp.Expression;
+import org.harctoolbox.irp.NameEngine;
+import org.harctoolbox.irp.NameUnassignedException;
+import org.harctoolbox.irp.Protocol;
+
+/**
+ * The computations behind {@link AnalyzedFrame}, without any user interface,
+ * for a set of named sequences and a fixed set of settings.
+ * Results that are expensive to compute are computed on first request, and then cached.
+ */
+public class Analysis {
+
+    private static final String CHARSET = "US-ASCII";
+    private static final long PROTOCOL_MEMORY = 2000L;
+
+    private final List<String> names;
+    private final PropertiesSnapshot properties;
+    private final Analyzer analyzer;
+    private final Analyzer.AnalyzerParams params;
+    private List<Protocol> protocols = null;
+    private final long analyzerNanos;
+    private final long sequencesMemory;
+    private volatile long searchNanos = 0L;
+    private volatile long bitStatisticsNanos = 0L;
+
+    public Analysis(Map<String, IrSequence> irSequences, double frequency, PropertiesSnapshot properties) throws InvalidArgumentException {
+        this.names = Collections.unmodifiableList(new ArrayList<>(irSequences.keySet()));
+        this.properties = properties;
+        long memory = 0L;
+        for (Map.Entry<String, IrSequence> kvp : irSequences.entrySet())
+            memory += MemoryEstimate.string(kvp.getKey()) + MemoryEstimate.irSequence(kvp.getValue());
+        this.sequencesMemory = memory;
+        long start = Metrics.start();
+        this.analyzer = new Analyzer(irSequences.values(), frequency, properties.isRepeatFinder(),
+                PropertiesSnapshot.orNull(properties.getAbsoluteTolerance()), PropertiesSnapshot.orNull(properties.getRelativeTolerance()));
+        analyzerNanos = Metrics.record(Metrics.Stage.analyzer, start, irSequences.size());
+        this.params = properties.newAnalyzerParams(analyzer.getFrequency());
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public PropertiesSnapshot getProperties() {
+        return properties;
+    }
+
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Rough estimate: the Analyzer keeps the sequences as well as a cleaned copy;
+     * a found protocol is counted as a fixed amount.
+     * @return estimated bytes retained by this object.
+     */
+    public long estimateMemory() {
+        long sum = 2 * sequencesMemory;
+        List<Protocol> protocolList;
+        synchronized (this) {
+            protocolList = protocols;
+        }
+        if (protocolList != null)
+            sum += PROTOCOL_MEMORY * protocolList.size();
+        return sum;
+    }
+
+    /**
+     * @return time used for constructing the Analyzer, in nanoseconds.
+     */
+    public long getAnalyzerNanos() {
+        return analyzerNanos;
+    }
+
+    /**
+     * @return time used by the last protocol search, in nanoseconds, 0 if not yet run.
+     */
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    /**
+     * @return time used by the last computation of the bit statistics, in nanoseconds, 0 if not yet run.
+     */
+    public long getBitStatisticsNanos() {
+        return bitStatisticsNanos;
+    }
+
+    /**
+     * @return the output of {@link Analyzer#printStatistics}.
+     */
+    public String statistics() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            PrintStream out = new PrintStream(bytes, false, CHARSET);
+            analyzer.printStatistics(out, params);
+            out.flush();
+            return bytes.toString(CHARSET);
+        } catch (UnsupportedEncodingException ex) {
+            throw new ThisCannotHappenException();
+        }
+    }
+
+    public String cleanedSignal(int i) {
+        return analyzer.repeatReducedIrSignal(i).toString(true);
+    }
+
+    public String timingsString(int i) {
+        return analyzer.toTimingsString(i);
+    }
+
+    public String repeatFinderData(int i) {
+        return analyzer.repeatFinderData(i).toString();
+    }
+
+    /**
+     * @return The best protocol for every sequence, null for those without one.
+     */
+    public synchronized List<Protocol> getProtocols() {
+        if (protocols == null)
+            protocols = Collections.unmodifiableList(searchBestProtocol());
+        return protocols;
+    }
+
+    /**
+     * Runs {@link Analyzer#searchBestProtocol}, without using or updating the cache.
+     * @return The best protocol for every sequence, null for those without one.
+     */
+    public List<Protocol> searchBestProtocol() {
+        try {
+            Object event = FlightRecorderEvents.beginDecodePass();
+            long start = Metrics.start();
+            List<Protocol> result = analyzer.searchBestProtocol(params, null, false);
+            searchNanos = Metrics.record(Metrics.Stage.searchBestProtocol, start, result.size());
+            int decoded = 0;
+            for (Protocol protocol : result)
+                if (protocol != null)
+                    decoded++;
+            FlightRecorderEvents.commitDecodePass(event, result.size(), decoded);
+            return result;
+        } catch (NoDecoderMatchException e) {
+            throw new ThisCannotHappenException();
+        }
+    }
+
+    public Protocol getProtocol(int i) {
+        return getProtocols().get(i);
+    }
+
+    public String protocolString(int i) {
+        Protocol protocol = getProtocol(i);
+        return protocol != null ? protocol.toIrpString(properties.getRadix(), properties.isUsePeriods(), properties.isTsvOptimize()) : null;
+    }
+
+    public String protocolStringWithoutVars(int i) {
+        Protocol protocol = getProtocol(i);
+        return protocol != null ? protocol.substituteConstantVariables().toIrpString(properties.getRadix(), properties.isUsePeriods(), properties.isTsvOptimize()) : null;
+    }
+
+    /**
+     * @param i
+     * @return The parameters of the protocol, formatted in the radix of the properties, in protocol order.
+     */
+    public Map<String, String> parameters(int i) {
+        Protocol protocol = getProtocol(i);
+        if (protocol == null)
+            return Collections.emptyMap();
+        Map<String, String> result = new LinkedHashMap<>(4);
+        NameEngine definitions = protocol.getDefinitions();
+        for (Map.Entry<String, Expression> definition : definitions) {
+            try {
+                String definitionName = definition.getKey();
+                int length = protocol.guessParameterLength(definitionName);
+                long num = definition.getValue().toLong();
+                result.put(definitionName, IrCoreUtils.formatIntegerWithLeadingZeros(num, properties.getRadix(), length));
+            } catch (NameUnassignedException ex) {
+                throw new ThisCannotHappenException(ex);
+            }
+        }
+        return result;
+    }
+
+    public Map<String, BitCounter> bitStatistics() {
+        List<Protocol> protocolList = getProtocols();
+        long start = Metrics.start();
+        Map<String, BitCounter> result = BitCounter.scrutinizeProtocols(protocolList);
+        bitStatisticsNanos = Metrics.record(Metrics.Stage.bitStatistics, start, protocolList.size());
+        return result;
+    }
+}
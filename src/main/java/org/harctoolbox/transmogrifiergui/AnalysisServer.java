@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.harctoolbox.ircore.InvalidArgumentException;
+
+/**
+ * Local HTTP service running the import and analysis pipeline of the GUI, without Swing/AWT.
+ *
+ * <ul>
+ * <li>POST /analyze: the body is an ICT file, or text with one named sequence per line (as the file import).
+ * The answer is JSON, with protocol, parameters and timings of every signal, and the processing times.</li>
+ * <li>GET /status: pool size and queue length, as JSON.</li>
+ * </ul>
+ *
+ * The analyses are run on a fixed pool of workers, with a bounded queue in front.
+ * When the workers and the queue are full, requests are answered with 429 (Too Many Requests)
+ * before their body is read. The HTTP exchanges are handled on a bounded pool too;
+ * when that overflows, the exchange is answered with 429 on the thread of the HTTP server.
+ * A request timing out is answered with 503, and its analysis stopped at the next signal
+ * (the Analyzer itself cannot be interrupted); its worker counts as busy until then.
+ *
+ * Usage: --server [--port N] [--bind address] [--threads N] [--queue N] [--max-body bytes] [--timeout seconds]
+ */
+public class AnalysisServer {
+
+    private final static Logger logger = Logger.getLogger(AnalysisServer.class.getName());
+
+    public static final int DEFAULT_PORT = 8765;
+    public static final int DEFAULT_QUEUE = 32;
+    public static final int DEFAULT_MAX_BODY = 16 * 1024 * 1024;
+    public static final int DEFAULT_TIMEOUT = 60; // seconds
+    private static final int EXTRA_DISPATCHERS = 2; // for answering 429 while all others wait for workers
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private static void usage(int exitcode) {
+        (exitcode == 0 ? System.out : System.err).println("Usage: --server [--port N] [--bind address] [--threads N] [--queue N] [--max-body bytes] [--timeout seconds]");
+        System.exit(exitcode);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int port = DEFAULT_PORT;
+        String bind = InetAddress.getLoopbackAddress().getHostAddress();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = DEFAULT_QUEUE;
+        int maxBody = DEFAULT_MAX_BODY;
+        int timeout = DEFAULT_TIMEOUT;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--bind":
+                        bind = args[++i];
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--queue":
+                        queue = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-body":
+                        maxBody = Integer.parseInt(args[++i]);
+                        break;
+                    case "--timeout":
+                        timeout = Integer.parseInt(args[++i]);
+                        break;
+                    case "--help":
+                        usage(0);
+                        break;
+                    default:
+                        usage(1);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            usage(1);
+        }
+
+        PropertiesSnapshot properties = PropertiesStore.loadDefault(Properties.getInstance());
+
+        try {
+            AnalysisServer server = new AnalysisServer(properties, threads, queue, maxBody, timeout);
+            server.start(new InetSocketAddress(bind, port));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "AnalysisServer-shutdown"));
+            System.err.println("Listening on http://" + bind + ":" + server.getPort() + "/analyze");
+        } catch (IOException ex) {
+            System.err.println(ex.getLocalizedMessage());
+            System.exit(1);
+        }
+    }
+
+    private final PropertiesSnapshot properties;
+    private final int maxBody;
+    private final int timeout;
+    private final ThreadPoolExecutor workers;
+    private final Semaphore admitted;
+    private final ThreadPoolExecutor dispatchers;
+    private final ThreadLocal<Boolean> overflowing = new ThreadLocal<>();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private HttpServer httpServer = null;
+
+    /**
+     * @param properties settings for all analyses
+     * @param threads number of workers
+     * @param queue number of requests that may wait for a worker
+     * @param maxBody largest accepted request body, in bytes
+     * @param timeout seconds a request may take, including waiting
+     */
+    public AnalysisServer(PropertiesSnapshot properties, int threads, int queue, int maxBody, int timeout) {
+        this.properties = properties;
+        this.maxBody = maxBody;
+        this.timeout = timeout;
+        int capacity = threads + Math.max(1, queue);
+        // A request holds a permit from before reading its body, until a worker has finished with it (afterExecute),
+        // also after a timeout. Thus the workers never reject.
+        admitted = new Semaphore(capacity);
+        AtomicInteger workerNumber = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queue)), (Runnable r) -> {
+            Thread thread = new Thread(r, "AnalysisServer-worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy()) {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                admitted.release();
+            }
+        };
+        // Admitted requests wait for their worker on a dispatcher, the others are answered at once.
+        AtomicInteger dispatcherNumber = new AtomicInteger();
+        int dispatcherThreads = capacity + EXTRA_DISPATCHERS;
+        dispatchers = new ThreadPoolExecutor(dispatcherThreads, dispatcherThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity), (Runnable r) -> {
+            Thread thread = new Thread(r, "AnalysisServer-http-" + dispatcherNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, this::overflow);
+    }
+
+    /**
+     * Rejection handler of the dispatchers: handles the exchange on the thread of the HTTP server,
+     * answering 429 without reading the request.
+     */
+    private void overflow(Runnable exchange, ThreadPoolExecutor executor) {
+        if (executor.isShutdown())
+            return;
+        overflowing.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            overflowing.remove();
+        }
+    }
+
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        httpServer = HttpServer.create(address, 0);
+        httpServer.createContext("/analyze", this::handleAnalyze);
+        httpServer.createContext("/status", this::handleStatus);
+        httpServer.setExecutor(dispatchers);
+        httpServer.start();
+    }
+
+    /**
+     * @return the port listened to, useful if started with port 0.
+     */
+    public synchronized int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+        workers.shutdownNow();
+        dispatchers.shutdownNow();
+    }
+
+    /**
+     * @return number of requests answered with 429 so far.
+     */
+    public int getRejected() {
+        return rejected.get();
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, error("Use GET"));
+                return;
+            }
+            respond(exchange, 200, "{\"threads\": " + workers.getMaximumPoolSize()
+                    + ", \"active\": " + workers.getActiveCount()
+                    + ", \"queued\": " + workers.getQueue().size()
+                    + ", \"queueCapacity\": " + (workers.getQueue().size() + workers.getQueue().remainingCapacity())
+                    + ", \"completed\": " + workers.getCompletedTaskCount()
+                    + ", \"rejected\": " + rejected.get() + "}\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleAnalyze(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, error("Use POST"));
+                return;
+            }
+            if (overflowing.get() != null || !admitted.tryAcquire()) {
+                tooManyRequests(exchange);
+                return;
+            }
+
+            Future<Response> future;
+            try {
+                byte[] body = readBody(exchange.getRequestBody());
+                if (body == null) {
+                    respond(exchange, 413, error("Request body larger than " + maxBody + " bytes"));
+                    admitted.release();
+                    return;
+                }
+                if (body.length == 0) {
+                    respond(exchange, 400, error("Empty request body"));
+                    admitted.release();
+                    return;
+                }
+                long received = System.nanoTime();
+                future = workers.submit(() -> process(body, received));
+            } catch (IOException | RuntimeException ex) {
+                admitted.release();
+                if (ex instanceof RejectedExecutionException) {
+                    tooManyRequests(exchange);
+                    return;
+                }
+                throw ex;
+            }
+
+            try {
+                Response response = future.get(timeout, TimeUnit.SECONDS);
+                respond(exchange, response.status, response.json);
+            } catch (TimeoutException ex) {
+                future.cancel(true);
+                respond(exchange, 503, error("Timeout after " + timeout + " seconds"));
+            } catch (InterruptedException ex) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                logger.log(Level.WARNING, "Analysis failed", ex.getCause());
+                respond(exchange, 500, error(String.valueOf(ex.getCause())));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void tooManyRequests(HttpExchange exchange) throws IOException {
+        rejected.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        respond(exchange, 429, error("Too many requests; " + workers.getQueue().size() + " waiting"));
+    }
+
+    /**
+     * @param in
+     * @return the content, or null if longer than maxBody.
+     * @throws IOException
+     */
+    private byte[] readBody(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                if (length >= maxBody)
+                    return in.read() < 0 ? buffer : null;
+                buffer = Arrays.copyOf(buffer, Math.min(2 * length, maxBody));
+            }
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n < 0)
+                return Arrays.copyOf(buffer, length);
+            length += n;
+        }
+    }
+
+    /**
+     * Runs the pipeline of the GUI: import as in the table frame, then analysis as in the analysis frame.
+     * The importer only reads files, so the body is written to a temporary one.
+     * Stops with InterruptedException at the next step when interrupted, i.e. cancelled after a timeout.
+     */
+    Response process(byte[] body, long received) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        File file = File.createTempFile("analysisserver", ".ict");
+        try {
+            Files.write(file.toPath(), body);
+            long start = System.nanoTime();
+            SequenceImporter.Imported imported = SequenceImporter.importFile(file, properties);
+            long importNanos = System.nanoTime() - start;
+            checkInterrupted();
+            Analysis analysis = new Analysis(imported.getSequences(), imported.getFrequencyWithDefault(), properties);
+            List<String> names = analysis.getNames();
+            StringBuilder str = new StringBuilder(256 + 256 * names.size());
+            str.append("{\"format\": ").append(BatchAnalyzer.jsonString(imported.getFormat().name()));
+            str.append(", \"frequency\": ").append(Math.round(analysis.getAnalyzer().getFrequency()));
+            str.append(", \"signals\": [");
+            for (int i = 0; i < names.size(); i++) {
+                checkInterrupted();
+                str.append(i > 0 ? "," : "").append("\n  {\"name\": ").append(BatchAnalyzer.jsonString(names.get(i)));
+                str.append(", \"protocol\": ").append(BatchAnalyzer.jsonString(analysis.protocolString(i)));
+                str.append(", \"parameters\": {");
+                boolean first = true;
+                for (Map.Entry<String, String> kvp : analysis.parameters(i).entrySet()) {
+                    str.append(first ? "" : ", ").append(BatchAnalyzer.jsonString(kvp.getKey())).append(": ").append(BatchAnalyzer.jsonString(kvp.getValue()));
+                    first = false;
+                }
+                str.append("}, \"timings\": ").append(BatchAnalyzer.jsonString(analysis.timingsString(i))).append('}');
+            }
+            long done = System.nanoTime();
+            str.append("\n], \"elapsed\": {");
+            str.append("\"queueMillis\": ").append(millis(started - received));
+            str.append(", \"importMillis\": ").append(millis(importNanos));
+            str.append(", \"analyzerMillis\": ").append(millis(analysis.getAnalyzerNanos()));
+            str.append(", \"searchMillis\": ").append(millis(analysis.getSearchNanos()));
+            str.append(", \"totalMillis\": ").append(millis(done - received));
+            str.append("}}\n");
+            return new Response(200, str.toString());
+        } catch (InvalidArgumentException ex) {
+            return new Response(422, error(ex.getLocalizedMessage()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException("Cancelled");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1000000.0);
+    }
+
+    private static String error(String message) {
+        return "{\"error\": " + BatchAnalyzer.jsonString(message) + "}\n";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static class Response {
+
+        private final int status;
+        private final String json;
+
+        Response(int status, String json) {
+            this.status = status;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSequence;
+
+/**
+ * Worker process of the {@link Coordinator}: reads requests from stdin, analyzes, and writes the responses to stdout,
+ * see {@link WorkerProtocol}. Diagnostics go to stderr; System.out is redirected there, to keep stdout clean.
+ * The settings are those sent by the coordinator, not the ones of the host running the worker.
+ *
+ * Usage: --worker
+ */
+public final class AnalysisWorker {
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err);
+
+        try {
+            new AnalysisWorker().run(in, out);
+            System.exit(0);
+        } catch (IOException ex) {
+            System.err.println("Worker: " + ex.getLocalizedMessage());
+            System.exit(1);
+        }
+    }
+
+    private PropertiesSnapshot properties = null;
+
+    private AnalysisWorker() {
+    }
+
+    private void run(DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeInt(WorkerProtocol.MAGIC);
+        out.flush();
+        properties = WorkerProtocol.readSettings(in);
+        while (true) {
+            int type;
+            try {
+                type = in.readByte();
+            } catch (EOFException ex) {
+                return;
+            }
+            if (type == WorkerProtocol.END)
+                return;
+            int id = in.readInt();
+            String path = null;
+            Map<String, IrSequence> sequences = null;
+            double frequency = 0.0;
+            if (type == WorkerProtocol.FILE)
+                path = in.readUTF();
+            else if (type == WorkerProtocol.SEQUENCES) {
+                frequency = in.readInt();
+                sequences = WorkerProtocol.readSequences(in);
+            } else
+                throw new IOException("Unknown request type " + type);
+
+            List<BatchAnalyzer.SignalResult> results;
+            try {
+                if (path != null) {
+                    SequenceImporter.Imported imported = SequenceImporter.importFile(new File(path), properties);
+                    sequences = imported.getSequences();
+                    frequency = imported.getFrequencyWithDefault();
+                }
+                results = BatchAnalyzer.SignalResult.of(new Analysis(sequences, frequency, properties));
+            } catch (IOException | InvalidArgumentException | RuntimeException ex) {
+                WorkerProtocol.writeError(out, id, ex.getClass().getSimpleName() + ": " + ex.getLocalizedMessage());
+                continue;
+            }
+            WorkerProtocol.writeResult(out, id, results);
+        }
+    }
+}
@@ -16,170 +16,185 @@
  */
 package org.harctoolbox.transmogrifiergui;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FilterOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import org.harctoolbox.analyze.Analyzer;
-import org.harctoolbox.analyze.Burst;
-import org.harctoolbox.analyze.NoDecoderMatchException;
 import org.harctoolbox.ircore.InvalidArgumentException;
-import org.harctoolbox.ircore.IrCoreUtils;
 import org.harctoolbox.ircore.IrSequence;
-import org.harctoolbox.ircore.ThisCannotHappenException;
 import org.harctoolbox.irp.BitCounter;
-import org.harctoolbox.irp.Expression;
-import org.harctoolbox.irp.NameEngine;
-import org.harctoolbox.irp.NameUnassignedException;
-import org.harctoolbox.irp.Protocol;
 
-public class AnalyzedFrame extends javax.swing.JInternalFrame {
+public class AnalyzedFrame extends javax.swing.JInternalFrame implements MemoryAccountable {
 
-    private Analyzer analyzer;
-    private Properties properties = Properties.getInstance();
+    private Analysis analysis = null;
+    private long memoryGeneration = 0L;
+    private final PropertiesSnapshot properties;
     private boolean eliminateVars = true;
     private String source = null;
+    private final FrameLifecycle lifecycle;
 
     /**
      * Creates new form AnalyzedFrame
      * @param source
      */
     public AnalyzedFrame(String source) {
+        this(source, Properties.getInstance().snapshot());
+    }
+
+    /**
+     * @param source
+     * @param properties settings to be used for the entire analysis
+     */
+    public AnalyzedFrame(String source, PropertiesSnapshot properties) {
         this.source = source;
+        this.properties = properties;
         initComponents();
-        setTitle(source + " [Analysis]");
+        lifecycle = FrameLifecycle.attach(this);
+        lifecycle.onClose(() -> {
+            analysis = null;
+            for (javax.swing.JTextArea textArea : textAreas())
+                textArea.setText(null);
+        });
+        updateMemoryTitle();
     }
 
-    public AnalyzedFrame(String source, Map<String, IrSequence> irSequences, double frequency) throws InvalidArgumentException {
-        this(source);
-        analyzer = new Analyzer(irSequences.values(), frequency, properties.isRepeatFinder(),
-                properties.getAbsoluteTolerance(), properties.getRelativeTolerance());
-        analyze(analyzer, irSequences.keySet());
+    /**
+     * @return the lifecycle, for registering background work that should end with the frame.
+     */
+    FrameLifecycle getLifecycle() {
+        return lifecycle;
     }
 
-    public AnalyzedFrame() {
-        this("unnamed");
+    private javax.swing.JTextArea[] textAreas() {
+        return new javax.swing.JTextArea[] { timingsTextArea, cleanedSignalsTextArea,
+            codedSignalsTextArea, repeatDataTextArea, bestDecodeWithVarsTextArea, bestDecodeWithoutVarsTextArea,
+            parameterUsageTextArea, bitUsageTextArea };
     }
 
-    private class FilteredStream extends FilterOutputStream {
+    // Every change of the content updates the title.
+    private void updateMemoryTitle() {
+        memoryGeneration++;
+        setTitle(source + " [Analysis] (" + MemoryEstimate.format(getMemoryEstimate()) + ")");
+    }
 
-        FilteredStream(OutputStream aStream) {
-            super(aStream);
-        }
+    private long estimateTextMemory() {
+        long sum = 0L;
+        for (javax.swing.JTextArea textArea : textAreas())
+            sum += MemoryEstimate.document(textArea.getDocument());
+        return sum;
+    }
 
-        @Override
-        public void write(byte b[]) throws IOException {
-            String aString = new String(b, "US-ASCII");
-            timingsTextArea.append(aString);
-        }
+    private long estimateAnalysisMemory() {
+        return analysis != null ? analysis.estimateMemory() : 0L;
+    }
 
-        @Override
-        public void write(byte b[], int off, int len) throws IOException {
-            String aString = new String(b, off, len, "US-ASCII");
-            timingsTextArea.append(aString);
-            //consoleTextArea.setCaretPosition(consoleTextArea.getDocument().getLength());
-        }
+    @Override
+    public long getMemoryEstimate() {
+        return estimateTextMemory() + estimateAnalysisMemory();
     }
 
-    private void analyze(Analyzer analyzer, Collection<String> names) {
-        Burst.Preferences burstPrefs = new Burst.Preferences(properties.getMaxRoundingError(),
-                properties.getMaxUnits(), properties.getMaxMicroSeconds());
-        Analyzer.AnalyzerParams params = new Analyzer.AnalyzerParams(analyzer.getFrequency(), properties.getTimeBaseString(),
-                properties.getBitDirection(),
-                properties.isExtent(), properties.getParameterWidths(), properties.getMaxParameterWidth(), properties.isInvert(),
-                burstPrefs, new ArrayList<>(0));
-        //int maxNameLength = IrCoreUtils.maxLength(names);
+    @Override
+    public String getMemoryBreakdown() {
+        return "texts " + MemoryEstimate.format(estimateTextMemory())
+                + ", analysis " + MemoryEstimate.format(estimateAnalysisMemory());
+    }
 
-        // TODO: Replace by tables
-        try {
-            PrintStream out = new PrintStream(new FilteredStream(new ByteArrayOutputStream()), false, "US-ASCII");
-            analyzer.printStatistics(out, params);
-        } catch (UnsupportedEncodingException ex) {
-            throw new ThisCannotHappenException();
-        }
+    @Override
+    public long getMemoryGeneration() {
+        return memoryGeneration;
+    }
 
-        //IrCoreUtils.maxLength(names);
-        int i = 0;
-        for (String name : names) {
-            //for (int i = 0; i < analyzer.getNoSequences(); i++) {
-            //if (analyzer.getNoSequences() > 1)
-            //    out.print("#" + i + ":\t");
-            //cleanedSignalsTextArea.append(name + "\t" + analyzer.cleanedIrSequence(i).toString(true) + "\n");
-            cleanedSignalsTextArea.append(name + "\t" + analyzer.repeatReducedIrSignal(i).toString(true) + "\n");
-            codedSignalsTextArea.append(name + "\t" + analyzer.toTimingsString(i) + "\n");
-
-            //}
-            //*  if (properties.dumpRepeatfinder) {
-            //for (int i = 0; i < analyzer.getNoSequences(); i++) {
-            //  if (analyzer.getNoSequences() > 1)
-            //      out.print("#" + i + ":\t");
-            //System.out.println(analyzer.repeatReducedIrSignal(i).toString(true));
-            repeatDataTextArea.append(name + "\t" + analyzer.repeatFinderData(i).toString() + "\n");
-            i++;
+    /**
+     * Drops the Analysis; the rendered texts are kept.
+     */
+    @Override
+    public void releaseCaches() {
+        analysis = null;
+        updateMemoryTitle();
+    }
 
-        }
+    public AnalyzedFrame(String source, Map<String, IrSequence> irSequences, double frequency) throws InvalidArgumentException {
+        this(source, Properties.getInstance().snapshot(), irSequences, frequency);
+    }
 
-/*        if (properties.allDecodes) {
-            List<List<Protocol>> protocols = analyzer.searchAllProtocols(params, properties.decoder, commandLineArgs.regexp);
-            int noSignal = 0;
-            for (List<Protocol> protocolList : protocols) {
-                if (protocols.size() > 1)
-                    out.print((names != null ? names[noSignal] : "#" + noSignal) + ":\t");
-                if (properties.statistics)
-                    out.println(analyzer.toTimingsString(noSignal));
-                for (Protocol protocol : protocolList)
-                    printAnalyzedProtocol(protocol, properties.radix, params.isPreferPeriods(), true);
-                noSignal++;
-            }
-        } else {*/
-        List<Protocol> protocols;
-        try {
-            protocols = analyzer.searchBestProtocol(params, null/*properties.decoder*/, false/*commandLineArgs.regexp*/);
-        } catch (NoDecoderMatchException e) {
-            throw new ThisCannotHappenException();
+    public AnalyzedFrame(String source, PropertiesSnapshot properties, Map<String, IrSequence> irSequences, double frequency) throws InvalidArgumentException {
+        this(source, new Analysis(irSequences, frequency, properties));
+    }
+
+    public AnalyzedFrame(String source, Analysis analysis) {
+        this(source, analysis.getProperties());
+        this.analysis = analysis;
+        analyze(analysis);
+    }
+
+    public AnalyzedFrame() {
+        this("unnamed");
+    }
+
+    /**
+     * Restores the texts of an analysis, for example from a session file; the analysis itself is not kept.
+     * @param source
+     * @param texts as returned by {@link #getTexts}
+     */
+    public AnalyzedFrame(String source, String[] texts) {
+        this(source);
+        javax.swing.JTextArea[] textAreas = textAreas();
+        for (int i = 0; i < Math.min(texts.length, textAreas.length); i++)
+            textAreas[i].setText(texts[i]);
+        updateMemoryTitle();
+    }
+
+    /**
+     * @return the source
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the contents of the text areas
+     */
+    public String[] getTexts() {
+        javax.swing.JTextArea[] textAreas = textAreas();
+        String[] texts = new String[textAreas.length];
+        for (int i = 0; i < textAreas.length; i++)
+            texts[i] = textAreas[i].getText();
+        return texts;
+    }
+
+    private void analyze(Analysis analysis) {
+        Object event = FlightRecorderEvents.beginAnalysis();
+        long start = Metrics.start();
+        // TODO: Replace by tables
+        timingsTextArea.append(analysis.statistics());
+
+        List<String> names = analysis.getNames();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            cleanedSignalsTextArea.append(name + "\t" + analysis.cleanedSignal(i) + "\n");
+            codedSignalsTextArea.append(name + "\t" + analysis.timingsString(i) + "\n");
+            repeatDataTextArea.append(name + "\t" + analysis.repeatFinderData(i) + "\n");
         }
-        i = 0;
-        for (String name : names) {
-            Protocol protocol = protocols.get(i);
-            //bestDecodeWithVarsTextArea.append(name + IrCoreUtils.spaces(maxNameLength - name.length() + 1));
-            //bestDecodeWithoutVarsTextArea.append(name + IrCoreUtils.spaces(maxNameLength - name.length() + 1));
-            //printAnalyzedProtocol(protocols.get(index), properties.radix, params.isPreferPeriods(), properties.statistics);
-            //private void printAnalyzedProtocol(Protocol protocol, int radix, boolean usePeriods, boolean printWeight) {
-            if (protocol != null) {
-                bestDecodeWithVarsTextArea.append(name + "\t" + protocol.toIrpString(properties.getRadix(), properties.isUsePeriods(), properties.isTsvOptimize()) + "\n");
-                Protocol variablelessProtocol = protocol.substituteConstantVariables();
-                bestDecodeWithoutVarsTextArea.append(name + "\t" + variablelessProtocol.toIrpString(properties.getRadix(), properties.isUsePeriods(), properties.isTsvOptimize()) + "\n");
-                //if (printWeight)
-                //    out.println("weight = " + protocol.weight() + "\t" + protocol.getDecoderName());
+
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (analysis.getProtocol(i) != null) {
+                bestDecodeWithVarsTextArea.append(name + "\t" + analysis.protocolString(i) + "\n");
+                bestDecodeWithoutVarsTextArea.append(name + "\t" + analysis.protocolStringWithoutVars(i) + "\n");
 
                 parameterUsageTextArea.append(name);
-                NameEngine definitions = protocol.getDefinitions();
-                for (Map.Entry<String, Expression> definition : definitions) {
-                    try {
-                        String definitionName = definition.getKey();
-                        int length = protocol.guessParameterLength(definitionName);
-                        long num = definition.getValue().toLong();
-                        parameterUsageTextArea.append("\t" + IrCoreUtils.formatIntegerWithLeadingZeros(num, properties.getRadix(), length));
-                    } catch (NameUnassignedException ex) {
-                        throw new ThisCannotHappenException(ex);
-                    }
-                }
+                analysis.parameters(i).values().forEach((value) -> {
+                    parameterUsageTextArea.append("\t" + value);
+                });
                 parameterUsageTextArea.append("\n");
-
             }
-            i++;
         }
 
-        Map<String, BitCounter> bitStatistics = BitCounter.scrutinizeProtocols(protocols);
+        Map<String, BitCounter> bitStatistics = analysis.bitStatistics();
         bitStatistics.entrySet().forEach((kvp) -> {
             bitUsageTextArea.append(kvp.getKey() + "\t" + kvp.getValue().toString() + "\n");
         });
+        Metrics.record(Metrics.Stage.analysisRendering, start, analysis.size());
+        FlightRecorderEvents.commitAnalysis(event, analysis);
+        updateMemoryTitle();
     }
 
     /**
@@ -193,6 +208,8 @@ public class AnalyzedFrame extends javax.swing.JInternalFrame {
 
         analyzedPopupMenu = new javax.swing.JPopupMenu();
         jMenuItem1 = new javax.swing.JMenuItem();
+        jSeparator1 = new javax.swing.JPopupMenu.Separator();
+        releaseCachesMenuItem = new javax.swing.JMenuItem();
         jTabbedPane1 = new javax.swing.JTabbedPane();
         timingsPanel = new javax.swing.JPanel();
         jScrollPane2 = new javax.swing.JScrollPane();
@@ -219,6 +236,16 @@ public class AnalyzedFrame extends javax.swing.JInternalFrame {
 
         jMenuItem1.setText("jMenuItem1");
         analyzedPopupMenu.add(jMenuItem1);
+        analyzedPopupMenu.add(jSeparator1);
+
+        releaseCachesMenuItem.setText("Release caches");
+        releaseCachesMenuItem.setToolTipText("Drop the cached analysis; the texts are kept.");
+        releaseCachesMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                releaseCachesMenuItemActionPerformed(evt);
+            }
+        });
+        analyzedPopupMenu.add(releaseCachesMenuItem);
 
         setClosable(true);
         setIconifiable(true);
@@ -373,6 +400,9 @@ public class AnalyzedFrame extends javax.swing.JInternalFrame {
         pack();
     }// </editor-fold>//GEN-END:initComponents
 
+    private void releaseCachesMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_releaseCachesMenuItemActionPerformed
+        releaseCaches();
+    }//GEN-LAST:event_releaseCachesMenuItemActionPerformed
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JPopupMenu analyzedPopupMenu;
@@ -394,9 +424,11 @@ public class AnalyzedFrame extends javax.swing.JInternalFrame {
     private javax.swing.JScrollPane jScrollPane6;
     private javax.swing.JScrollPane jScrollPane7;
     private javax.swing.JScrollPane jScrollPane8;
+    private javax.swing.JPopupMenu.Separator jSeparator1;
     private javax.swing.JTabbedPane jTabbedPane1;
     private javax.swing.JTabbedPane jTabbedPane2;
     private javax.swing.JTextArea parameterUsageTextArea;
+    private javax.swing.JMenuItem releaseCachesMenuItem;
     private javax.swing.JTextArea repeatDataTextArea;
     private javax.swing.JPanel timingsPanel;
     private javax.swing.JTextArea timingsTextArea;
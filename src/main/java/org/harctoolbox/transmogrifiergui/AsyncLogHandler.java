@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.ErrorManager;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Logging Handler that hands the records to a background thread through a bounded queue,
+ * so that logging does not block the caller (often the EDT) on console or file output.
+ * The background thread writes to System.err (as it is at the time of writing, thus normally the console),
+ * and optionally to a rolling log file.
+ */
+public class AsyncLogHandler extends Handler {
+
+    private static final long CLOSE_TIMEOUT = 2000L; // milliseconds
+    private static final long POLL_INTERVAL = 200L; // milliseconds
+    private static final LogRecord POISON = new LogRecord(Level.OFF, "");
+
+    public enum OverflowPolicy {
+        /** Discard the record that does not fit. */
+        dropNewest,
+
+        /** Discard the oldest record in the queue to make room. */
+        dropOldest,
+
+        /** Wait for room in the queue, i.e. the caller is blocked. */
+        block
+    }
+
+    /**
+     * Replaces the console handlers of the root logger (and a previously installed AsyncLogHandler)
+     * by an AsyncLogHandler configured from the properties, and registers a shutdown hook that flushes it.
+     * Other handlers of the root logger are left alone.
+     * @param properties
+     * @return the handler installed
+     * @throws IOException if the log file could not be opened
+     */
+    public static AsyncLogHandler install(Properties properties) throws IOException {
+        AsyncLogHandler handler = new AsyncLogHandler(properties.getLogQueueSize(), properties.getLogOverflowPolicy());
+        if (properties.getLogFile() != null)
+            handler.addSink(new FileHandler(properties.getLogFile(), properties.getLogFileLimit(), properties.getLogFileCount(), true));
+
+        Logger root = Logger.getLogger("");
+        for (Handler h : root.getHandlers()) {
+            if (h instanceof ConsoleHandler || h instanceof AsyncLogHandler) {
+                root.removeHandler(h);
+                h.close();
+            }
+        }
+        root.addHandler(handler);
+        Runtime.getRuntime().addShutdownHook(new Thread(handler::close, "AsyncLogHandler-shutdown"));
+        return handler;
+    }
+
+    private final ArrayBlockingQueue<LogRecord> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final List<Handler> sinks = new ArrayList<>(2);
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    public AsyncLogHandler(int capacity, OverflowPolicy overflowPolicy) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        setFormatter(new SimpleFormatter());
+        writer = new Thread(this::run, "AsyncLogHandler");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Adds an additional destination, for example a FileHandler.
+     * @param sink
+     */
+    public synchronized void addSink(Handler sink) {
+        sinks.add(sink);
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record))
+            return;
+
+        // Caller information is inferred lazily from the stack, so it has to be done on this thread.
+        record.getSourceClassName();
+
+        switch (overflowPolicy) {
+            case block:
+                try {
+                    queue.put(record);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                }
+                break;
+            case dropOldest:
+                while (!queue.offer(record)) {
+                    LogRecord oldest = queue.poll();
+                    if (oldest == POISON) {
+                        // Closing; keep the end marker, and drop this record instead.
+                        queue.offer(POISON);
+                        dropped.incrementAndGet();
+                        break;
+                    }
+                    if (oldest != null)
+                        dropped.incrementAndGet();
+                }
+                break;
+            default:
+                if (!queue.offer(record))
+                    dropped.incrementAndGet();
+                break;
+        }
+    }
+
+    private void run() {
+        long reportedDropped = 0L;
+        List<LogRecord> batch = new ArrayList<>(queue.remainingCapacity());
+        try {
+            while (true) {
+                LogRecord first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // Also ends when the end marker was lost, e.g. could not be queued at close.
+                    if (closed)
+                        break;
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                boolean done = false;
+                for (LogRecord record : batch) {
+                    if (record == POISON)
+                        done = true;
+                    else
+                        write(record);
+                }
+                batch.clear();
+
+                long d = dropped.get();
+                if (d != reportedDropped) {
+                    write(new LogRecord(Level.WARNING, (d - reportedDropped) + " log records dropped"));
+                    reportedDropped = d;
+                }
+                flushSinks();
+                if (done)
+                    return;
+            }
+            flushSinks();
+        } catch (InterruptedException ex) {
+            flushSinks();
+        }
+    }
+
+    private void write(LogRecord record) {
+        try {
+            Formatter formatter = getFormatter();
+            System.err.print(formatter.format(record));
+        } catch (RuntimeException ex) {
+            reportError(null, ex, ErrorManager.FORMAT_FAILURE);
+        }
+        synchronized (this) {
+            sinks.forEach((sink) -> {
+                sink.publish(record);
+            });
+        }
+    }
+
+    private synchronized void flushSinks() {
+        System.err.flush();
+        sinks.forEach((sink) -> {
+            sink.flush();
+        });
+    }
+
+    /**
+     * Flushing is asynchronous; the records are written as soon as the writer gets to them.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Writes out all queued records, then closes the sinks. Waits at most CLOSE_TIMEOUT milliseconds.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (!queue.offer(POISON, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS))
+                writer.interrupt();
+            writer.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            sinks.forEach((sink) -> {
+                sink.close();
+            });
+        }
+    }
+}
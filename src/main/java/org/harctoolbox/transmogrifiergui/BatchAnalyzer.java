@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.harctoolbox.ircore.InvalidArgumentException;
+
+/**
+ * Runs the import and analysis pipeline of the GUI on files and directories, without Swing/AWT.
+ * The files are processed in parallel, at most 2 * threads at a time, including those waiting to be printed;
+ * the output is in the order of the arguments, directories being traversed in alphabetical order.
+ * Files that cannot be processed get a row with only the file name and the error (the last column).
+ *
+ * Usage: --batch [--format tsv|json] [--threads N] [--output file] file-or-directory...
+ */
+public class BatchAnalyzer {
+
+    public enum Format {
+        tsv,
+        json
+    }
+
+    private static final String[] EXTENSIONS = { ".ict", ".txt" };
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+
+    private static void usage(int exitcode) {
+        (exitcode == 0 ? System.out : System.err).println("Usage: --batch [--format tsv|json] [--threads N] [--output file] file-or-directory...");
+        System.exit(exitcode);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Format format = Format.tsv;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String output = null;
+        List<File> inputs = new ArrayList<>(args.length);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--format":
+                        format = Format.valueOf(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--output":
+                        output = args[++i];
+                        break;
+                    case "--help":
+                        usage(0);
+                        break;
+                    default:
+                        inputs.add(new File(args[i]));
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            usage(1);
+        }
+        if (inputs.isEmpty())
+            usage(1);
+
+        PropertiesSnapshot properties = PropertiesStore.loadDefault(Properties.getInstance());
+
+        try (PrintWriter out = new PrintWriter(output == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+            BatchAnalyzer batchAnalyzer = new BatchAnalyzer(properties, format, threads);
+            int errors = batchAnalyzer.run(inputs, out);
+            out.flush();
+            System.exit(errors == 0 ? 0 : 2);
+        } catch (IOException | InterruptedException ex) {
+            System.err.println(ex.getLocalizedMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Expands directories (recursively) into the contained files with known extensions.
+     * @param inputs
+     * @return files, in argument order, directory content sorted by name.
+     */
+    public static List<File> expand(List<File> inputs) {
+        List<File> result = new ArrayList<>(inputs.size());
+        inputs.forEach((file) -> {
+            expand(file, result, true);
+        });
+        return result;
+    }
+
+    private static void expand(File file, List<File> result, boolean explicit) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null)
+                return;
+            Arrays.sort(children);
+            for (File child : children)
+                expand(child, result, false);
+        } else if (explicit || hasKnownExtension(file))
+            result.add(file);
+    }
+
+    private static boolean hasKnownExtension(File file) {
+        String name = file.getName().toLowerCase(java.util.Locale.US);
+        for (String ext : EXTENSIONS)
+            if (name.endsWith(ext))
+                return true;
+        return false;
+    }
+
+    private final PropertiesSnapshot properties;
+    private final Format format;
+    private final int threads;
+
+    public BatchAnalyzer(PropertiesSnapshot properties, Format format, int threads) {
+        this.properties = properties;
+        this.format = format;
+        this.threads = threads;
+    }
+
+    /**
+     * Processes the inputs, writing the result to out.
+     * @param inputs files and directories
+     * @param out
+     * @return number of files that could not be processed
+     * @throws InterruptedException
+     */
+    public int run(List<File> inputs, PrintWriter out) throws InterruptedException {
+        List<File> files = expand(inputs);
+        int poolSize = Math.max(1, threads);
+        int window = IN_FLIGHT_PER_THREAD * poolSize;
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            // Submitted, not yet printed, in order; bounds the queued files and the results held.
+            Deque<Future<Result>> inFlight = new ArrayDeque<>(window);
+            int errors = 0;
+            printHead(format, out);
+            boolean first = true;
+            for (File file : files) {
+                if (inFlight.size() == window) {
+                    errors += printNext(inFlight, out, first);
+                    first = false;
+                }
+                inFlight.add(executor.submit(() -> process(file)));
+            }
+            while (!inFlight.isEmpty()) {
+                errors += printNext(inFlight, out, first);
+                first = false;
+            }
+            printTail(format, out);
+            return errors;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the oldest submitted file, and prints it.
+     * @return 1 if it failed, otherwise 0
+     */
+    private int printNext(Deque<Future<Result>> inFlight, PrintWriter out, boolean first) throws InterruptedException {
+        Result result;
+        try {
+            result = inFlight.remove().get();
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        print(format, out, result, first);
+        return result.isError() ? 1 : 0;
+    }
+
+    /**
+     * Imports and analyzes one file, and renders the result, so that no large objects are kept.
+     * @param file
+     * @return rendered result
+     */
+    Result process(File file) {
+        try {
+            SequenceImporter.Imported imported = SequenceImporter.importFile(file, properties);
+            Analysis analysis = new Analysis(imported.getSequences(), imported.getFrequencyWithDefault(), properties);
+            return success(format, file.getPath(), SignalResult.of(analysis));
+        } catch (IOException | InvalidArgumentException | RuntimeException ex) {
+            return failure(format, file.getPath(), ex.getClass().getSimpleName() + ": " + ex.getLocalizedMessage());
+        }
+    }
+
+    static Result success(Format format, String file, List<SignalResult> results) {
+        return new Result(format == Format.json ? toJson(file, results) : toTsv(file, results), null);
+    }
+
+    static Result failure(Format format, String file, String message) {
+        System.err.println(file + ": " + message);
+        return new Result(format == Format.json
+                ? "  {\"file\": " + jsonString(file) + ", \"error\": " + jsonString(message) + "}"
+                : file + "\t\t\t\t" + tsvField(message) + "\n", message);
+    }
+
+    static void printHead(Format format, PrintWriter out) {
+        if (format == Format.json)
+            out.println("[");
+        else
+            out.println("file\tname\tprotocol\tparameters\terror");
+    }
+
+    static void print(Format format, PrintWriter out, Result result, boolean first) {
+        if (format == Format.json && !first)
+            out.println(",");
+        out.print(result.text);
+    }
+
+    static void printTail(Format format, PrintWriter out) {
+        if (format == Format.json)
+            out.println("\n]");
+    }
+
+    static String toTsv(String file, List<SignalResult> results) {
+        StringBuilder str = new StringBuilder(128 * results.size());
+        for (SignalResult result : results) {
+            str.append(file).append('\t').append(result.getName()).append('\t');
+            String irp = result.getProtocol();
+            str.append(irp != null ? irp : "").append('\t');
+            boolean firstParam = true;
+            for (Map.Entry<String, String> kvp : result.getParameters().entrySet()) {
+                str.append(firstParam ? "" : " ").append(kvp.getKey()).append('=').append(kvp.getValue());
+                firstParam = false;
+            }
+            str.append("\t\n"); // empty error
+        }
+        return str.toString();
+    }
+
+    /**
+     * @return s, with tabs and line breaks replaced by spaces
+     */
+    private static String tsvField(String s) {
+        return s == null ? "" : s.replaceAll("[\t\r\n]+", " ");
+    }
+
+    static String toJson(String file, List<SignalResult> results) {
+        StringBuilder str = new StringBuilder(256 * results.size());
+        str.append("  {\"file\": ").append(jsonString(file)).append(", \"signals\": [");
+        for (int i = 0; i < results.size(); i++) {
+            SignalResult result = results.get(i);
+            str.append(i > 0 ? "," : "").append("\n    {\"name\": ").append(jsonString(result.getName()));
+            str.append(", \"protocol\": ").append(jsonString(result.getProtocol()));
+            str.append(", \"parameters\": {");
+            boolean firstParam = true;
+            for (Map.Entry<String, String> kvp : result.getParameters().entrySet()) {
+                str.append(firstParam ? "" : ", ").append(jsonString(kvp.getKey())).append(": ").append(jsonString(kvp.getValue()));
+                firstParam = false;
+            }
+            str.append("}}");
+        }
+        str.append("\n  ]}");
+        return str.toString();
+    }
+
+    static String jsonString(String s) {
+        if (s == null)
+            return "null";
+        StringBuilder str = new StringBuilder(s.length() + 2);
+        str.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    str.append("\\\"");
+                    break;
+                case '\\':
+                    str.append("\\\\");
+                    break;
+                case '\n':
+                    str.append("\\n");
+                    break;
+                case '\t':
+                    str.append("\\t");
+                    break;
+                case '\r':
+                    str.append("\\r");
+                    break;
+                default:
+                    if (c < 0x20)
+                        str.append(String.format("\\u%04x", (int) c));
+                    else
+                        str.append(c);
+            }
+        }
+        str.append('"');
+        return str.toString();
+    }
+
+    /**
+     * The outcome of the analysis of one signal, rendered to strings.
+     */
+    static class SignalResult {
+
+        static List<SignalResult> of(Analysis analysis) {
+            List<String> names = analysis.getNames();
+            List<SignalResult> results = new ArrayList<>(names.size());
+            for (int i = 0; i < names.size(); i++)
+                results.add(new SignalResult(names.get(i), analysis.protocolString(i), analysis.parameters(i)));
+            return results;
+        }
+
+        private final String name;
+        private final String protocol;
+        private final Map<String, String> parameters;
+
+        SignalResult(String name, String protocol, Map<String, String> parameters) {
+            this.name = name;
+            this.protocol = protocol;
+            this.parameters = parameters;
+        }
+
+        /**
+         * @return the name
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return the protocol as IRP string, or null if none found.
+         */
+        String getProtocol() {
+            return protocol;
+        }
+
+        /**
+         * @return the parameters, in protocol order.
+         */
+        Map<String, String> getParameters() {
+            return parameters;
+        }
+    }
+
+    static class Result {
+
+        private final String text;
+        private final String error;
+
+        boolean isError() {
+            return error != null;
+        }
+
+        Result(String text, String error) {
+            this.text = text;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.PrintStream;
+import javax.swing.JTextArea;
+import org.harctoolbox.guicomponents.Console;
+
+/**
+ * Console whose {@link #setStdOut} and {@link #setStdErr} redirect through a {@link ConsoleRingBuffer}
+ * while one is running, otherwise as the Console does.
+ */
+public class BufferedConsole extends Console {
+
+    private ConsoleRingBuffer ringBuffer = null;
+    private PrintStream originalOut = null;
+    private PrintStream originalErr = null;
+
+    /**
+     * Starts buffering the output; takes effect with the next setStdOut and setStdErr.
+     * @param capacity number of lines the buffer can hold between two flushes
+     * @param maxLines maximal number of lines kept in the text area
+     * @param frameRate number of flushes per second
+     * @param droppedListener
+     * @return false if the text area of the console cannot be found, so the output will not be buffered.
+     */
+    public boolean startBuffer(int capacity, int maxLines, int frameRate, ConsoleRingBuffer.DroppedListener droppedListener) {
+        java.awt.Component view = getViewport().getView();
+        if (!(view instanceof JTextArea))
+            return false;
+        stopBuffer();
+        ringBuffer = new ConsoleRingBuffer((JTextArea) view, capacity, maxLines, frameRate);
+        ringBuffer.setDroppedListener(droppedListener);
+        ringBuffer.start();
+        return true;
+    }
+
+    /**
+     * Stops the buffer, writes out what it holds, and restores System.out and System.err
+     * as they were before redirected into the buffer. Must be called on the EDT.
+     */
+    public void stopBuffer() {
+        if (ringBuffer == null)
+            return;
+        ringBuffer.stop();
+        ringBuffer = null;
+        if (originalOut != null)
+            System.setOut(originalOut);
+        if (originalErr != null)
+            System.setErr(originalErr);
+        originalOut = null;
+        originalErr = null;
+    }
+
+    @Override
+    public void setStdOut() {
+        if (ringBuffer == null) {
+            super.setStdOut();
+            return;
+        }
+        if (originalOut == null)
+            originalOut = System.out;
+        System.setOut(ringBuffer.newPrintStream());
+    }
+
+    @Override
+    public void setStdErr() {
+        if (ringBuffer == null) {
+            super.setStdErr();
+            return;
+        }
+        if (originalErr == null)
+            originalErr = System.err;
+        System.setErr(ringBuffer.newPrintStream());
+    }
+
+    /**
+     * @return the number of lines that were dropped since the buffer could not keep up, 0 if not buffering
+     */
+    public long getDropped() {
+        return ringBuffer != null ? ringBuffer.getDropped() : 0L;
+    }
+}
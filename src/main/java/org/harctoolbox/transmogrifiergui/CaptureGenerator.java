@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import org.harctoolbox.ircore.IrCoreException;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.ircore.IrSignal;
+import org.harctoolbox.ircore.OddSequenceLengthException;
+import org.harctoolbox.ircore.ThisCannotHappenException;
+import org.harctoolbox.irp.IrpException;
+import org.harctoolbox.irp.Protocol;
+
+/**
+ * Generator of synthetic captures, for scale testing.
+ * Renders some common protocols with random parameters and a random number of repeats,
+ * and adds timing jitter, noise flashes, and carrier frequency variation, like a real capture.
+ * The output is deterministic for a given seed.
+ *
+ * Usage: --generate [--format ict|text|mode2] [--count N] [--seed N] [--jitter r] [--noise p] [--carrier-variation r] [--protocols p,q,...] --output file
+ */
+public class CaptureGenerator {
+
+    private static final double NOMINAL_FREQUENCY = 38000.0;
+    private static final int SAMPLE_COUNT_WIDTH = 10;
+
+    private static final Object[][] PROTOCOLS = {
+        // name, IRP without parameter specs, parameter names, parameter maxima
+        { "nec1", "{38.4k,564}<1,-1|1,-3>(16,-8,D:8,S:8,F:8,~F:8,1,^108m,(16,-4,1,^108m)*)", new String[] { "D", "S", "F" }, new long[] { 255, 255, 255 } },
+        { "rc5", "{36k,msb,889}<1,-1|-1,1>((1,~F:1:6,T:1,D:5,F:6,^114m)*)", new String[] { "D", "F", "T" }, new long[] { 31, 127, 1 } },
+        { "rc6", "{36k,444,msb}<-1,1|1,-1>((6,-2,1:1,0:3,<-2,2|2,-2>(T:1),D:8,F:8,^107m)*)", new String[] { "D", "F", "T" }, new long[] { 255, 255, 1 } },
+        { "sony12", "{40k,600}<1,-1|2,-1>(4,-1,F:7,D:5,^45m)*", new String[] { "D", "F" }, new long[] { 31, 127 } },
+        { "sony20", "{40k,600}<1,-1|2,-1>(4,-1,F:7,D:5,S:8,^45m)*", new String[] { "D", "S", "F" }, new long[] { 31, 255, 127 } },
+        { "jvc", "{38k,525}<1,-1|1,-3>(16,-8,(D:8,F:8,1,-45)*)", new String[] { "D", "F" }, new long[] { 255, 255 } },
+        { "denon", "{38k,264}<1,-3|1,-7>(D:5,F:8,0:2,1,-165,D:5,~F:8,3:2,1,-165)*", new String[] { "D", "F" }, new long[] { 31, 255 } },
+        { "rca", "{58k,460,msb}<1,-2|1,-4>(8,-8,D:4,F:8,~D:4,~F:8,1,-16)*", new String[] { "D", "F" }, new long[] { 15, 255 } }
+    };
+
+    private static void usage(int exitcode) {
+        (exitcode == 0 ? System.out : System.err).println("Usage: --generate [--format ict|text|mode2] [--count N] [--seed N] [--jitter r] [--noise p] [--carrier-variation r] [--protocols p,q,...] --output file");
+        System.exit(exitcode);
+    }
+
+    public static void main(String[] args) {
+        SequenceImporter.Format format = SequenceImporter.Format.ict;
+        boolean mode2 = false;
+        int count = 1000;
+        long seed = 0L;
+        String output = null;
+        CaptureGenerator generator = null;
+        try {
+            Double jitter = null;
+            Double noise = null;
+            Double carrierVariation = null;
+            String[] protocols = null;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--format":
+                        mode2 = args[++i].equals("mode2");
+                        if (!mode2)
+                            format = SequenceImporter.Format.valueOf(args[i]);
+                        break;
+                    case "--count":
+                        count = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--jitter":
+                        jitter = Double.parseDouble(args[++i]);
+                        break;
+                    case "--noise":
+                        noise = Double.parseDouble(args[++i]);
+                        break;
+                    case "--carrier-variation":
+                        carrierVariation = Double.parseDouble(args[++i]);
+                        break;
+                    case "--protocols":
+                        protocols = args[++i].split(",");
+                        break;
+                    case "--output":
+                        output = args[++i];
+                        break;
+                    case "--help":
+                        usage(0);
+                        break;
+                    default:
+                        usage(1);
+                        break;
+                }
+            }
+            generator = protocols != null ? new CaptureGenerator(seed, protocols) : new CaptureGenerator(seed);
+            if (jitter != null)
+                generator.setJitter(jitter);
+            if (noise != null)
+                generator.setNoiseProbability(noise);
+            if (carrierVariation != null)
+                generator.setCarrierVariation(carrierVariation);
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            usage(1);
+        }
+        if (output == null)
+            usage(1);
+
+        try {
+            if (mode2)
+                generator.writeMode2(new File(output), count);
+            else
+                generator.write(new File(output), format, count);
+        } catch (IOException ex) {
+            System.err.println(ex.getLocalizedMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return Names of the protocols known to the generator.
+     */
+    public static List<String> protocolNames() {
+        List<String> result = new ArrayList<>(PROTOCOLS.length);
+        for (Object[] entry : PROTOCOLS)
+            result.add((String) entry[0]);
+        return result;
+    }
+
+    private final Random random;
+    private final List<ProtocolSpec> protocols;
+    private double jitter = 0.03;
+    private double absoluteJitter = 20.0;
+    private double noiseProbability = 0.02;
+    private double carrierVariation = 0.02;
+    private int maxRepeats = 3;
+    private long generated = 0L;
+
+    /**
+     * Generator using all known protocols.
+     * @param seed
+     */
+    public CaptureGenerator(long seed) {
+        this(seed, protocolNames().toArray(new String[PROTOCOLS.length]));
+    }
+
+    /**
+     * @param seed
+     * @param protocolNames names of the protocols to be used, as in {@link #protocolNames()}.
+     * @throws IllegalArgumentException if a protocol name is unknown.
+     */
+    public CaptureGenerator(long seed, String... protocolNames) {
+        random = new Random(seed);
+        protocols = new ArrayList<>(protocolNames.length);
+        Map<String, Object[]> known = new HashMap<>(PROTOCOLS.length);
+        for (Object[] entry : PROTOCOLS)
+            known.put((String) entry[0], entry);
+        for (String name : protocolNames) {
+            Object[] entry = known.get(name.toLowerCase(Locale.US));
+            if (entry == null)
+                throw new IllegalArgumentException("Unknown protocol: " + name);
+            protocols.add(new ProtocolSpec(entry));
+        }
+    }
+
+    /**
+     * @param jitter relative standard deviation of every duration
+     */
+    public void setJitter(double jitter) {
+        this.jitter = jitter;
+    }
+
+    /**
+     * @param absoluteJitter absolute standard deviation of every duration, in micro seconds
+     */
+    public void setAbsoluteJitter(double absoluteJitter) {
+        this.absoluteJitter = absoluteJitter;
+    }
+
+    /**
+     * @param noiseProbability probability that a capture contains a noise flash
+     */
+    public void setNoiseProbability(double noiseProbability) {
+        this.noiseProbability = noiseProbability;
+    }
+
+    /**
+     * @param carrierVariation maximal relative deviation of the carrier frequency from the nominal
+     */
+    public void setCarrierVariation(double carrierVariation) {
+        this.carrierVariation = carrierVariation;
+    }
+
+    /**
+     * @param maxRepeats maximal number of repeat sequences in a capture
+     */
+    public void setMaxRepeats(int maxRepeats) {
+        this.maxRepeats = maxRepeats;
+    }
+
+    /**
+     * @return a new capture
+     */
+    public Capture next() {
+        ProtocolSpec spec = protocols.get(random.nextInt(protocols.size()));
+        Map<String, Long> parameters = new HashMap<>(4);
+        StringBuilder name = new StringBuilder(32).append(spec.name);
+        for (int i = 0; i < spec.parameterNames.length; i++) {
+            long value = (long) random.nextInt((int) spec.maxima[i] + 1);
+            parameters.put(spec.parameterNames[i], value);
+            name.append('_').append(spec.parameterNames[i]).append(value);
+        }
+        name.append('_').append(generated++);
+
+        IrSignal irSignal;
+        try {
+            irSignal = spec.protocol.toIrSignal(parameters);
+        } catch (IrpException | IrCoreException ex) {
+            throw new ThisCannotHappenException(ex);
+        }
+        int repeats = 1 + random.nextInt(Math.max(1, maxRepeats));
+        double frequency = (irSignal.getFrequency() != null ? irSignal.getFrequency() : NOMINAL_FREQUENCY)
+                * (1.0 + carrierVariation * (2.0 * random.nextDouble() - 1.0));
+        return new Capture(name.toString(), distort(render(irSignal, repeats)), frequency);
+    }
+
+    private static double[] render(IrSignal irSignal, int repeats) {
+        IrSequence intro = irSignal.getIntroSequence();
+        IrSequence repeat = irSignal.getRepeatSequence();
+        IrSequence ending = irSignal.getEndingSequence();
+        double[] data = new double[intro.getLength() + repeats * repeat.getLength() + ending.getLength()];
+        int pos = copy(intro, data, 0);
+        for (int r = 0; r < repeats; r++)
+            pos = copy(repeat, data, pos);
+        copy(ending, data, pos);
+        return data;
+    }
+
+    private static int copy(IrSequence irSequence, double[] data, int pos) {
+        for (int i = 0; i < irSequence.getLength(); i++)
+            data[pos++] = Math.abs(irSequence.get(i));
+        return pos;
+    }
+
+    private double[] distort(double[] data) {
+        for (int i = 0; i < data.length; i++)
+            data[i] = Math.max(1.0, data[i] * (1.0 + jitter * random.nextGaussian()) + absoluteJitter * random.nextGaussian());
+        if (random.nextDouble() >= noiseProbability)
+            return data;
+
+        // Split a long enough gap by a short flash
+        int gap = 2 * random.nextInt(data.length / 2) + 1;
+        double flash = 50.0 + 200.0 * random.nextDouble();
+        if (data[gap] < flash + 200.0)
+            return data;
+        double before = 100.0 + (data[gap] - flash - 200.0) * random.nextDouble();
+        double after = data[gap] - flash - before;
+        double[] result = new double[data.length + 2];
+        System.arraycopy(data, 0, result, 0, gap);
+        result[gap] = before;
+        result[gap + 1] = flash;
+        result[gap + 2] = after;
+        System.arraycopy(data, gap + 1, result, gap + 3, data.length - gap - 1);
+        return result;
+    }
+
+    /**
+     * Adds count new captures to the table model.
+     * @param tableModel
+     * @param count
+     */
+    public void addTo(RawIrSequence.RawTableModel tableModel, int count) {
+        for (int i = 0; i < count; i++) {
+            Capture capture = next();
+            tableModel.addSequence(new RawIrSequence(capture.toIrSequence(), capture.getName()));
+        }
+    }
+
+    /**
+     * Writes count new captures to the file, in the format given.
+     * The captures are written one at a time, so the size is not limited by memory.
+     * @param file
+     * @param format
+     * @param count
+     * @throws IOException
+     */
+    public void write(File file, SequenceImporter.Format format, int count) throws IOException {
+        long samples = 0L;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            if (format == SequenceImporter.Format.ict)
+                out.write("irscope 0\ncarrier_frequency " + Math.round(NOMINAL_FREQUENCY) + "\nsample_count " + pad(0L) + "\n");
+            StringBuilder str = new StringBuilder(4096);
+            for (int i = 0; i < count; i++) {
+                Capture capture = next();
+                str.setLength(0);
+                if (format == SequenceImporter.Format.ict)
+                    capture.appendIct(str);
+                else
+                    capture.appendText(str);
+                out.append(str);
+                samples += capture.durations.length;
+            }
+        }
+        if (format == SequenceImporter.Format.ict) {
+            // The number of samples is known only now; overwrite the placeholder, which has the same width.
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                String header = "irscope 0\ncarrier_frequency " + Math.round(NOMINAL_FREQUENCY) + "\nsample_count ";
+                raf.seek(header.length());
+                raf.write(pad(samples).getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    /**
+     * Writes count new captures to the file as LIRC mode2 text, suitable for replay by {@link LiveCapture}.
+     * @param file
+     * @param count
+     * @throws IOException
+     */
+    public void writeMode2(File file, int count) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII))) {
+            StringBuilder str = new StringBuilder(4096);
+            for (int i = 0; i < count; i++) {
+                str.setLength(0);
+                next().appendMode2(str);
+                out.append(str);
+            }
+        }
+    }
+
+    private static String pad(long n) {
+        String s = Long.toString(n);
+        StringBuilder str = new StringBuilder(SAMPLE_COUNT_WIDTH);
+        for (int i = s.length(); i < SAMPLE_COUNT_WIDTH; i++)
+            str.append('0');
+        return str.append(s).toString();
+    }
+
+    private static class ProtocolSpec {
+
+        private final String name;
+        private final Protocol protocol;
+        private final String[] parameterNames;
+        private final long[] maxima;
+
+        ProtocolSpec(Object[] entry) {
+            name = (String) entry[0];
+            try {
+                protocol = new Protocol((String) entry[1]);
+            } catch (IrpException ex) {
+                throw new ThisCannotHappenException(ex);
+            }
+            parameterNames = (String[]) entry[2];
+            maxima = (long[]) entry[3];
+        }
+    }
+
+    /**
+     * A generated capture: name, durations in micro seconds, starting with a flash, and modulation frequency.
+     */
+    public static class Capture {
+
+        private final String name;
+        private final double[] durations;
+        private final double frequency;
+
+        Capture(String name, double[] durations, double frequency) {
+            this.name = name;
+            this.durations = durations;
+            this.frequency = frequency;
+        }
+
+        /**
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the frequency
+         */
+        public double getFrequency() {
+            return frequency;
+        }
+
+        public IrSequence toIrSequence() {
+            try {
+                return new IrSequence(durations);
+            } catch (OddSequenceLengthException ex) {
+                throw new ThisCannotHappenException(ex);
+            }
+        }
+
+        /**
+         * Appends the capture in ICT format, i.e. a note line, then one line per duration,
+         * flashes with their number of carrier periods.
+         * @param str
+         */
+        void appendIct(StringBuilder str) {
+            str.append("note=").append(name).append('\n');
+            for (int i = 0; i < durations.length; i++) {
+                long duration = Math.round(durations[i]);
+                if (i % 2 == 0)
+                    str.append('+').append(duration).append(',').append(Math.max(1L, Math.round(durations[i] * frequency / 1000000.0)));
+                else
+                    str.append('-').append(duration);
+                str.append('\n');
+            }
+        }
+
+        /**
+         * Appends the capture in LIRC mode2 format, one "pulse" or "space" line per duration.
+         * @param str
+         */
+        void appendMode2(StringBuilder str) {
+            for (int i = 0; i < durations.length; i++)
+                str.append(i % 2 == 0 ? "pulse " : "space ").append(Math.round(durations[i])).append('\n');
+        }
+
+        /**
+         * Appends the capture as one text line: name, then signed durations.
+         * @param str
+         */
+        void appendText(StringBuilder str) {
+            str.append(name);
+            for (int i = 0; i < durations.length; i++)
+                str.append(i % 2 == 0 ? " +" : " -").append(Math.round(durations[i]));
+            str.append('\n');
+        }
+    }
+}
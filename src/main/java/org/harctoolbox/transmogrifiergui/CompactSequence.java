@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.util.Arrays;
+import java.util.Collection;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.ircore.IrSignal;
+import org.harctoolbox.ircore.OddSequenceLengthException;
+import org.harctoolbox.ircore.ThisCannotHappenException;
+
+/**
+ * Durations of an {@link IrSequence}, quantized to whole micro seconds and packed into a byte array.
+ * Every duration is stored as the difference to the duration two positions earlier (so marks are compared
+ * with marks, and spaces with spaces), zigzag encoded, as a varint of 7 bits per byte.
+ * Typical captures take one or two bytes per duration, instead of the eight of a double.
+ * Immutable; decoded to a new {@link IrSequence} on every request.
+ * Equal if the quantized durations are equal.
+ */
+public final class CompactSequence {
+
+    public static CompactSequence encode(IrSequence irSequence) {
+        int length = irSequence.getLength();
+        byte[] buffer = new byte[10 * length];
+        int position = 0;
+        long previousMark = 0L;
+        long previousSpace = 0L;
+        for (int i = 0; i < length; i++) {
+            long duration = Math.round(irSequence.get(i));
+            long delta = duration - ((i & 1) == 0 ? previousMark : previousSpace);
+            if ((i & 1) == 0)
+                previousMark = duration;
+            else
+                previousSpace = duration;
+            long value = (delta << 1) ^ (delta >> 63);
+            while ((value & ~0x7fL) != 0L) {
+                buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+        return new CompactSequence(length, Arrays.copyOf(buffer, position));
+    }
+
+    private final int length;
+    private final byte[] data;
+
+    private CompactSequence(int length, byte[] data) {
+        this.length = length;
+        this.data = data;
+    }
+
+    /**
+     * @return the number of durations
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the durations, in micro seconds.
+     */
+    public double[] toDurations() {
+        double[] durations = new double[length];
+        int position = 0;
+        long previousMark = 0L;
+        long previousSpace = 0L;
+        for (int i = 0; i < length; i++) {
+            long value = 0L;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            long duration = ((value >>> 1) ^ -(value & 1L)) + ((i & 1) == 0 ? previousMark : previousSpace);
+            if ((i & 1) == 0)
+                previousMark = duration;
+            else
+                previousSpace = duration;
+            durations[i] = duration;
+        }
+        return durations;
+    }
+
+    public IrSequence toIrSequence() {
+        try {
+            return new IrSequence(toDurations());
+        } catch (OddSequenceLengthException ex) {
+            throw new ThisCannotHappenException(ex);
+        }
+    }
+
+    /**
+     * @return estimated bytes used by this object
+     */
+    public long estimateMemory() {
+        return MemoryEstimate.compactSequence(data.length);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CompactSequence && ((CompactSequence) obj).length == length
+                && Arrays.equals(((CompactSequence) obj).data, data);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * length + Arrays.hashCode(data);
+    }
+
+    /**
+     * The three sequences of an {@link IrSignal}, and its modulation parameters.
+     */
+    public static final class Signal {
+
+        public static Signal encode(IrSignal irSignal) {
+            return new Signal(CompactSequence.encode(irSignal.getIntroSequence()), CompactSequence.encode(irSignal.getRepeatSequence()),
+                    CompactSequence.encode(irSignal.getEndingSequence()), irSignal.getFrequency(), irSignal.getDutyCycle());
+        }
+
+        private final CompactSequence intro;
+        private final CompactSequence repeat;
+        private final CompactSequence ending;
+        private final Double frequency;
+        private final Double dutyCycle;
+
+        private Signal(CompactSequence intro, CompactSequence repeat, CompactSequence ending, Double frequency, Double dutyCycle) {
+            this.intro = intro;
+            this.repeat = repeat;
+            this.ending = ending;
+            this.frequency = frequency;
+            this.dutyCycle = dutyCycle;
+        }
+
+        public IrSignal toIrSignal() {
+            return new IrSignal(intro.toIrSequence(), repeat.toIrSequence(), ending.toIrSequence(), frequency, dutyCycle);
+        }
+
+        public long estimateMemory() {
+            return intro.estimateMemory() + repeat.estimateMemory() + ending.estimateMemory();
+        }
+
+        /**
+         * @param sequences to add the intro, repeat, and ending sequence to.
+         */
+        public void addSequences(Collection<CompactSequence> sequences) {
+            sequences.add(intro);
+            sequences.add(repeat);
+            sequences.add(ending);
+        }
+    }
+}
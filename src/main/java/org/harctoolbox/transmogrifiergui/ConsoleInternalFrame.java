@@ -25,6 +25,7 @@ public class ConsoleInternalFrame extends javax.swing.JInternalFrame {
     private final static Logger logger = Logger.getLogger(Gui.class.getName());
 
     private static ConsoleInternalFrame instance = null;
+    private static final String TITLE = "Console";
 
     static ConsoleInternalFrame newConsoleInternalFrame() {
         if (instance != null)
@@ -56,10 +57,34 @@ public class ConsoleInternalFrame extends javax.swing.JInternalFrame {
         initComponents();
 
         console.setErrorFunction(new LoggerErrorFunction());
+        setupOutput();
+    }
+
+    /**
+     * Redirects stdout and stderr through a bounded buffer that is flushed at a fixed rate.
+     * If the text area of the console cannot be found, the console's own redirection is used.
+     */
+    private void setupOutput() {
+        Properties properties = Properties.getInstance();
+        boolean buffered = console.startBuffer(properties.getConsoleBufferLines(), properties.getConsoleMaxLines(),
+                properties.getConsoleFrameRate(), (long dropped) -> {
+                    setTitle(TITLE + " (" + dropped + " lines dropped)");
+                });
+        if (!buffered)
+            logger.warning("Console has no text area, using unbuffered output");
         console.setStdErr();
         console.setStdOut();
     }
 
+    /**
+     * Stops the output buffer, restoring stdout and stderr, then disposes the frame.
+     */
+    @Override
+    public void dispose() {
+        console.stopBuffer();
+        super.dispose();
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -69,7 +94,7 @@ public class ConsoleInternalFrame extends javax.swing.JInternalFrame {
     // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
     private void initComponents() {
 
-        console = new org.harctoolbox.guicomponents.Console();
+        console = new org.harctoolbox.transmogrifiergui.BufferedConsole();
 
         setIconifiable(true);
         setMaximizable(true);
@@ -94,7 +119,7 @@ public class ConsoleInternalFrame extends javax.swing.JInternalFrame {
 
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
-    private org.harctoolbox.guicomponents.Console console;
+    private org.harctoolbox.transmogrifiergui.BufferedConsole console;
     // End of variables declaration//GEN-END:variables
 
     /**
@@ -104,6 +129,13 @@ public class ConsoleInternalFrame extends javax.swing.JInternalFrame {
         return instance;
     }
 
+    /**
+     * @return the number of lines that were dropped since the buffer could not keep up
+     */
+    public long getDroppedLines() {
+        return console.getDropped();
+    }
+
     /**
      * @return the console
      */
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import org.harctoolbox.ircore.ThisCannotHappenException;
+
+/**
+ * Bounded buffer between producers (System.out, System.err) and a JTextArea.
+ * Producers never wait: if the {@link RingBuffer} is full, the oldest line is dropped and counted.
+ * The buffer is flushed to the text area on the EDT by a Swing timer, in one append per tick,
+ * and the text area is trimmed to a maximal number of lines.
+ */
+public class ConsoleRingBuffer {
+
+    private static final String CHARSET = "UTF-8";
+    private static final int MAX_FRAME_RATE = 100; // higher rates would only keep the EDT busy
+
+    private final RingBuffer<String> queue;
+    private final JTextArea textArea;
+    private final int maxLines;
+    private final Timer timer;
+    private final List<String> batch;
+    private DroppedListener droppedListener = null;
+    private long lastReportedDropped = 0L;
+
+    public interface DroppedListener {
+        /**
+         * Called on the EDT when the number of dropped lines has changed.
+         * @param dropped total number of dropped lines
+         */
+        void dropped(long dropped);
+    }
+
+    /**
+     * @param textArea where the lines end up
+     * @param capacity number of lines the buffer can hold between two flushes
+     * @param maxLines maximal number of lines kept in the text area
+     * @param frameRate number of flushes per second, clamped to 1 ... MAX_FRAME_RATE
+     */
+    public ConsoleRingBuffer(JTextArea textArea, int capacity, int maxLines, int frameRate) {
+        this.textArea = textArea;
+        this.queue = new RingBuffer<>(capacity);
+        this.batch = new ArrayList<>(capacity);
+        this.maxLines = maxLines;
+        this.timer = new Timer(1000 / Math.max(1, Math.min(frameRate, MAX_FRAME_RATE)), (evt) -> flush());
+        this.timer.setCoalesce(true);
+    }
+
+    public void setDroppedListener(DroppedListener droppedListener) {
+        this.droppedListener = droppedListener;
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+        flush();
+    }
+
+    /**
+     * Enqueues a line without blocking. Callable from any thread.
+     * @param line line, without line terminator
+     * @return false if a line was dropped
+     */
+    public boolean offer(String line) {
+        return queue.offer(line);
+    }
+
+    public long getDropped() {
+        return queue.getDropped();
+    }
+
+    /**
+     * Moves the buffered lines to the text area. Must be called on the EDT.
+     */
+    void flush() {
+        batch.clear();
+        queue.drainTo(batch, Integer.MAX_VALUE);
+        if (!batch.isEmpty()) {
+            StringBuilder str = new StringBuilder(80 * batch.size());
+            batch.forEach((line) -> {
+                str.append(line).append('\n');
+            });
+            batch.clear();
+            textArea.append(str.toString());
+            trim();
+            textArea.setCaretPosition(textArea.getDocument().getLength());
+        }
+
+        long d = queue.getDropped();
+        if (d != lastReportedDropped && droppedListener != null) {
+            lastReportedDropped = d;
+            droppedListener.dropped(d);
+        }
+    }
+
+    private void trim() {
+        int excess = textArea.getLineCount() - maxLines;
+        if (excess <= 0)
+            return;
+        try {
+            textArea.replaceRange(null, 0, textArea.getLineEndOffset(excess - 1));
+        } catch (BadLocationException ex) {
+            throw new ThisCannotHappenException(ex);
+        }
+    }
+
+    /**
+     * Returns a PrintStream writing into this buffer, suitable for System.setOut/setErr.
+     * @return new PrintStream
+     */
+    public PrintStream newPrintStream() {
+        try {
+            return new PrintStream(new LineOutputStream(), true, CHARSET);
+        } catch (UnsupportedEncodingException ex) {
+            throw new ThisCannotHappenException(ex);
+        }
+    }
+
+    /**
+     * Collects bytes until end-of-line, then offers the line to the buffer.
+     * The enclosing PrintStream serializes the calls.
+     */
+    private class LineOutputStream extends OutputStream {
+
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+
+        @Override
+        public void write(int b) {
+            if (b == '\n')
+                emit();
+            else if (b != '\r')
+                line.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n' || b[i] == '\r') {
+                    line.write(b, start, i - start);
+                    if (b[i] == '\n')
+                        emit();
+                    start = i + 1;
+                }
+            }
+            line.write(b, start, off + len - start);
+        }
+
+        private void emit() {
+            try {
+                offer(line.toString(CHARSET));
+            } catch (UnsupportedEncodingException ex) {
+                throw new ThisCannotHappenException(ex);
+            }
+            line.reset();
+        }
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSequence;
+
+/**
+ * Like {@link BatchAnalyzer}, but the analyses are done in separate worker JVMs ({@link AnalysisWorker}),
+ * started from the same class path, so that the work is not limited by one heap.
+ * The work is handed out one file at a time, or, with --chunk, in chunks of that many sequences
+ * (imported by the coordinator). Note that the Analyzer considers all sequences it is given together,
+ * so results with chunks can differ from those without.
+ *
+ * <p>A worker that crashes, breaks the protocol, or does not answer within --job-timeout seconds,
+ * is killed and restarted, and its job retried, at most --retries times.
+ * The output is the same as of BatchAnalyzer, in the order of the arguments, independent of the scheduling.
+ *
+ * <p>With --worker-command, the workers can be started by some other command, for example through ssh.
+ * Such workers need not see the files of the coordinator: the coordinator imports every file
+ * and sends the sequences, in one chunk per file without --chunk. Only the default, local, workers get file names.
+ *
+ * Usage: --coordinator [--workers N] [--worker-heap size] [--worker-command command] [--chunk N] [--retries N]
+ *   [--job-timeout seconds] [--format tsv|json] [--output file] file-or-directory...
+ */
+public class Coordinator {
+
+    private static final int DEFAULT_RETRIES = 2;
+    private static final long DEFAULT_JOB_TIMEOUT = 600L; // seconds
+    private static final long STOP_TIMEOUT = 5L; // seconds
+
+    private static void usage(int exitcode) {
+        (exitcode == 0 ? System.out : System.err).println("Usage: --coordinator [--workers N] [--worker-heap size] [--worker-command command] [--chunk N] [--retries N] [--job-timeout seconds] [--format tsv|json] [--output file] file-or-directory...");
+        System.exit(exitcode);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BatchAnalyzer.Format format = BatchAnalyzer.Format.tsv;
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        String heap = null;
+        List<String> command = null;
+        int chunk = 0;
+        int retries = DEFAULT_RETRIES;
+        long jobTimeout = DEFAULT_JOB_TIMEOUT;
+        String output = null;
+        List<File> inputs = new ArrayList<>(args.length);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--workers":
+                        workers = Integer.parseInt(args[++i]);
+                        break;
+                    case "--worker-heap":
+                        heap = args[++i];
+                        break;
+                    case "--worker-command":
+                        command = Arrays.asList(args[++i].trim().split("\\s+"));
+                        break;
+                    case "--chunk":
+                        chunk = Integer.parseInt(args[++i]);
+                        break;
+                    case "--retries":
+                        retries = Integer.parseInt(args[++i]);
+                        break;
+                    case "--job-timeout":
+                        jobTimeout = Long.parseLong(args[++i]);
+                        break;
+                    case "--format":
+                        format = BatchAnalyzer.Format.valueOf(args[++i]);
+                        break;
+                    case "--output":
+                        output = args[++i];
+                        break;
+                    case "--help":
+                        usage(0);
+                        break;
+                    default:
+                        inputs.add(new File(args[i]));
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            usage(1);
+        }
+        if (inputs.isEmpty() || workers < 1 || jobTimeout < 0)
+            usage(1);
+
+        PropertiesSnapshot properties = PropertiesStore.loadDefault(Properties.getInstance());
+
+        try (PrintWriter out = new PrintWriter(output == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+            Coordinator coordinator = new Coordinator(properties, format, workers,
+                    command != null ? command : defaultWorkerCommand(heap), command == null, chunk, retries, jobTimeout);
+            int errors = coordinator.run(inputs, out);
+            out.flush();
+            System.exit(errors == 0 ? 0 : 2);
+        } catch (IOException | InterruptedException ex) {
+            System.err.println(ex.getLocalizedMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param heap maximal heap of the worker, e.g. "2g", or null for the JVM default.
+     * @return command line starting a worker with the java and class path of this JVM.
+     */
+    public static List<String> defaultWorkerCommand(String heap) {
+        List<String> command = new ArrayList<>(8);
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        if (heap != null)
+            command.add("-Xmx" + heap);
+        command.add("-Djava.awt.headless=true");
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("--worker");
+        return command;
+    }
+
+    private final PropertiesSnapshot properties;
+    private final BatchAnalyzer.Format format;
+    private final int workers;
+    private final List<String> command;
+    private final boolean localWorkers;
+    private final int chunk;
+    private final int retries;
+    private final long jobTimeout;
+
+    private final Job poison = new Job(-1, -1, -1, null, null, 0.0);
+    private BlockingQueue<Job> queue;
+    private FileEntry[] entries;
+    private int nextToPrint;
+    private int errors;
+    private PrintWriter output;
+    private ScheduledExecutorService watchdog;
+
+    /**
+     * @param properties
+     * @param format
+     * @param workers number of worker processes
+     * @param command command starting a worker
+     * @param localWorkers if true, the workers see the files of the coordinator, and are sent file names, otherwise sequences.
+     * @param chunk number of sequences per job, or &le; 0 for one job per file
+     * @param retries number of times a failed job is retried
+     * @param jobTimeout seconds to wait for the answer to a job, 0 for no limit
+     */
+    public Coordinator(PropertiesSnapshot properties, BatchAnalyzer.Format format, int workers, List<String> command,
+            boolean localWorkers, int chunk, int retries, long jobTimeout) {
+        this.properties = properties;
+        this.format = format;
+        this.workers = workers;
+        this.command = command;
+        this.localWorkers = localWorkers;
+        this.chunk = chunk;
+        this.retries = retries;
+        this.jobTimeout = jobTimeout;
+    }
+
+    /**
+     * Processes the inputs, writing the result to out.
+     * @param inputs files and directories
+     * @param out
+     * @return number of files that could not be processed
+     * @throws InterruptedException
+     */
+    public int run(List<File> inputs, PrintWriter out) throws InterruptedException {
+        List<File> files = BatchAnalyzer.expand(inputs);
+        this.output = out;
+        entries = new FileEntry[files.size()];
+        for (int i = 0; i < entries.length; i++)
+            entries[i] = new FileEntry(files.get(i).getPath());
+        nextToPrint = 0;
+        errors = 0;
+        queue = new LinkedBlockingQueue<>(2 * workers); // bounds the sequences held with --chunk
+        watchdog = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "Coordinator-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        BatchAnalyzer.printHead(format, out);
+
+        List<Thread> threads = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(new WorkerSlot(i + 1), "Coordinator-worker-" + (i + 1));
+            threads.add(thread);
+            thread.start();
+        }
+        try {
+            int id = 0;
+            for (int i = 0; i < entries.length; i++)
+                id = enqueue(i, id);
+        } finally {
+            for (int i = 0; i < workers; i++)
+                queue.put(poison);
+            for (Thread thread : threads)
+                thread.join();
+            watchdog.shutdownNow();
+        }
+        synchronized (this) {
+            printReady();
+            BatchAnalyzer.printTail(format, out);
+            return errors;
+        }
+    }
+
+    private int enqueue(int fileIndex, int id) throws InterruptedException {
+        FileEntry entry = entries[fileIndex];
+        if (chunk <= 0 && localWorkers) {
+            setExpected(entry, 1);
+            queue.put(new Job(id, fileIndex, 0, entry.path, null, 0.0));
+            return id + 1;
+        }
+
+        SequenceImporter.Imported imported;
+        try {
+            imported = SequenceImporter.importFile(new File(entry.path), properties);
+        } catch (IOException | InvalidArgumentException | RuntimeException ex) {
+            entry.error = ex.getClass().getSimpleName() + ": " + ex.getLocalizedMessage();
+            setExpected(entry, 0);
+            return id;
+        }
+        int size = chunk > 0 ? chunk : Math.max(imported.getSequences().size(), 1); // remote workers: the whole file
+        List<Map<String, IrSequence>> chunks = new ArrayList<>(imported.getSequences().size() / size + 1);
+        Map<String, IrSequence> current = null;
+        for (Map.Entry<String, IrSequence> kvp : imported.getSequences().entrySet()) {
+            if (current == null || current.size() == size) {
+                current = new LinkedHashMap<>(2 * Math.min(size, imported.getSequences().size()));
+                chunks.add(current);
+            }
+            current.put(kvp.getKey(), kvp.getValue());
+        }
+        setExpected(entry, chunks.size());
+        for (int i = 0; i < chunks.size(); i++)
+            queue.put(new Job(id++, fileIndex, i, null, chunks.get(i), imported.getFrequencyWithDefault()));
+        return id;
+    }
+
+    private synchronized void setExpected(FileEntry entry, int chunks) {
+        entry.chunks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++)
+            entry.chunks.add(null);
+        printReady();
+    }
+
+    private synchronized void complete(Job job, List<BatchAnalyzer.SignalResult> results, String error) {
+        FileEntry entry = entries[job.fileIndex];
+        if (error != null && entry.error == null)
+            entry.error = error;
+        entry.chunks.set(job.chunkIndex, results != null ? results : new ArrayList<>(0));
+        entry.received++;
+        printReady();
+    }
+
+    /**
+     * Prints, in file order, the entries that are complete, and forgets their results.
+     */
+    private void printReady() {
+        while (nextToPrint < entries.length && entries[nextToPrint].isComplete()) {
+            FileEntry entry = entries[nextToPrint];
+            BatchAnalyzer.Result result;
+            if (entry.error != null) {
+                result = BatchAnalyzer.failure(format, entry.path, entry.error);
+                errors++;
+            } else {
+                List<BatchAnalyzer.SignalResult> all = new ArrayList<>(64);
+                entry.chunks.forEach(all::addAll);
+                result = BatchAnalyzer.success(format, entry.path, all);
+            }
+            BatchAnalyzer.print(format, output, result, nextToPrint == 0);
+            output.flush();
+            entries[nextToPrint] = null;
+            nextToPrint++;
+        }
+    }
+
+    private static class FileEntry {
+
+        private final String path;
+        private List<List<BatchAnalyzer.SignalResult>> chunks = null; // null until the number of chunks is known
+        private int received = 0;
+        private String error = null;
+
+        FileEntry(String path) {
+            this.path = path;
+        }
+
+        boolean isComplete() {
+            return chunks != null && received == chunks.size();
+        }
+    }
+
+    private static class Job {
+
+        private final int id;
+        private final int fileIndex;
+        private final int chunkIndex;
+        private final String path;
+        private final Map<String, IrSequence> sequences;
+        private final double frequency;
+        private int attempts = 0;
+
+        Job(int id, int fileIndex, int chunkIndex, String path, Map<String, IrSequence> sequences, double frequency) {
+            this.id = id;
+            this.fileIndex = fileIndex;
+            this.chunkIndex = chunkIndex;
+            this.path = path;
+            this.sequences = sequences;
+            this.frequency = frequency;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            if (path != null)
+                WorkerProtocol.writeFileRequest(out, id, path);
+            else
+                WorkerProtocol.writeSequencesRequest(out, id, sequences, frequency);
+        }
+
+        @Override
+        public String toString() {
+            return "job " + id + (path != null ? " (" + path + ")" : "");
+        }
+    }
+
+    /**
+     * Runs one worker process, restarting it when needed, and feeds it the jobs from the queue, one at a time.
+     */
+    private class WorkerSlot implements Runnable {
+
+        private final int number;
+        private Process process = null; // guarded by this
+        private boolean timedOut = false; // guarded by this
+        private DataInputStream in = null;
+        private DataOutputStream out = null;
+
+        WorkerSlot(int number) {
+            this.number = number;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Job job = queue.take(); job != poison; job = queue.take())
+                    handle(job);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                stop();
+            }
+        }
+
+        private void handle(Job job) {
+            while (true) {
+                ScheduledFuture<?> deadline = startDeadline();
+                try {
+                    ensureStarted();
+                    job.write(out);
+                    WorkerProtocol.Response response = WorkerProtocol.Response.read(in);
+                    if (response.getId() != job.id)
+                        throw new IOException("Expected response to " + job + ", got " + response.getId());
+                    complete(job, response.getResults(), response.getError());
+                    return;
+                } catch (IOException ex) {
+                    String message = hasTimedOut() ? "No response within " + jobTimeout + " s" : ex.getLocalizedMessage();
+                    System.err.println("Worker " + number + " failed on " + job + ": " + message);
+                    kill();
+                    if (++job.attempts > retries) {
+                        complete(job, null, "Worker failed " + job.attempts + " times: " + message);
+                        return;
+                    }
+                } finally {
+                    if (deadline != null)
+                        deadline.cancel(false);
+                }
+            }
+        }
+
+        /**
+         * Arranges for the worker to be killed, if the current attempt is not finished within jobTimeout.
+         * Killing the worker ends the pending read with an IOException.
+         * @return the deadline, to cancel, or null if there is no timeout.
+         */
+        private synchronized ScheduledFuture<?> startDeadline() {
+            timedOut = false;
+            return jobTimeout > 0 ? watchdog.schedule(this::timeout, jobTimeout, TimeUnit.SECONDS) : null;
+        }
+
+        private synchronized void timeout() {
+            timedOut = true;
+            if (process != null)
+                process.destroyForcibly();
+        }
+
+        private synchronized boolean hasTimedOut() {
+            return timedOut;
+        }
+
+        private void ensureStarted() throws IOException {
+            synchronized (this) {
+                if (process != null && process.isAlive())
+                    return;
+                if (timedOut)
+                    throw new IOException("Timed out");
+                kill();
+                process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            }
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            int magic = in.readInt();
+            if (magic != WorkerProtocol.MAGIC)
+                throw new IOException(String.format("Not a worker, got 0x%08x", magic));
+            WorkerProtocol.writeSettings(out, properties);
+        }
+
+        private synchronized void kill() {
+            if (process != null)
+                process.destroyForcibly();
+            process = null;
+            in = null;
+            out = null;
+        }
+
+        private void stop() {
+            Process running;
+            synchronized (this) {
+                running = process;
+            }
+            if (running == null)
+                return;
+            try {
+                WorkerProtocol.writeEnd(out);
+                running.waitFor(STOP_TIMEOUT, TimeUnit.SECONDS);
+            } catch (IOException ex) {
+                // already dead
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            kill();
+        }
+    }
+}
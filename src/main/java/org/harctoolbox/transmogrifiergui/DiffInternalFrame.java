@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import javax.swing.RowFilter;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+import javax.swing.table.TableRowSorter;
+
+/**
+ * Shows a {@link SessionDiff} as a sortable table, one row per pair of sequences.
+ */
+public class DiffInternalFrame extends javax.swing.JInternalFrame {
+
+    private final SessionDiff diff;
+    private final DiffTableModel tableModel;
+
+    /**
+     * Creates new form DiffInternalFrame
+     * @param first name of the first set
+     * @param second name of the second set
+     * @param diff
+     */
+    public DiffInternalFrame(String first, String second, SessionDiff diff) {
+        this.diff = diff;
+        tableModel = new DiffTableModel(diff);
+        initComponents();
+        setTitle("Compare: " + first + " vs. " + second);
+        summaryLabel.setText(diff.summary() + String.format(" (%.1f ms; tolerances %.0f us, %.2f)",
+                diff.getNanos() / 1000000.0, diff.getAbsoluteTolerance(), diff.getRelativeTolerance()));
+    }
+
+    /**
+     * @return the diff
+     */
+    public SessionDiff getDiff() {
+        return diff;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setDifferencesOnly(boolean differencesOnly) {
+        TableRowSorter<TableModel> sorter = (TableRowSorter<TableModel>) table.getRowSorter();
+        sorter.setRowFilter(differencesOnly ? new RowFilter<TableModel, Integer>() {
+            @Override
+            public boolean include(RowFilter.Entry<? extends TableModel, ? extends Integer> entry) {
+                return tableModel.getEntry(entry.getIdentifier()).getStatus() != SessionDiff.Status.unchanged;
+            }
+        } : null);
+    }
+
+    private static class DiffTableModel extends AbstractTableModel {
+
+        private static final String[] COLUMN_NAMES = { "Status", "Name", "Other name", "Length", "Other length", "Max delta (us)", "Mean delta (us)", "Worst index" };
+        private static final Class<?>[] COLUMN_CLASSES = { String.class, String.class, String.class, Integer.class, Integer.class, Double.class, Double.class, Integer.class };
+
+        private final SessionDiff diff;
+
+        DiffTableModel(SessionDiff diff) {
+            this.diff = diff;
+        }
+
+        SessionDiff.Entry getEntry(int row) {
+            return diff.getEntries().get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return diff.getEntries().size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return COLUMN_CLASSES[column];
+        }
+
+        private static Double orNull(double x) {
+            return Double.isNaN(x) ? null : Math.round(x * 10.0) / 10.0;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            SessionDiff.Entry entry = getEntry(row);
+            switch (column) {
+                case 0:
+                    return entry.getStatus().toString();
+                case 1:
+                    return entry.getName();
+                case 2:
+                    return entry.getOtherName();
+                case 3:
+                    return entry.getName() != null ? entry.getLength() : null;
+                case 4:
+                    return entry.getOtherName() != null ? entry.getOtherLength() : null;
+                case 5:
+                    return orNull(entry.getMaxDelta());
+                case 6:
+                    return orNull(entry.getMeanDelta());
+                case 7:
+                    return entry.getWorstIndex() >= 0 ? entry.getWorstIndex() : null;
+                default:
+                    throw new IndexOutOfBoundsException();
+            }
+        }
+    }
+
+    /**
+     * This method is called from within the constructor to initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is always
+     * regenerated by the Form Editor.
+     */
+    @SuppressWarnings("unchecked")
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        jScrollPane1 = new javax.swing.JScrollPane();
+        table = new javax.swing.JTable();
+        summaryLabel = new javax.swing.JLabel();
+        differencesOnlyCheckBox = new javax.swing.JCheckBox();
+
+        setClosable(true);
+        setIconifiable(true);
+        setMaximizable(true);
+        setResizable(true);
+        setTitle("Compare");
+
+        table.setAutoCreateRowSorter(true);
+        table.setModel(tableModel);
+        jScrollPane1.setViewportView(table);
+
+        summaryLabel.setText("Unchanged:");
+
+        differencesOnlyCheckBox.setText("Differences only");
+        differencesOnlyCheckBox.setToolTipText("Hide the unchanged rows.");
+        differencesOnlyCheckBox.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                differencesOnlyCheckBoxActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
+        getContentPane().setLayout(layout);
+        layout.setHorizontalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 760, Short.MAX_VALUE)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(summaryLabel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(differencesOnlyCheckBox)
+                .addContainerGap())
+        );
+        layout.setVerticalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 300, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(summaryLabel)
+                    .addComponent(differencesOnlyCheckBox))
+                .addContainerGap())
+        );
+
+        pack();
+    }// </editor-fold>//GEN-END:initComponents
+
+    private void differencesOnlyCheckBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_differencesOnlyCheckBoxActionPerformed
+        setDifferencesOnly(differencesOnlyCheckBox.isSelected());
+    }//GEN-LAST:event_differencesOnlyCheckBoxActionPerformed
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JCheckBox differencesOnlyCheckBox;
+    private javax.swing.JScrollPane jScrollPane1;
+    private javax.swing.JLabel summaryLabel;
+    private javax.swing.JTable table;
+    // End of variables declaration//GEN-END:variables
+}
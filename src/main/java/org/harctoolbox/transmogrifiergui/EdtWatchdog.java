@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watchdog for the Event Dispatch Thread: an EventQueue that times every event dispatched.
+ * When an event runs longer than the threshold, a sampler thread takes the stack of the EDT.
+ * Every stall is logged; a histogram of the dispatch times and the worst stalls, with their stacks,
+ * are logged periodically and at exit.
+ * Events that run a nested event loop (modal dialogs) are not counted,
+ * since their time is mostly spent waiting for the user.
+ */
+public final class EdtWatchdog extends EventQueue {
+
+    private final static Logger logger = Logger.getLogger(EdtWatchdog.class.getName());
+
+    private static final int BUCKETS = 16; // [0, 1), [1, 2), [2, 4) ... milliseconds
+    private static final int WORST = 10;
+    private static final int MAX_DESCRIPTION = 200;
+    private static final long REPORT_INTERVAL = 10L; // minutes
+
+    private static EdtWatchdog instance = null;
+
+    /**
+     * Installs the watchdog as the system event queue, if enabled in the properties.
+     * @param properties
+     */
+    public static synchronized void setup(Properties properties) {
+        if (!properties.isEdtWatchdog() || instance != null)
+            return;
+        instance = new EdtWatchdog(properties.getEdtWatchdogThreshold());
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(instance);
+        instance.start();
+        logger.log(Level.INFO, "EDT watchdog installed, threshold {0} ms", properties.getEdtWatchdogThreshold());
+    }
+
+    /**
+     * @return the installed watchdog, or null.
+     */
+    public static synchronized EdtWatchdog getInstance() {
+        return instance;
+    }
+
+    private final long thresholdNanos;
+    private final ScheduledExecutorService sampler;
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final PriorityQueue<Stall> worst = new PriorityQueue<>(WORST + 1);
+    // Only touched by the EDT, except the volatile current, read by the sampler.
+    private final List<Dispatch> stack = new ArrayList<>(4);
+    private volatile Dispatch current = null;
+    private volatile Thread edt = null;
+
+    private EdtWatchdog(int thresholdMillis) {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        sampler = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "EdtWatchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void start() {
+        long period = Math.max(5L, TimeUnit.NANOSECONDS.toMillis(thresholdNanos) / 4);
+        sampler.scheduleAtFixedRate(this::sample, period, period, TimeUnit.MILLISECONDS);
+        sampler.scheduleAtFixedRate(() -> {
+            logger.info(report());
+        }, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MINUTES);
+        // System.err is redirected to the console later, so keep the original one for the final report.
+        PrintStream stderr = System.err;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stderr.println(report());
+        }, "EdtWatchdog-shutdown"));
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        Dispatch dispatch = new Dispatch(System.nanoTime());
+        if (!stack.isEmpty())
+            stack.get(stack.size() - 1).nested = true;
+        else
+            edt = Thread.currentThread();
+        stack.add(dispatch);
+        current = dispatch;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long duration = System.nanoTime() - dispatch.start;
+            stack.remove(stack.size() - 1);
+            current = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+            if (!dispatch.nested)
+                record(event, dispatch, duration);
+        }
+    }
+
+    private void record(AWTEvent event, Dispatch dispatch, long duration) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(duration);
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        if (duration < thresholdNanos)
+            return;
+
+        String description = event.toString();
+        if (description.length() > MAX_DESCRIPTION)
+            description = description.substring(0, MAX_DESCRIPTION) + "...";
+        StackTraceElement[] stackTrace = dispatch.stackTrace;
+        logger.log(Level.WARNING, "EDT stall of {0} ms: {1}{2}", new Object[]{millis, description,
+            stackTrace != null && stackTrace.length > 0 ? " at " + stackTrace[0] : ""});
+        synchronized (worst) {
+            worst.add(new Stall(millis, description, stackTrace));
+            if (worst.size() > WORST)
+                worst.poll();
+        }
+    }
+
+    /**
+     * Called periodically by the sampler thread; takes the stack of the EDT once per stalled event.
+     */
+    private void sample() {
+        Dispatch dispatch = current;
+        Thread thread = edt;
+        if (dispatch == null || thread == null || dispatch.stackTrace != null || dispatch.nested)
+            return;
+        if (System.nanoTime() - dispatch.start >= thresholdNanos)
+            dispatch.stackTrace = thread.getStackTrace();
+    }
+
+    /**
+     * @return Human readable histogram of dispatch times, and the worst stalls with stacks.
+     */
+    public String report() {
+        StringBuilder str = new StringBuilder(4096);
+        str.append("EDT dispatch times (ms: count):");
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = histogram.get(i);
+            if (count > 0)
+                str.append("\n  ").append(i == 0 ? 0 : 1L << (i - 1)).append(i == BUCKETS - 1 ? "-" : "-" + ((1L << i) - 1))
+                        .append(": ").append(count);
+        }
+        List<Stall> stalls;
+        synchronized (worst) {
+            stalls = new ArrayList<>(worst);
+        }
+        Collections.sort(stalls, Collections.reverseOrder());
+        if (!stalls.isEmpty())
+            str.append("\nWorst stalls:");
+        stalls.forEach((stall) -> {
+            str.append("\n  ").append(stall.millis).append(" ms: ").append(stall.description);
+            if (stall.stackTrace != null)
+                for (StackTraceElement element : stall.stackTrace)
+                    str.append("\n        at ").append(element);
+        });
+        return str.toString();
+    }
+
+    private static class Dispatch {
+
+        private final long start;
+        private boolean nested = false; // written on EDT, read by sampler; staleness only costs a superfluous sample
+        private volatile StackTraceElement[] stackTrace = null;
+
+        Dispatch(long start) {
+            this.start = start;
+        }
+    }
+
+    private static class Stall implements Comparable<Stall> {
+
+        private final long millis;
+        private final String description;
+        private final StackTraceElement[] stackTrace;
+
+        Stall(long millis, String description, StackTraceElement[] stackTrace) {
+            this.millis = millis;
+            this.description = description;
+            this.stackTrace = stackTrace;
+        }
+
+        @Override
+        public int compareTo(Stall other) {
+            return Long.compare(millis, other.millis);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.File;
+
+/**
+ * Emits the custom Java Flight Recorder events of {@link JfrEvents}, if the runtime supports JFR, otherwise does nothing.
+ * The begin methods return an opaque handle (null if not available or not enabled), to be passed to the corresponding commit method.
+ * The settings file irptransmogrifiergui.jfc (in the resources) enables all of them.
+ */
+public final class FlightRecorderEvents {
+
+    private static final boolean AVAILABLE = isJfrPresent();
+
+    private static boolean isJfrPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    public static Object beginImport() {
+        if (!AVAILABLE)
+            return null;
+        JfrEvents.FileImport event = new JfrEvents.FileImport();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    public static void commitImport(Object handle, File file, SequenceImporter.Format format, int sequences) {
+        if (handle == null)
+            return;
+        JfrEvents.FileImport event = (JfrEvents.FileImport) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file.getPath();
+            event.format = format.name();
+            event.bytes = file.length();
+            event.sequences = sequences;
+            event.commit();
+        }
+    }
+
+    public static Object beginAnalysis() {
+        if (!AVAILABLE)
+            return null;
+        JfrEvents.Analysis event = new JfrEvents.Analysis();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    public static void commitAnalysis(Object handle, Analysis analysis) {
+        if (handle == null)
+            return;
+        JfrEvents.Analysis event = (JfrEvents.Analysis) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            PropertiesSnapshot properties = analysis.getProperties();
+            event.signals = analysis.size();
+            event.frequency = analysis.getAnalyzer().getFrequency();
+            event.repeatFinder = properties.isRepeatFinder();
+            event.absoluteTolerance = properties.getAbsoluteTolerance();
+            event.relativeTolerance = properties.getRelativeTolerance();
+            event.settings = properties.fingerprint();
+            event.analyzerDuration = analysis.getAnalyzerNanos();
+            event.searchDuration = analysis.getSearchNanos();
+            event.bitStatisticsDuration = analysis.getBitStatisticsNanos();
+            event.commit();
+        }
+    }
+
+    public static Object beginDecodePass() {
+        if (!AVAILABLE)
+            return null;
+        JfrEvents.DecodePass event = new JfrEvents.DecodePass();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    public static void commitDecodePass(Object handle, int signals, int decoded) {
+        if (handle == null)
+            return;
+        JfrEvents.DecodePass event = (JfrEvents.DecodePass) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.signals = signals;
+            event.decoded = decoded;
+            event.commit();
+        }
+    }
+
+    public static Object beginCellEdit() {
+        if (!AVAILABLE)
+            return null;
+        JfrEvents.CellEdit event = new JfrEvents.CellEdit();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    public static void commitCellEdit(Object handle, int row, int column, int sequenceLength) {
+        if (handle == null)
+            return;
+        JfrEvents.CellEdit event = (JfrEvents.CellEdit) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.row = row;
+            event.column = column;
+            event.sequenceLength = sequenceLength;
+            event.commit();
+        }
+    }
+
+    private FlightRecorderEvents() {
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JInternalFrame;
+import javax.swing.Timer;
+import javax.swing.event.InternalFrameAdapter;
+import javax.swing.event.InternalFrameEvent;
+
+/**
+ * Resources of an internal frame that are to be given back when it is closed:
+ * background tasks are cancelled, timers stopped, and the cleanup actions run, in reverse order of registration.
+ * All methods are to be called on the EDT.
+ */
+public final class FrameLifecycle {
+
+    private final static Logger logger = Logger.getLogger(FrameLifecycle.class.getName());
+
+    /**
+     * Creates a lifecycle for the frame, that is ended when the frame is closed.
+     * @param frame
+     * @return the lifecycle
+     */
+    public static FrameLifecycle attach(JInternalFrame frame) {
+        FrameLifecycle lifecycle = new FrameLifecycle(frame.getTitle());
+        frame.addInternalFrameListener(new InternalFrameAdapter() {
+            @Override
+            public void internalFrameClosed(InternalFrameEvent e) {
+                frame.removeInternalFrameListener(this);
+                lifecycle.close();
+            }
+        });
+        return lifecycle;
+    }
+
+    private final String name;
+    private final List<Future<?>> tasks = new ArrayList<>(4);
+    private final List<Timer> timers = new ArrayList<>(2);
+    private final List<Runnable> cleanups = new ArrayList<>(4);
+    private boolean closed = false;
+
+    private FrameLifecycle(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Registers a background task, to be cancelled (with interruption) if still running at close.
+     * Finished tasks are forgotten at the next registration.
+     * @param task for example a SwingWorker
+     * @return the task, for convenience
+     */
+    public <T extends Future<?>> T add(T task) {
+        if (closed) {
+            task.cancel(true);
+            return task;
+        }
+        tasks.removeIf(Future::isDone);
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * Registers a timer, to be stopped at close.
+     * @param timer
+     * @return the timer, for convenience
+     */
+    public Timer add(Timer timer) {
+        timers.add(timer);
+        return timer;
+    }
+
+    /**
+     * Registers an action to be run at close, after the tasks have been cancelled and the timers stopped.
+     * @param cleanup
+     */
+    public void onClose(Runnable cleanup) {
+        cleanups.add(cleanup);
+    }
+
+    /**
+     * @return true if the frame has been closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        if (closed)
+            return;
+        closed = true;
+        tasks.forEach((task) -> {
+            task.cancel(true);
+        });
+        tasks.clear();
+        timers.forEach((timer) -> {
+            timer.stop();
+        });
+        timers.clear();
+        for (int i = cleanups.size() - 1; i >= 0; i--) {
+            try {
+                cleanups.get(i).run();
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Cleanup of " + name + " failed", ex);
+            }
+        }
+        cleanups.clear();
+    }
+}
@@ -17,14 +17,22 @@
 
 package org.harctoolbox.transmogrifiergui;
 
+import java.awt.Graphics;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFileChooser;
 import javax.swing.JInternalFrame;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import javax.swing.event.InternalFrameAdapter;
+import javax.swing.event.InternalFrameEvent;
 import org.harctoolbox.guicomponents.SelectFile;
 import org.harctoolbox.ircore.InvalidArgumentException;
 import org.harctoolbox.ircore.OddSequenceLengthException;
@@ -44,16 +52,31 @@ public class Gui extends javax.swing.JFrame {
 
     private final static Logger logger = Logger.getLogger(Gui.class.getName());
     private TableInternalFrame editClient = null;
+    private File sessionFile = null;
+    private final List<String> initData;
 
     /**
      * Creates new form NewMDIApplication
      * @param data
      */
     public Gui(List<String> data) {
+        this.initData = data;
         initComponents();
+        StartupProfile.mark("main window created");
+    }
+
+    /**
+     * Everything not needed for the first paint of the main window.
+     * Called on the EDT after the window has been made visible.
+     */
+    private void deferredInit() {
         setupConsole();
-        setupInitData(data);
+        StartupProfile.mark("console created");
         System.out.println("Welcome to IrpTransmogrifierGUI!");
+        setupInitData(initData);
+        Thread thread = new Thread(Metrics::registerMXBeans, "Metrics-registration");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     private void setupConsole() {
@@ -61,19 +84,50 @@ public class Gui extends javax.swing.JFrame {
         addInternalFrame(consoleInternalFrame);
     }
 
+    /**
+     * Imports the files in the argument in a background thread, and opens a table for each of them.
+     * @param data
+     */
     private void setupInitData(List<String> data) {
         int lowerConsole = consoleInternalFrame.getY() + consoleInternalFrame.getHeight();
-        data.forEach((d) -> {
-            try {
-                if (!d.startsWith("-")) { // just for convenience now
-                    TableInternalFrame frame = new TableInternalFrame(new File(d));
+        PropertiesSnapshot settings = Properties.getInstance().snapshot();
+        new SwingWorker<Void, Object[]>() {
+            @Override
+            protected Void doInBackground() {
+                data.forEach((d) -> {
+                    try {
+                        if (!d.startsWith("-")) { // just for convenience now
+                            File file = new File(d);
+                            publish(new Object[]{file.getName(), SequenceImporter.importFile(file, settings)});
+                        }
+                    } catch (IOException | InvalidArgumentException ex) {
+                        logger.log(Level.SEVERE, null, ex);
+                    }
+                });
+                return null;
+            }
+
+            @Override
+            protected void process(List<Object[]> chunks) {
+                chunks.forEach((chunk) -> {
+                    TableInternalFrame frame = new TableInternalFrame((SequenceImporter.Imported) chunk[1], (String) chunk[0]);
                     addInternalFrame(frame);
                     frame.setLocation(0, lowerConsole);
-                }
-            } catch (IOException | InvalidArgumentException ex) {
-                logger.log(Level.SEVERE, null, ex);
+                });
             }
-        });
+
+            @Override
+            protected void done() {
+                StartupProfile.mark("initial files loaded");
+                logger.info(StartupProfile.report());
+            }
+        }.execute();
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        StartupProfile.markFirstPaint();
     }
 
     /**
@@ -93,6 +147,7 @@ public class Gui extends javax.swing.JFrame {
         fileMenu = new javax.swing.JMenu();
         newSequenceTableMenuItem = new javax.swing.JMenuItem();
         openMenuItem = new javax.swing.JMenuItem();
+        liveCaptureMenuItem = new javax.swing.JMenuItem();
         saveMenuItem = new javax.swing.JMenuItem();
         saveAsMenuItem = new javax.swing.JMenuItem();
         exitMenuItem = new javax.swing.JMenuItem();
@@ -106,6 +161,8 @@ public class Gui extends javax.swing.JFrame {
         actionsMenu = new javax.swing.JMenu();
         jMenuItem1 = new javax.swing.JMenuItem();
         jMenuItem2 = new javax.swing.JMenuItem();
+        metricsMenuItem = new javax.swing.JMenuItem();
+        memoryMenuItem = new javax.swing.JMenuItem();
         helpMenu = new javax.swing.JMenu();
         contentMenuItem = new javax.swing.JMenuItem();
         aboutMenuItem = new javax.swing.JMenuItem();
@@ -176,15 +233,35 @@ public class Gui extends javax.swing.JFrame {
         });
         fileMenu.add(openMenuItem);
 
+        liveCaptureMenuItem.setMnemonic('L');
+        liveCaptureMenuItem.setText("Live Capture ...");
+        liveCaptureMenuItem.setToolTipText("Capture LIRC mode2 text from standard input, a local socket, a pipe, or a replayed file.");
+        liveCaptureMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                liveCaptureMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(liveCaptureMenuItem);
+
         saveMenuItem.setMnemonic('s');
         saveMenuItem.setText("Save");
-        saveMenuItem.setEnabled(false);
+        saveMenuItem.setToolTipText("Save the tables and analyses to the session file.");
+        saveMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                saveMenuItemActionPerformed(evt);
+            }
+        });
         fileMenu.add(saveMenuItem);
 
         saveAsMenuItem.setMnemonic('a');
         saveAsMenuItem.setText("Save As ...");
         saveAsMenuItem.setDisplayedMnemonicIndex(5);
-        saveAsMenuItem.setEnabled(false);
+        saveAsMenuItem.setToolTipText("Save the tables and analyses to a new session file.");
+        saveAsMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                saveAsMenuItemActionPerformed(evt);
+            }
+        });
         fileMenu.add(saveAsMenuItem);
 
         exitMenuItem.setMnemonic('x');
@@ -251,6 +328,22 @@ public class Gui extends javax.swing.JFrame {
         });
         actionsMenu.add(jMenuItem2);
 
+        metricsMenuItem.setText("Performance Metrics");
+        metricsMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                metricsMenuItemActionPerformed(evt);
+            }
+        });
+        actionsMenu.add(metricsMenuItem);
+
+        memoryMenuItem.setText("Memory Usage");
+        memoryMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                memoryMenuItemActionPerformed(evt);
+            }
+        });
+        actionsMenu.add(memoryMenuItem);
+
         menuBar.add(actionsMenu);
 
         helpMenu.setMnemonic('h');
@@ -293,10 +386,15 @@ public class Gui extends javax.swing.JFrame {
     }//GEN-LAST:event_jMenuItem1ActionPerformed
 
     private void openMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_openMenuItemActionPerformed
-        File importFile = SelectFile.selectFile(this, "Select file containing raw named IR sequences",
+        File importFile = SelectFile.selectFile(this, "Select file containing raw named IR sequences, or a session",
                 null/*properties.getDefaultImportDir()*/, false, false, JFileChooser.FILES_ONLY, IMPORTFILETYPES);
+        if (importFile == null)
+            return;
         try {
-            addInternalFrame(new TableInternalFrame(importFile));
+            if (SessionFile.isSessionFile(importFile))
+                restoreSession(importFile);
+            else
+                addInternalFrame(new TableInternalFrame(importFile));
         } catch (IOException | InvalidArgumentException ex) {
             logger.log(Level.SEVERE, null, ex);
         }
@@ -331,13 +429,115 @@ public class Gui extends javax.swing.JFrame {
         addInternalFrame(new TableInternalFrame());
     }//GEN-LAST:event_newSequenceTableMenuItemActionPerformed
 
+    private void liveCaptureMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_liveCaptureMenuItemActionPerformed
+        String spec = JOptionPane.showInputDialog(this,
+                "Source: \"-\" (standard input), tcp:host:port, replay:file[@speed], or a file or named pipe",
+                "Live Capture", JOptionPane.QUESTION_MESSAGE);
+        if (spec == null || spec.trim().isEmpty())
+            return;
+        try {
+            LiveCapture capture = LiveCapture.open(spec.trim(), Properties.getInstance().getTrailingGap(), LiveCapture.DEFAULT_CAPACITY);
+            TableInternalFrame frame = new TableInternalFrame(capture.getName());
+            addInternalFrame(frame);
+            frame.attachLiveCapture(capture);
+            capture.start();
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Cannot start live capture: {0}", ex.getLocalizedMessage());
+        }
+    }//GEN-LAST:event_liveCaptureMenuItemActionPerformed
+
+    private void saveMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_saveMenuItemActionPerformed
+        if (sessionFile == null)
+            saveAsMenuItemActionPerformed(evt);
+        else
+            saveSession(sessionFile);
+    }//GEN-LAST:event_saveMenuItemActionPerformed
+
+    private void saveAsMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_saveAsMenuItemActionPerformed
+        File file = SelectFile.selectFile(this, "Save session", null, true, false, JFileChooser.FILES_ONLY, SESSIONFILETYPES);
+        if (file == null)
+            return;
+        if (!file.getName().contains("."))
+            file = new File(file.getPath() + "." + SessionFile.EXTENSION);
+        saveSession(file);
+    }//GEN-LAST:event_saveAsMenuItemActionPerformed
+
+    private void metricsMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_metricsMenuItemActionPerformed
+        addInternalFrame(new MetricsInternalFrame());
+    }//GEN-LAST:event_metricsMenuItemActionPerformed
+
+    private void memoryMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_memoryMenuItemActionPerformed
+        addInternalFrame(new MemoryInternalFrame());
+    }//GEN-LAST:event_memoryMenuItemActionPerformed
+
     private static final String[][] IMPORTFILETYPES = {
         //new String[]{"Girr files (*.girr)", "girr" },
         new String[]{"ICT files (*.ict)", "ict"},
-        new String[]{"Text files (*.txt)", "txt"}
+        new String[]{"Text files (*.txt)", "txt"},
+        new String[]{"Session files (*." + SessionFile.EXTENSION + ")", SessionFile.EXTENSION}
     };
 
-    private static void setLAF(String lafName) {
+    private static final String[][] SESSIONFILETYPES = {
+        new String[]{"Session files (*." + SessionFile.EXTENSION + ")", SessionFile.EXTENSION}
+    };
+
+    /**
+     * Saves the tables and analyses in the background; the rows are collected on the EDT first.
+     * @param file
+     */
+    private void saveSession(File file) {
+        JInternalFrame[] frames = getInternalFrames();
+        // Edits made while writing must stay unsaved.
+        Map<TableInternalFrame, Long> generations = new HashMap<>(2 * frames.length);
+        for (JInternalFrame frame : frames)
+            if (frame instanceof TableInternalFrame)
+                generations.put((TableInternalFrame) frame, ((TableInternalFrame) frame).getChangeGeneration());
+        SessionFile.Snapshot snapshot = SessionFile.snapshot(frames, true);
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                snapshot.write(file);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    sessionFile = file;
+                    generations.forEach((table, generation) -> {
+                        table.clearUnsavedChanges(generation);
+                    });
+                    logger.log(Level.INFO, "Session with {0} frames saved to {1}", new Object[]{snapshot.size(), file});
+                } catch (InterruptedException | ExecutionException ex) {
+                    logger.log(Level.SEVERE, "Could not save session to {0}: {1}", new Object[]{file, ex.getCause() != null ? ex.getCause() : ex});
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Opens the frames of a saved session, at their saved positions.
+     * Only the names of the rows are read now; the rest when needed.
+     * @param file
+     * @throws IOException
+     */
+    public void restoreSession(File file) throws IOException {
+        long start = System.nanoTime();
+        SessionFile.Session session = SessionFile.read(file);
+        for (SessionFile.Entry entry : session.getEntries()) {
+            JInternalFrame frame = entry.isAnalysis()
+                    ? new AnalyzedFrame(entry.getSource(), entry.getTexts())
+                    : new TableInternalFrame(entry);
+            addInternalFrame(frame);
+            frame.setBounds(entry.getBounds());
+        }
+        sessionFile = file;
+        logger.log(Level.INFO, "Session {0} with {1} frames restored in {2} ms",
+                new Object[]{file, session.getEntries().size(), (System.nanoTime() - start) / 1000000L});
+    }
+
+    static void setLAF(String lafName) {
         /* Set the Nimbus look and feel */
         /* If Nimbus (introduced in Java SE 6) is not available, stay with the default look and feel.
          * For details see http://download.oracle.com/javase/tutorial/uiswing/lookandfeel/plaf.html
@@ -354,11 +554,26 @@ public class Gui extends javax.swing.JFrame {
         }
     }
 
+    private static void setupLogging() {
+        try {
+            AsyncLogHandler.install(Properties.getInstance());
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Could not open log file", ex);
+        }
+    }
+
     /**
      * @param args the command line arguments
      */
     public static void main(String args[]) {
+        StartupProfile.mark("main");
+        StartupProfile.startWarmup();
+        PropertiesStore.setup(Properties.getInstance());
+        setupLogging();
+        EdtWatchdog.setup(Properties.getInstance());
+        StartupProfile.mark("properties and logging");
         setLAF("Nimbus");
+        StartupProfile.mark("look and feel");
         invoke(Arrays.asList(args));
     }
 
@@ -367,6 +582,9 @@ public class Gui extends javax.swing.JFrame {
         java.awt.EventQueue.invokeLater(() -> {
             instance = new Gui(data);
             instance.setVisible(true);
+            StartupProfile.mark("main window visible");
+            // Queued behind the paint events of the window
+            java.awt.EventQueue.invokeLater(instance::deferredInit);
         });
     }
 
@@ -388,6 +606,9 @@ public class Gui extends javax.swing.JFrame {
     private javax.swing.JPanel jPanel1;
     private javax.swing.JPanel jPanel2;
     private javax.swing.JMenuBar menuBar;
+    private javax.swing.JMenuItem liveCaptureMenuItem;
+    private javax.swing.JMenuItem memoryMenuItem;
+    private javax.swing.JMenuItem metricsMenuItem;
     private javax.swing.JMenuItem newMenuItem;
     private javax.swing.JMenuItem newSequenceTableMenuItem;
     private javax.swing.JMenuItem openMenuItem;
@@ -405,6 +626,32 @@ public class Gui extends javax.swing.JFrame {
 
     public void addInternalFrame(JInternalFrame frame) {
         desktopPane.add(frame);
+        frame.addInternalFrameListener(new InternalFrameAdapter() {
+            @Override
+            public void internalFrameClosed(InternalFrameEvent e) {
+                frame.removeInternalFrameListener(this);
+                frameClosed(frame);
+            }
+        });
         frame.setVisible(true);
     }
+
+    /**
+     * Forgets all references to the frame.
+     * @param frame
+     */
+    private void frameClosed(JInternalFrame frame) {
+        if (editClient == frame) {
+            editClient = null;
+            editingTextField.setText(null);
+            editingTextField.setEditable(false);
+        }
+    }
+
+    /**
+     * @return the internal frames presently in the desktop, including iconified ones.
+     */
+    public JInternalFrame[] getInternalFrames() {
+        return desktopPane.getAllFrames();
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder event types. Only to be used through {@link FlightRecorderEvents},
+ * since the jdk.jfr classes are not present in every Java 8 runtime.
+ */
+final class JfrEvents {
+
+    private static final String CATEGORY = "IrpTransmogrifier-GUI";
+    private static final String PREFIX = "org.harctoolbox.transmogrifiergui.";
+
+    @Name(PREFIX + "FileImport")
+    @Label("File Import")
+    @Category(CATEGORY)
+    @Description("Reading and parsing of a file of named sequences")
+    @StackTrace(false)
+    static final class FileImport extends Event {
+
+        @Label("File")
+        String file;
+
+        @Label("Format")
+        String format;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Sequences")
+        int sequences;
+    }
+
+    @Name(PREFIX + "Analysis")
+    @Label("Analysis")
+    @Category(CATEGORY)
+    @Description("Analysis of a set of sequences, as shown in an analysis frame")
+    @StackTrace(false)
+    static final class Analysis extends Event {
+
+        @Label("Signals")
+        int signals;
+
+        @Label("Frequency")
+        double frequency;
+
+        @Label("Repeat Finder")
+        boolean repeatFinder;
+
+        @Label("Absolute Tolerance")
+        double absoluteTolerance;
+
+        @Label("Relative Tolerance")
+        double relativeTolerance;
+
+        @Label("Settings Fingerprint")
+        @Description("Hash of all settings affecting the analysis")
+        long settings;
+
+        @Label("Analyzer Construction")
+        @Timespan(Timespan.NANOSECONDS)
+        long analyzerDuration;
+
+        @Label("Protocol Search")
+        @Timespan(Timespan.NANOSECONDS)
+        long searchDuration;
+
+        @Label("Bit Statistics")
+        @Timespan(Timespan.NANOSECONDS)
+        long bitStatisticsDuration;
+    }
+
+    @Name(PREFIX + "DecodePass")
+    @Label("Decode Pass")
+    @Category(CATEGORY)
+    @Description("Search for the best protocol for every sequence of an analysis")
+    @StackTrace(false)
+    static final class DecodePass extends Event {
+
+        @Label("Signals")
+        int signals;
+
+        @Label("Decoded")
+        @Description("Number of signals for which a protocol was found")
+        int decoded;
+    }
+
+    @Name(PREFIX + "CellEdit")
+    @Label("Cell Edit")
+    @Category(CATEGORY)
+    @Description("Edit of a table cell")
+    @StackTrace(false)
+    static final class CellEdit extends Event {
+
+        @Label("Row")
+        int row;
+
+        @Label("Column")
+        int column;
+
+        @Label("Sequence Length")
+        @Description("Number of durations of the edited sequence, -1 if not applicable")
+        int sequenceLength;
+    }
+
+    private JfrEvents() {
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.ircore.OddSequenceLengthException;
+import org.harctoolbox.ircore.ThisCannotHappenException;
+
+/**
+ * Reads a continuous stream of durations in LIRC mode2 text format ("pulse 560", "space 1690", "timeout 30000",
+ * or "+560 -1690"), splits it into sequences at spaces not shorter than the trailing gap,
+ * and puts them into a {@link RingBuffer}, from which the GUI fetches them at its own pace.
+ * The source is opened, and read, in a daemon thread, since opening a named pipe blocks until there is a writer.
+ * Files and standard input are read through channels, so that {@link #close} also ends a blocked read.
+ *
+ * <p>Sources, as given to {@link #open}:
+ * <ul>
+ * <li>"-": standard input, e.g. piped from mode2; it is closed with the capture, so it can be captured only once,</li>
+ * <li>"tcp:host:port": a local socket,</li>
+ * <li>"replay:file" or "replay:file@speed": a recorded file, replayed in real time (or speed times faster),</li>
+ * <li>anything else: a file or named pipe, read until its end.</li>
+ * </ul>
+ */
+public class LiveCapture implements Closeable {
+
+    private final static Logger logger = Logger.getLogger(LiveCapture.class.getName());
+
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final double DEFAULT_TRAILING_GAP = 20000.0;
+    private static final int MAX_DURATIONS = 2048; // longer captures are split at the next space
+    private static final String TCP = "tcp:";
+    private static final String REPLAY = "replay:";
+
+    /**
+     * @param spec source, see the class documentation.
+     * @param trailingGap in microseconds; null for the default.
+     * @param capacity of the ring buffer
+     * @return a LiveCapture, not yet started.
+     * @throws IOException
+     */
+    public static LiveCapture open(String spec, Double trailingGap, int capacity) throws IOException {
+        double gap = trailingGap != null ? trailingGap : DEFAULT_TRAILING_GAP;
+        if (spec.equals("-"))
+            return new LiveCapture(() -> Channels.newInputStream(new FileInputStream(FileDescriptor.in).getChannel()),
+                    "stdin", gap, capacity, 0.0);
+        if (spec.startsWith(TCP)) {
+            int colon = spec.lastIndexOf(':');
+            if (colon <= TCP.length())
+                throw new IOException("Expected tcp:host:port");
+            String host = spec.substring(TCP.length(), colon);
+            int port;
+            try {
+                port = Integer.parseInt(spec.substring(colon + 1));
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid port: " + spec.substring(colon + 1));
+            }
+            return new LiveCapture(() -> new Socket(host, port).getInputStream(), spec, gap, capacity, 0.0);
+        }
+        if (spec.startsWith(REPLAY)) {
+            String name = spec.substring(REPLAY.length());
+            double speed = 1.0;
+            int at = name.lastIndexOf('@');
+            if (at > 0) {
+                try {
+                    speed = Double.parseDouble(name.substring(at + 1));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid speed: " + name.substring(at + 1));
+                }
+                name = name.substring(0, at);
+            }
+            File file = new File(name);
+            if (!file.canRead())
+                throw new IOException("Cannot read " + file);
+            return new LiveCapture(() -> Channels.newInputStream(FileChannel.open(file.toPath())), file.getName(), gap, capacity, speed);
+        }
+        File file = new File(spec);
+        if (!file.exists())
+            throw new IOException(file + " does not exist");
+        return new LiveCapture(() -> Channels.newInputStream(FileChannel.open(file.toPath())), file.getName(), gap, capacity, 0.0);
+    }
+
+    /**
+     * Opens the stream to read from.
+     */
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private final Source source;
+    private volatile InputStream inputStream = null;
+    private final String name;
+    private final double trailingGap;
+    private final double replaySpeed;
+    private final RingBuffer<IrSequence> buffer;
+    private Thread thread = null;
+    private volatile boolean running = false;
+    private volatile String error = null;
+
+    private double[] durations = new double[256];
+    private int length = 0;
+    private long replayStart;
+    private double replayMicros;
+
+    /**
+     * @param source of mode2 text
+     * @param name of the source
+     * @param trailingGap in microseconds
+     * @param capacity of the ring buffer
+     * @param replaySpeed if positive, the durations are replayed in real time, divided by this factor.
+     */
+    public LiveCapture(Source source, String name, double trailingGap, int capacity, double replaySpeed) {
+        this.source = source;
+        this.name = name;
+        this.trailingGap = trailingGap;
+        this.replaySpeed = replaySpeed;
+        this.buffer = new RingBuffer<>(capacity);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        running = true;
+        thread = new Thread(this::run, "LiveCapture-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops reading and closes the source, ending the reading thread also when blocked in a read.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null)
+            thread.interrupt();
+        InputStream in = inputStream;
+        try {
+            if (in != null)
+                in.close();
+        } catch (IOException ex) {
+            logger.log(Level.FINE, null, ex);
+        }
+    }
+
+    /**
+     * @return true until the source has ended, failed, or been closed.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the message of the error that ended the reading, or null.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return number of sequences captured, including dropped ones.
+     */
+    public long getReceived() {
+        return buffer.getOffered();
+    }
+
+    /**
+     * @return number of sequences dropped because the buffer was full.
+     */
+    public long getDropped() {
+        return buffer.getDropped();
+    }
+
+    /**
+     * Moves at most max captured sequences, oldest first, to the collection.
+     * @param collection
+     * @param max
+     * @return number moved
+     */
+    public int drainTo(Collection<? super IrSequence> collection, int max) {
+        return buffer.drainTo(collection, max);
+    }
+
+    private void run() {
+        replayStart = System.nanoTime();
+        replayMicros = 0.0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream = source.open(), StandardCharsets.US_ASCII))) {
+            String line;
+            while (running && (line = reader.readLine()) != null)
+                parseLine(line);
+            if (length > 0)
+                finish(trailingGap);
+        } catch (IOException ex) {
+            if (running) {
+                error = ex.getLocalizedMessage();
+                logger.log(Level.WARNING, "Live capture from {0} failed: {1}", new Object[]{name, error});
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+        }
+    }
+
+    private void parseLine(String line) throws InterruptedException {
+        String[] tokens = line.trim().split("\\s+");
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            try {
+                switch (token) {
+                    case "pulse":
+                        pulse(Double.parseDouble(tokens[++i]));
+                        break;
+                    case "space":
+                        space(Double.parseDouble(tokens[++i]));
+                        break;
+                    case "timeout":
+                        i++;
+                        if (length > 0)
+                            finish(trailingGap);
+                        break;
+                    case "carrier":
+                        i++;
+                        break;
+                    case "":
+                        break;
+                    default:
+                        if (token.startsWith("+"))
+                            pulse(Double.parseDouble(token.substring(1)));
+                        else if (token.startsWith("-"))
+                            space(Double.parseDouble(token.substring(1)));
+                        else
+                            logger.log(Level.FINE, "Ignoring \"{0}\"", line);
+                        break;
+                }
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+                logger.log(Level.FINE, "Ignoring \"{0}\"", line);
+                return;
+            }
+        }
+    }
+
+    private void pulse(double duration) throws InterruptedException {
+        pace(duration);
+        if (length % 2 == 1)
+            durations[length - 1] += duration; // two pulses in a row
+        else
+            add(duration);
+    }
+
+    private void space(double duration) throws InterruptedException {
+        pace(duration);
+        if (length == 0)
+            return; // silence between signals
+        if (length % 2 == 0) {
+            durations[length - 1] += duration; // two spaces in a row
+            if (durations[length - 1] >= trailingGap)
+                finish(durations[length - 1]);
+        } else if (duration >= trailingGap || length >= MAX_DURATIONS - 1)
+            finish(duration);
+        else
+            add(duration);
+    }
+
+    private void add(double duration) {
+        if (length == durations.length)
+            durations = Arrays.copyOf(durations, Math.min(2 * length, MAX_DURATIONS));
+        durations[length++] = duration;
+    }
+
+    private void finish(double gap) {
+        if (length % 2 == 1)
+            durations[length++] = gap;
+        try {
+            buffer.offer(new IrSequence(Arrays.copyOf(durations, length)));
+        } catch (OddSequenceLengthException ex) {
+            throw new ThisCannotHappenException(ex);
+        }
+        length = 0;
+    }
+
+    private void pace(double micros) throws InterruptedException {
+        if (replaySpeed <= 0.0)
+            return;
+        replayMicros += micros / replaySpeed;
+        long due = replayStart + (long) (replayMicros * 1000.0);
+        long wait = due - System.nanoTime();
+        if (wait > 1000000L)
+            Thread.sleep(wait / 1000000L);
+    }
+}
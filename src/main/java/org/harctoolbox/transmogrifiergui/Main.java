@@ -18,6 +18,7 @@
 package org.harctoolbox.transmogrifiergui;
 
 import java.io.File;
+import java.util.Arrays;
 import org.harctoolbox.irp.IrpTransmogrifier;
 
 public class Main {
@@ -29,7 +30,21 @@ public class Main {
                 Gui.main(new String[] { "src/test/ict/A to Z.ict" });
             else
                 Gui.main(args);
-        } else
+        } else if (args[0].equals("--batch"))
+            // Does not touch Swing/AWT
+            BatchAnalyzer.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args[0].equals("--generate"))
+            CaptureGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args[0].equals("--coordinator"))
+            Coordinator.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args[0].equals("--worker"))
+            // Speaks binary on stdin/stdout, see WorkerProtocol
+            AnalysisWorker.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args[0].equals("--server"))
+            AnalysisServer.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args[0].equals("--training-run"))
+            TrainingRun.main(Arrays.copyOfRange(args, 1, args.length));
+        else
             IrpTransmogrifier.main(args);
     }
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+/**
+ * Internal frame that can estimate, and partially release, the memory it holds.
+ */
+public interface MemoryAccountable {
+
+    /**
+     * @return Estimated number of bytes retained by the frame, beyond the Swing components.
+     */
+    long getMemoryEstimate();
+
+    /**
+     * @return Human readable breakdown of the estimate.
+     */
+    String getMemoryBreakdown();
+
+    /**
+     * @return a number that changes whenever the estimate or the breakdown may have changed, so that they can be cached.
+     */
+    long getMemoryGeneration();
+
+    /**
+     * Drops content that can be recomputed when needed.
+     */
+    void releaseCaches();
+}
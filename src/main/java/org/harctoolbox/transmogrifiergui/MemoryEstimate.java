@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import org.harctoolbox.ircore.IrSequence;
+
+/**
+ * Rough estimates of the heap used by some objects, assuming a 64-bit JVM with compressed pointers.
+ * Strings are assumed to use two bytes per character, which overestimates compact Latin-1 strings.
+ */
+public final class MemoryEstimate {
+
+    private static final int OBJECT_HEADER = 16;
+    private static final int ARRAY_HEADER = 16;
+    private static final int STRING = OBJECT_HEADER + 8 + ARRAY_HEADER; // String object, plus its array header
+    private static final int DOCUMENT_LINE = 96; // line Element with its start and end Positions
+
+    public static long string(String s) {
+        return s == null ? 0L : STRING + 2L * s.length();
+    }
+
+    public static long doubles(int length) {
+        return ARRAY_HEADER + 8L * length;
+    }
+
+    public static long irSequence(IrSequence irSequence) {
+        return irSequence == null ? 0L : irSequence(irSequence.getLength());
+    }
+
+    public static long irSequence(int length) {
+        return OBJECT_HEADER + doubles(length);
+    }
+
+    /**
+     * @param dataLength length of the packed data
+     * @return a {@link CompactSequence}, with its array.
+     */
+    public static long compactSequence(int dataLength) {
+        return OBJECT_HEADER + ARRAY_HEADER + dataLength;
+    }
+
+    /**
+     * @param document
+     * @return content (gap buffer, two bytes per char) and line elements.
+     */
+    public static long document(Document document) {
+        Element root = document.getDefaultRootElement();
+        return OBJECT_HEADER + ARRAY_HEADER + 2L * document.getLength() + (long) DOCUMENT_LINE * root.getElementCount();
+    }
+
+    /**
+     * @param bytes
+     * @return e.g. "512 B", "12.3 kB", "1.5 MB"
+     */
+    public static String format(long bytes) {
+        return bytes < 0L ? "-" + format(-bytes)
+                : bytes < 1000L ? bytes + " B"
+                : bytes < 1000000L ? String.format("%.1f kB", bytes / 1000.0)
+                : bytes < 1000000000L ? String.format("%.1f MB", bytes / 1000000.0)
+                : String.format("%.2f GB", bytes / 1000000000.0);
+    }
+
+    private MemoryEstimate() {
+    }
+}
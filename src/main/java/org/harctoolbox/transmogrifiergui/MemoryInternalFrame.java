@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.JInternalFrame;
+import javax.swing.Timer;
+import javax.swing.event.InternalFrameAdapter;
+import javax.swing.event.InternalFrameEvent;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Desktop-wide summary of the memory held by the frames, refreshed every other second while open.
+ */
+public class MemoryInternalFrame extends javax.swing.JInternalFrame {
+
+    private static final int REFRESH_INTERVAL = 2000; // milliseconds
+
+    private final MemoryTableModel tableModel = new MemoryTableModel();
+    private final Timer timer;
+
+    /**
+     * Creates new form MemoryInternalFrame
+     */
+    public MemoryInternalFrame() {
+        initComponents();
+        timer = new Timer(REFRESH_INTERVAL, (java.awt.event.ActionEvent evt) -> {
+            refresh();
+        });
+        addInternalFrameListener(new InternalFrameAdapter() {
+            @Override
+            public void internalFrameClosed(InternalFrameEvent e) {
+                timer.stop();
+            }
+        });
+        refresh();
+        timer.start();
+    }
+
+    private void refresh() {
+        tableModel.update(Gui.getInstance().getInternalFrames());
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        SignalStore store = SignalStore.getInstance();
+        summaryLabel.setText("Frames: " + MemoryEstimate.format(tableModel.getTotal() - store.getSaved())
+                + " (signal store: " + store + ")"
+                + "; heap used " + MemoryEstimate.format(used) + " of " + MemoryEstimate.format(runtime.maxMemory()));
+    }
+
+    /**
+     * The frame list may be up to REFRESH_INTERVAL old, so frames closed since are skipped.
+     */
+    private static void releaseCaches(MemoryAccountable frame) {
+        if (!((JInternalFrame) frame).isClosed())
+            frame.releaseCaches();
+    }
+
+    private static class MemoryTableModel extends AbstractTableModel {
+
+        private static final String[] COLUMN_NAMES = { "Frame", "Estimate", "Breakdown" };
+
+        private final List<MemoryAccountable> frames = new ArrayList<>(8);
+        private final List<String> titles = new ArrayList<>(8);
+        private final List<Long> estimates = new ArrayList<>(8);
+        private final List<String> breakdowns = new ArrayList<>(8);
+        private long total = 0L;
+        // Estimates are scans of the content, so they are recomputed only when a frame changed.
+        private Map<MemoryAccountable, Entry> cache = new HashMap<>(8);
+
+        void update(JInternalFrame[] internalFrames) {
+            Map<MemoryAccountable, Entry> oldCache = cache;
+            cache = new HashMap<>(2 * internalFrames.length);
+            frames.clear();
+            titles.clear();
+            estimates.clear();
+            breakdowns.clear();
+            total = 0L;
+            for (JInternalFrame frame : internalFrames) {
+                if (!(frame instanceof MemoryAccountable))
+                    continue;
+                MemoryAccountable accountable = (MemoryAccountable) frame;
+                long generation = accountable.getMemoryGeneration();
+                Entry entry = oldCache.get(accountable);
+                if (entry == null || entry.generation != generation)
+                    entry = new Entry(generation, accountable.getMemoryEstimate(), accountable.getMemoryBreakdown());
+                cache.put(accountable, entry);
+                frames.add(accountable);
+                titles.add(frame.getTitle());
+                estimates.add(entry.estimate);
+                breakdowns.add(entry.breakdown);
+                total += entry.estimate;
+            }
+            fireTableDataChanged();
+        }
+
+        MemoryAccountable getFrame(int row) {
+            return frames.get(row);
+        }
+
+        List<MemoryAccountable> getFrames() {
+            return new ArrayList<>(frames);
+        }
+
+        long getTotal() {
+            return total;
+        }
+
+        @Override
+        public int getRowCount() {
+            return frames.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            switch (column) {
+                case 0:
+                    return titles.get(row);
+                case 1:
+                    return MemoryEstimate.format(estimates.get(row));
+                case 2:
+                    return breakdowns.get(row);
+                default:
+                    throw new IndexOutOfBoundsException();
+            }
+        }
+
+        private static class Entry {
+
+            private final long generation;
+            private final long estimate;
+            private final String breakdown;
+
+            Entry(long generation, long estimate, String breakdown) {
+                this.generation = generation;
+                this.estimate = estimate;
+                this.breakdown = breakdown;
+            }
+        }
+    }
+
+    /**
+     * This method is called from within the constructor to initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is always
+     * regenerated by the Form Editor.
+     */
+    @SuppressWarnings("unchecked")
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        jScrollPane1 = new javax.swing.JScrollPane();
+        table = new javax.swing.JTable();
+        summaryLabel = new javax.swing.JLabel();
+        releaseSelectedButton = new javax.swing.JButton();
+        releaseAllButton = new javax.swing.JButton();
+
+        setClosable(true);
+        setIconifiable(true);
+        setMaximizable(true);
+        setResizable(true);
+        setTitle("Memory Usage");
+
+        table.setModel(tableModel);
+        jScrollPane1.setViewportView(table);
+
+        summaryLabel.setText("Frames:");
+
+        releaseSelectedButton.setText("Release selected");
+        releaseSelectedButton.setToolTipText("Release the caches of the selected frames.");
+        releaseSelectedButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                releaseSelectedButtonActionPerformed(evt);
+            }
+        });
+
+        releaseAllButton.setText("Release all");
+        releaseAllButton.setToolTipText("Release the caches of all frames.");
+        releaseAllButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                releaseAllButtonActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
+        getContentPane().setLayout(layout);
+        layout.setHorizontalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 640, Short.MAX_VALUE)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(summaryLabel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(releaseSelectedButton)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(releaseAllButton)
+                .addContainerGap())
+        );
+        layout.setVerticalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 190, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(summaryLabel)
+                    .addComponent(releaseSelectedButton)
+                    .addComponent(releaseAllButton))
+                .addContainerGap())
+        );
+
+        pack();
+    }// </editor-fold>//GEN-END:initComponents
+
+    private void releaseSelectedButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_releaseSelectedButtonActionPerformed
+        int[] rows = table.getSelectedRows();
+        List<MemoryAccountable> selected = new ArrayList<>(rows.length);
+        for (int row : rows)
+            selected.add(tableModel.getFrame(table.convertRowIndexToModel(row)));
+        selected.forEach((frame) -> {
+            releaseCaches(frame);
+        });
+        refresh();
+    }//GEN-LAST:event_releaseSelectedButtonActionPerformed
+
+    private void releaseAllButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_releaseAllButtonActionPerformed
+        tableModel.getFrames().forEach((frame) -> {
+            releaseCaches(frame);
+        });
+        refresh();
+    }//GEN-LAST:event_releaseAllButtonActionPerformed
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JScrollPane jScrollPane1;
+    private javax.swing.JButton releaseAllButton;
+    private javax.swing.JButton releaseSelectedButton;
+    private javax.swing.JLabel summaryLabel;
+    private javax.swing.JTable table;
+    // End of variables declaration//GEN-END:variables
+}
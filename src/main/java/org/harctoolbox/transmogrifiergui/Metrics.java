@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+/**
+ * Timing and throughput of the stages of import, analysis, and editing.
+ * Usage: {@code long start = Metrics.start(); ...; Metrics.record(Metrics.Stage.x, start, items);}
+ * The metrics are available as MXBeans under {@value #DOMAIN}, and in {@link MetricsInternalFrame}.
+ */
+public final class Metrics {
+
+    private final static Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    public static final String DOMAIN = "org.harctoolbox.transmogrifiergui";
+
+    public enum Stage {
+        /** Reading and parsing a file; items are sequences. */
+        importFile,
+        /** Creating a table model from imported sequences; items are rows. */
+        loadModSequences,
+        /** Adding one row to a table model. */
+        modelInsertion,
+        /** Painting a table frame. */
+        tablePaint,
+        /** Constructing the Analyzer; items are sequences. */
+        analyzer,
+        /** Searching the best protocol; items are sequences. */
+        searchBestProtocol,
+        /** Computing the bit statistics; items are protocols. */
+        bitStatistics,
+        /** Filling the text areas of an analyzed frame, including the computations not yet done; items are sequences. */
+        analysisRendering,
+        /** Applying an edit to a table cell. */
+        edit,
+        /** Comparing two tables; items are rows of both. */
+        diff
+    }
+
+    private static final StageMetrics[] stages = new StageMetrics[Stage.values().length];
+    private static boolean registered = false;
+
+    static {
+        for (Stage stage : Stage.values())
+            stages[stage.ordinal()] = new StageMetrics(stage);
+    }
+
+    /**
+     * @return start time, to be passed to {@link #record}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param stage
+     * @param start as returned by {@link #start()}
+     * @return the duration in nanoseconds
+     */
+    public static long record(Stage stage, long start) {
+        return record(stage, start, 1L);
+    }
+
+    /**
+     * @param stage
+     * @param start as returned by {@link #start()}
+     * @param items number of items processed
+     * @return the duration in nanoseconds
+     */
+    public static long record(Stage stage, long start, long items) {
+        long duration = System.nanoTime() - start;
+        stages[stage.ordinal()].record(duration, items);
+        return duration;
+    }
+
+    public static StageMetrics get(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    public static void reset() {
+        for (StageMetrics stageMetrics : stages)
+            stageMetrics.reset();
+    }
+
+    /**
+     * Registers the metrics of every stage with the platform MBean server. Further calls are ignored.
+     * Loading the management classes takes some time, so preferably not called during startup.
+     */
+    public static synchronized void registerMXBeans() {
+        if (registered)
+            return;
+        registered = true;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (StageMetrics stageMetrics : stages) {
+            try {
+                server.registerMBean(stageMetrics, new ObjectName(DOMAIN + ":type=Metrics,stage=" + stageMetrics.getStage()));
+            } catch (MalformedObjectNameException | InstanceAlreadyExistsException | MBeanRegistrationException | NotCompliantMBeanException ex) {
+                logger.log(Level.WARNING, null, ex);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import javax.swing.Timer;
+import javax.swing.event.InternalFrameAdapter;
+import javax.swing.event.InternalFrameEvent;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Small status panel showing the {@link Metrics}, refreshed once a second while open.
+ */
+public class MetricsInternalFrame extends javax.swing.JInternalFrame {
+
+    private static final int REFRESH_INTERVAL = 1000; // milliseconds
+
+    private final MetricsTableModel tableModel = new MetricsTableModel();
+    private final Timer timer;
+
+    /**
+     * Creates new form MetricsInternalFrame
+     */
+    public MetricsInternalFrame() {
+        initComponents();
+        timer = new Timer(REFRESH_INTERVAL, (java.awt.event.ActionEvent evt) -> {
+            tableModel.fireTableRowsUpdated(0, tableModel.getRowCount() - 1);
+        });
+        addInternalFrameListener(new InternalFrameAdapter() {
+            @Override
+            public void internalFrameClosed(InternalFrameEvent e) {
+                timer.stop();
+            }
+        });
+        timer.start();
+    }
+
+    private static class MetricsTableModel extends AbstractTableModel {
+
+        private static final String[] COLUMN_NAMES = { "Stage", "Count", "Mean ms", "Median ms", "90% ms", "Max ms", "Items/s" };
+        private static final Class<?>[] COLUMN_CLASSES = { String.class, Long.class, String.class, String.class, String.class, String.class, String.class };
+
+        @Override
+        public int getRowCount() {
+            return Metrics.Stage.values().length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return COLUMN_CLASSES[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            StageMetrics stageMetrics = Metrics.get(Metrics.Stage.values()[row]);
+            switch (column) {
+                case 0:
+                    return stageMetrics.getStage();
+                case 1:
+                    return stageMetrics.getCount();
+                case 2:
+                    return format(stageMetrics.getMeanMillis());
+                case 3:
+                    return format(stageMetrics.getMedianMillis());
+                case 4:
+                    return format(stageMetrics.getP90Millis());
+                case 5:
+                    return format(stageMetrics.getMaxMillis());
+                case 6:
+                    return String.format("%.0f", stageMetrics.getItemsPerSecond());
+                default:
+                    throw new IndexOutOfBoundsException();
+            }
+        }
+
+        private static String format(double millis) {
+            return String.format(millis < 10.0 ? "%.3f" : "%.0f", millis);
+        }
+    }
+
+    /**
+     * This method is called from within the constructor to initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is always
+     * regenerated by the Form Editor.
+     */
+    @SuppressWarnings("unchecked")
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        jScrollPane1 = new javax.swing.JScrollPane();
+        table = new javax.swing.JTable();
+
+        setClosable(true);
+        setIconifiable(true);
+        setMaximizable(true);
+        setResizable(true);
+        setTitle("Performance Metrics");
+
+        table.setModel(tableModel);
+        jScrollPane1.setViewportView(table);
+
+        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
+        getContentPane().setLayout(layout);
+        layout.setHorizontalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 640, Short.MAX_VALUE)
+        );
+        layout.setVerticalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 190, Short.MAX_VALUE)
+        );
+
+        pack();
+    }// </editor-fold>//GEN-END:initComponents
+
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JScrollPane jScrollPane1;
+    private javax.swing.JTable table;
+    // End of variables declaration//GEN-END:variables
+}
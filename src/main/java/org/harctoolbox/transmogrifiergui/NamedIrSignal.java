@@ -21,10 +21,19 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.DefaultTableColumnModel;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableColumn;
+import org.harctoolbox.ircore.IrSequence;
 import org.harctoolbox.ircore.OddSequenceLengthException;
 
 /**
@@ -32,25 +41,34 @@ import org.harctoolbox.ircore.OddSequenceLengthException;
  *
  */
 public abstract class NamedIrSignal {
+    private static int numerals = 0;
     private static int count = 0;
 
-    private static synchronized int incrementCount() {
-        count++;
-        return count;
+    private static synchronized int nextNumeral() {
+        return ++numerals;
     }
 
-    protected static synchronized void decrementCount() {
-        count--;
+    private static synchronized void addToCount(int delta) {
+        count += delta;
+    }
+
+    /**
+     * @return number of signals presently in table models, counted by {@link #intern} and {@link #release}.
+     * Not related to the numerals, which are never reused.
+     */
+    public static synchronized int getCount() {
+        return count;
     }
 
     private final Date date;
+    private boolean shared = false;
     private boolean validated;
     private String name;
     //private String comment;
     private final int numeral;
 
     public NamedIrSignal(String name/*, String comment*/) {
-        numeral = incrementCount();
+        numeral = nextNumeral();
         date = new Date();
         this.name = name;
         //this.comment = comment;
@@ -101,6 +119,163 @@ public abstract class NamedIrSignal {
         return csvString(", ");
     }
 
+    /**
+     * Machine readable, one line representation: name, a tab, and the data in a compact form.
+     * Derived classes are supposed to override.
+     * @return String without line terminator.
+     */
+    public String compactString() {
+        return csvString("\t");
+    }
+
+    /**
+     * Immutable copy of what is needed to render a signal, for example on the clipboard.
+     */
+    public interface Rendering {
+
+        String toPrintString();
+
+        String compactString();
+    }
+
+    /**
+     * Captures the name and the data as they are now, so that later edits of the signal do not change the rendering.
+     * Derived classes with data are supposed to override, capturing references to their (immutable) sequences.
+     * @return rendering of the current state
+     */
+    public Rendering capture() {
+        String print = toPrintString();
+        String compact = compactString();
+        return new Rendering() {
+            @Override
+            public String toPrintString() {
+                return print;
+            }
+
+            @Override
+            public String compactString() {
+                return compact;
+            }
+        };
+    }
+
+    /**
+     * Supplier calling its source at most once, on first use, and keeping the value.
+     * Lets a capture of a signal not yet loaded share the loading with the signal, without loading it at capture.
+     * @param <T>
+     */
+    protected static final class Memoized<T> implements Supplier<T> {
+
+        /**
+         * @param <T>
+         * @param supplier
+         * @return supplier, if already memoized, otherwise a new Memoized calling it
+         */
+        @SuppressWarnings("unchecked")
+        static <T> Memoized<T> of(Supplier<T> supplier) {
+            return supplier instanceof Memoized ? (Memoized<T>) supplier : new Memoized<>(supplier);
+        }
+
+        private Supplier<T> source;
+        private T value = null;
+
+        private Memoized(Supplier<T> source) {
+            this.source = source;
+        }
+
+        @Override
+        public synchronized T get() {
+            if (source != null) {
+                value = source.get();
+                source = null;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Estimated memory of the signal data proper, not including rendered representations.
+     * Derived classes are supposed to override.
+     * @return bytes
+     */
+    public long estimateMemory() {
+        return MemoryEstimate.string(getName());
+    }
+
+    /**
+     * Replaces the signal data by the instances of the {@link SignalStore}.
+     * Called when the signal is put in a table model; further calls are ignored until {@link #release}.
+     */
+    final synchronized void intern() {
+        if (shared)
+            return;
+        internData(SignalStore.getInstance());
+        shared = true;
+        addToCount(1);
+    }
+
+    /**
+     * Gives back the references obtained by {@link #intern}. Called when the signal is removed from its table model.
+     */
+    final synchronized void release() {
+        if (!shared)
+            return;
+        releaseData(SignalStore.getInstance());
+        shared = false;
+        addToCount(-1);
+    }
+
+    /**
+     * @return true if the signal data is held in the {@link SignalStore}.
+     */
+    protected synchronized boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Derived classes holding sequences are supposed to override, interning every sequence.
+     * @param store
+     */
+    protected void internData(SignalStore store) {
+    }
+
+    /**
+     * Derived classes holding sequences are supposed to override, releasing every sequence.
+     * @param store
+     */
+    protected void releaseData(SignalStore store) {
+    }
+
+    /**
+     * Selects whether the durations are kept as {@link IrSequence}s, or as {@link CompactSequence}s,
+     * decoded on every access. Derived classes holding sequences are supposed to override.
+     * @param compact
+     */
+    public void setCompact(boolean compact) {
+    }
+
+    /**
+     * Adds the {@link CompactSequence}s of the signal, if compact, to the argument.
+     * Derived classes holding sequences are supposed to override.
+     * @param sequences
+     */
+    protected void addCompactSequences(Collection<CompactSequence> sequences) {
+    }
+
+    /**
+     * To be used when a sequence of the signal is replaced.
+     * @param old sequence being replaced
+     * @param sequence new sequence
+     * @return the sequence to keep; the stored instance if the signal is in a table model.
+     */
+    protected synchronized IrSequence replace(IrSequence old, IrSequence sequence) {
+        if (!shared)
+            return sequence;
+        SignalStore store = SignalStore.getInstance();
+        store.release(old);
+        return store.intern(sequence);
+    }
+
     /**
      *
      */
@@ -128,6 +303,23 @@ public abstract class NamedIrSignal {
 
         public abstract Object[] toObjectArray(NamedIrSignal signal);
 
+        /**
+         * Like {@link #toObjectArray}, but with the rendered columns left empty, to be rendered on first access.
+         * Does not access the signal data, so signals that are loaded lazily stay unloaded.
+         * @param signal
+         * @return array of column values
+         */
+        public Object[] toUnrenderedArray(NamedIrSignal signal) {
+            Object[] result = new Object[columnNames.length];
+            for (int column = 0; column < result.length; column++)
+                if (!isRendered(column) && column != getPosName() && column != getPosVerified() && column != getPosIrSignal())
+                    return toObjectArray(signal);
+            result[getPosName()] = signal.getName();
+            result[getPosVerified()] = signal.getValidated();
+            result[getPosIrSignal()] = signal;
+            return result;
+        }
+
         public abstract int getPosName();
 
         //public abstract int getPosComment();
@@ -173,6 +365,24 @@ public abstract class NamedIrSignal {
         public boolean uninterestingIfAllEqual(int column) {
             return /* column == getPosComment() ||*/ column == getPosVerified();
         }
+
+        /**
+         * @param column
+         * @return true if the column only contains a rendering of the signal, that can be recomputed by toObjectArray.
+         */
+        public boolean isRendered(int column) {
+            return false;
+        }
+
+        /**
+         * Derived classes are supposed to override this, rendering only the requested column.
+         * @param signal
+         * @param column a rendered column
+         * @return the rendering of the column
+         */
+        public Object render(NamedIrSignal signal, int column) {
+            return toObjectArray(signal)[column];
+        }
     }
 
     public abstract static class LearnedIrSignalTableColumnModel extends DefaultTableColumnModel {
@@ -223,13 +433,48 @@ public abstract class NamedIrSignal {
             }
         }
 
-        public final String normalize(String text, int c){return null;};
+        public final String normalize(String text, int c, PropertiesSnapshot settings){return null;};
     }
 
     public abstract static class LearnedIrSignalTableModel extends DefaultTableModel {
+        private static final int RENDER_CACHE_SIZE = 512; // cells; some screens full
+
+        private static final class CellKey {
+
+            private final NamedIrSignal signal;
+            private final int column;
+
+            CellKey(NamedIrSignal signal, int column) {
+                this.signal = signal;
+                this.column = column;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                return obj instanceof CellKey && ((CellKey) obj).signal == signal && ((CellKey) obj).column == column;
+            }
+
+            @Override
+            public int hashCode() {
+                return 31 * System.identityHashCode(signal) + column;
+            }
+        }
+
         protected final AbstractColumnFunction columnsFunc;
         protected boolean scrollRequest = false;
         protected boolean unsavedChanges;
+        private long changeGeneration = 0L;
+        // Content changes and renderings; cells are rendered outside of the lock.
+        private final AtomicLong memoryGeneration = new AtomicLong(0L);
+        protected volatile boolean compactStorage = false;
+
+        // With compact storage, rendered cells are not kept in the rows; only the most recently used ones, here.
+        private final Map<CellKey, Object> renderCache = new LinkedHashMap<CellKey, Object>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CellKey, Object> eldest) {
+                return size() > RENDER_CACHE_SIZE;
+            }
+        };
 
         protected LearnedIrSignalTableModel(AbstractColumnFunction columnFunc) {
             //super(columnFunc.dummyArray(), columnFunc.headers());
@@ -240,6 +485,168 @@ public abstract class NamedIrSignal {
 
         public abstract String getType();
 
+        @SuppressWarnings("unchecked")
+        private Vector<Object> rowVector(int row) {
+            return (Vector<Object>) dataVector.get(row);
+        }
+
+        /**
+         * Rendered cells that have been released are recomputed on access, and cached again;
+         * with compact storage only in a small cache of the most recently used cells.
+         */
+        @Override
+        public Object getValueAt(int row, int column) {
+            Object value = super.getValueAt(row, column);
+            if (value == null && columnsFunc.isRendered(column)) {
+                NamedIrSignal signal = (NamedIrSignal) super.getValueAt(row, columnsFunc.getPosIrSignal());
+                if (signal != null) {
+                    if (compactStorage)
+                        return getCachedRendering(signal, column);
+                    value = columnsFunc.render(signal, column);
+                    rowVector(row).set(column, value);
+                    memoryGeneration.incrementAndGet();
+                }
+            }
+            return value;
+        }
+
+        private Object getCachedRendering(NamedIrSignal signal, int column) {
+            CellKey key = new CellKey(signal, column);
+            synchronized (renderCache) {
+                Object value = renderCache.get(key);
+                if (value != null)
+                    return value;
+            }
+            Object value = columnsFunc.render(signal, column);
+            synchronized (renderCache) {
+                renderCache.put(key, value);
+            }
+            memoryGeneration.incrementAndGet();
+            return value;
+        }
+
+        private void clearRenderCache() {
+            synchronized (renderCache) {
+                renderCache.clear();
+            }
+            memoryGeneration.incrementAndGet();
+        }
+
+        /**
+         * An edit changes the signal, so cached renderings may be out of date.
+         */
+        @Override
+        public void setValueAt(Object value, int row, int column) {
+            clearRenderCache();
+            markChanged(); // the derived fireTableCellUpdated do not fire events
+            super.setValueAt(value, row, column);
+            if (compactStorage && columnsFunc.isRendered(column))
+                rowVector(row).set(column, null);
+        }
+
+        /**
+         * Drops the rendered cells; they are recomputed when accessed.
+         */
+        public synchronized void releaseRenderedCells() {
+            clearRenderCache();
+            for (int row = 0; row < getRowCount(); row++) {
+                Vector<Object> rowVector = rowVector(row);
+                for (int column = 0; column < rowVector.size(); column++)
+                    if (columnsFunc.isRendered(column))
+                        rowVector.set(column, null);
+            }
+        }
+
+        /**
+         * @return true if the signals are kept as {@link CompactSequence}s.
+         */
+        public synchronized boolean isCompactStorage() {
+            return compactStorage;
+        }
+
+        /**
+         * Converts all signals, present and future, to or from compact storage.
+         * When compacting, the rendered cells are dropped too, since they hold the durations as text.
+         * @param compactStorage
+         */
+        public synchronized void setCompactStorage(boolean compactStorage) {
+            if (compactStorage == this.compactStorage)
+                return;
+            this.compactStorage = compactStorage;
+            for (int row = 0; row < getRowCount(); row++) {
+                Object signal = rowVector(row).get(columnsFunc.getPosIrSignal());
+                if (signal != null)
+                    ((NamedIrSignal) signal).setCompact(compactStorage);
+            }
+            releaseRenderedCells();
+        }
+
+        /**
+         * Compares the compact sequences with what the expanded signals would use.
+         * Expanded, equal sequences of the table are held once in the {@link SignalStore}, so they are counted once.
+         * @return Estimated memory saved by compact storage of the signals; negative if it uses more.
+         */
+        public synchronized long estimateCompactSavings() {
+            List<CompactSequence> sequences = new ArrayList<>(getRowCount());
+            for (int row = 0; row < getRowCount(); row++) {
+                Object signal = rowVector(row).get(columnsFunc.getPosIrSignal());
+                if (signal != null)
+                    ((NamedIrSignal) signal).addCompactSequences(sequences);
+            }
+            long compact = 0L;
+            long expanded = 0L;
+            Set<CompactSequence> distinct = new HashSet<>(2 * sequences.size());
+            for (CompactSequence sequence : sequences) {
+                compact += sequence.estimateMemory();
+                if (distinct.add(sequence))
+                    expanded += MemoryEstimate.irSequence(sequence.getLength());
+            }
+            return expanded - compact;
+        }
+
+        /**
+         * Prepares a signal for insertion: sets its storage, and interns it.
+         * @param signal
+         * @return the row; with compact storage, the rendered cells are left to be rendered on first access.
+         */
+        protected Object[] admit(NamedIrSignal signal) {
+            signal.setCompact(compactStorage);
+            signal.intern();
+            return compactStorage ? columnsFunc.toUnrenderedArray(signal) : columnsFunc.toObjectArray(signal);
+        }
+
+        /**
+         * @return Estimated memory of the signals, not including their renderings.
+         */
+        public long estimateSignalsMemory() {
+            long sum = 0L;
+            for (int row = 0; row < getRowCount(); row++) {
+                Object signal = rowVector(row).get(columnsFunc.getPosIrSignal());
+                if (signal != null)
+                    sum += ((NamedIrSignal) signal).estimateMemory();
+            }
+            return sum;
+        }
+
+        /**
+         * @return Estimated memory of the rendered cells currently held.
+         */
+        public long estimateRenderedMemory() {
+            long sum = 0L;
+            synchronized (renderCache) {
+                for (Object value : renderCache.values())
+                    if (value instanceof String)
+                        sum += MemoryEstimate.string((String) value);
+            }
+            for (int row = 0; row < getRowCount(); row++) {
+                Vector<Object> rowVector = rowVector(row);
+                for (int column = 0; column < rowVector.size(); column++)
+                    if (columnsFunc.isRendered(column) && rowVector.get(column) instanceof String)
+                        sum += MemoryEstimate.string((String) rowVector.get(column));
+            }
+            return sum;
+        }
+
 //        public abstract Command toCommand(int row) throws IrpMasterException;
 //
 //        public Map<String, Command> getCommands() {
@@ -424,9 +831,60 @@ public abstract class NamedIrSignal {
         // Derived classes should define a public version of the function, taking only
         // an instance of the derived class as argument.
         protected synchronized void addSignal(NamedIrSignal cir) {
-            addRow(columnsFunc.toObjectArray(cir));
+            long start = Metrics.start();
+            addRow(admit(cir));
             scrollRequest = true;
             unsavedChanges = true;
+            Metrics.record(Metrics.Stage.modelInsertion, start);
+        }
+
+        private void forget(int row) {
+            NamedIrSignal signal = (NamedIrSignal) rowVector(row).get(columnsFunc.getPosIrSignal());
+            if (signal != null)
+                signal.release();
+        }
+
+        /**
+         * Appends the signals without rendering them, with one event for all of them.
+         * Cells are rendered when first shown.
+         * @param signals
+         */
+        @SuppressWarnings("unchecked")
+        public synchronized void addUnrendered(List<? extends NamedIrSignal> signals) {
+            if (signals.isEmpty())
+                return;
+            long start = Metrics.start();
+            int first = getRowCount();
+            signals.forEach((signal) -> {
+                signal.setCompact(compactStorage);
+                signal.intern();
+                dataVector.add(convertToVector(columnsFunc.toUnrenderedArray(signal)));
+            });
+            fireTableRowsInserted(first, getRowCount() - 1);
+            Metrics.record(Metrics.Stage.modelInsertion, start, signals.size());
+        }
+
+        /**
+         * Removes the row, and updates the signal count and the {@link SignalStore}.
+         * @param row
+         */
+        @Override
+        public synchronized void removeRow(int row) {
+            clearRenderCache();
+            forget(row);
+            super.removeRow(row);
+        }
+
+        /**
+         * Removes all rows, and updates the signal count and the {@link SignalStore}.
+         */
+        public synchronized void clear() {
+            if (getRowCount() == 0)
+                return;
+            clearRenderCache();
+            for (int row = 0; row < getRowCount(); row++)
+                forget(row);
+            setRowCount(0);
         }
 
         public synchronized boolean getAndResetScrollRequest() {
@@ -439,6 +897,25 @@ public abstract class NamedIrSignal {
             return row >= 0 && row < getRowCount();
         }
 
+        public NamedIrSignal getNamedIrSignal(int modelRow) {
+            return validRow(modelRow)
+                    ? (NamedIrSignal) getValueAt(modelRow, columnsFunc.getPosIrSignal())
+                    : null;
+        }
+
+        /**
+         * Returns the signals of the given rows, in the given order.
+         * Only references are copied, the signals are not rendered.
+         * @param modelRows row numbers in model coordinates
+         * @return array of the same length as the argument
+         */
+        public NamedIrSignal[] getNamedIrSignals(int[] modelRows) {
+            NamedIrSignal[] result = new NamedIrSignal[modelRows.length];
+            for (int i = 0; i < modelRows.length; i++)
+                result[i] = getNamedIrSignal(modelRows[i]);
+            return result;
+        }
+
         @Override
         public final boolean isCellEditable(int rowIndex, int columnIndex) {
             return columnsFunc.isEditable(columnIndex);
@@ -460,14 +937,59 @@ public abstract class NamedIrSignal {
             return str.toString();
         }
 
-        void clearUnsavedChanges() {
+        /**
+         * Every change of the content, that is every event, and every edit, is counted.
+         */
+        @Override
+        public void fireTableChanged(TableModelEvent e) {
+            markChanged();
+            super.fireTableChanged(e);
+        }
+
+        private synchronized void markChanged() {
+            unsavedChanges = true;
+            changeGeneration++;
+            memoryGeneration.incrementAndGet();
+        }
+
+        /**
+         * @return a number that changes with every change of the content
+         */
+        synchronized long getChangeGeneration() {
+            return changeGeneration;
+        }
+
+        /**
+         * @return a number that changes with every change of the content, and of the rendered cells held
+         */
+        long getMemoryGeneration() {
+            return memoryGeneration.get();
+        }
+
+        synchronized void clearUnsavedChanges() {
             unsavedChanges = false;
         }
 
+        /**
+         * Marks the content as saved, unless changed since the generation was obtained.
+         * @param generation from {@link #getChangeGeneration}, when the content was collected for saving
+         */
+        synchronized void clearUnsavedChanges(long generation) {
+            if (generation == changeGeneration)
+                unsavedChanges = false;
+        }
+
         boolean hasUnsavedChanges() {
             return unsavedChanges;
         }
 
-        public abstract String normalize(String text, int c) throws OddSequenceLengthException;
+        /**
+         * @param text as entered
+         * @param c model column
+         * @param settings settings to use, taken when the edit started
+         * @return normalized text
+         * @throws OddSequenceLengthException
+         */
+        public abstract String normalize(String text, int c, PropertiesSnapshot settings) throws OddSequenceLengthException;
     }
 }
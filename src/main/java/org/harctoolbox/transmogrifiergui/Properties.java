@@ -28,6 +28,28 @@ public class Properties {
         return instance;
     }
 
+    private Runnable changeListener = null;
+
+    /**
+     * @param changeListener called (on the thread of the setter) after every change; null to disable.
+     */
+    public synchronized void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void changed() {
+        if (changeListener != null)
+            changeListener.run();
+    }
+
+    /**
+     * Returns an immutable copy of the analysis and import settings.
+     * @return new PropertiesSnapshot
+     */
+    public synchronized PropertiesSnapshot snapshot() {
+        return new PropertiesSnapshot(this);
+    }
+
     private String encoding = "UTF-8";
     private boolean repeatFinder = true;
     private Double trailingGap = 20000d;
@@ -35,6 +57,7 @@ public class Properties {
     private Double relativeTolerance = 0.2d;
     private Double frequency = 38000d;
     private boolean sorterOnRawTable = false;
+    private boolean compactStorage = false;
     private Double maxRoundingError = Burst.Preferences.DEFAULT_MAX_ROUNDING_ERROR;
     private Double maxUnits = Burst.Preferences.DEFAULT_MAX_UNITS;
     private Double maxMicroSeconds = Burst.Preferences.DEFAULT_MAX_MICROSECONDS;
@@ -47,6 +70,16 @@ public class Properties {
     private int radix = 16;
     private boolean usePeriods = false;
     private final boolean tsvOptimize = false;
+    private int consoleMaxLines = 10000;
+    private int consoleBufferLines = 4096;
+    private int consoleFrameRate = 20;
+    private int logQueueSize = 1024;
+    private AsyncLogHandler.OverflowPolicy logOverflowPolicy = AsyncLogHandler.OverflowPolicy.dropNewest;
+    private String logFile = null;
+    private int logFileLimit = 1000000;
+    private int logFileCount = 5;
+    private boolean edtWatchdog = false;
+    private int edtWatchdogThreshold = 200;
 
     /**
      * @return the encoding
@@ -58,8 +91,9 @@ public class Properties {
     /**
      * @param encoding the encoding to set
      */
-    public void setEncoding(String encoding) {
+    public synchronized void setEncoding(String encoding) {
         this.encoding = encoding;
+        changed();
     }
 
     /**
@@ -72,8 +106,9 @@ public class Properties {
     /**
      * @param repeatFinder the repeatFinder to set
      */
-    public void setRepeatFinder(boolean repeatFinder) {
+    public synchronized void setRepeatFinder(boolean repeatFinder) {
         this.repeatFinder = repeatFinder;
+        changed();
     }
 
     /**
@@ -86,8 +121,9 @@ public class Properties {
     /**
      * @param trailingGap the trailingGap to set
      */
-    public void setTrailingGap(Double trailingGap) {
+    public synchronized void setTrailingGap(Double trailingGap) {
         this.trailingGap = trailingGap;
+        changed();
     }
 
     /**
@@ -100,8 +136,9 @@ public class Properties {
     /**
      * @param absoluteTolerance the absoluteTolerance to set
      */
-    public void setAbsoluteTolerance(Double absoluteTolerance) {
+    public synchronized void setAbsoluteTolerance(Double absoluteTolerance) {
         this.absoluteTolerance = absoluteTolerance;
+        changed();
     }
 
     /**
@@ -114,8 +151,9 @@ public class Properties {
     /**
      * @param relativeTolerance the relativeTolerance to set
      */
-    public void setRelativeTolerance(Double relativeTolerance) {
+    public synchronized void setRelativeTolerance(Double relativeTolerance) {
         this.relativeTolerance = relativeTolerance;
+        changed();
     }
 
     /**
@@ -128,8 +166,9 @@ public class Properties {
     /**
      * @param frequency the frequency to set
      */
-    public void setFrequency(Double frequency) {
+    public synchronized void setFrequency(Double frequency) {
         this.frequency = frequency;
+        changed();
     }
 
     /**
@@ -142,8 +181,24 @@ public class Properties {
     /**
      * @param sorterOnRawTable the sorterOnRawTabel to set
      */
-    public void setSorterOnRawTable(boolean sorterOnRawTable) {
+    public synchronized void setSorterOnRawTable(boolean sorterOnRawTable) {
         this.sorterOnRawTable = sorterOnRawTable;
+        changed();
+    }
+
+    /**
+     * @return the compactStorage
+     */
+    public boolean isCompactStorage() {
+        return compactStorage;
+    }
+
+    /**
+     * @param compactStorage the compactStorage to set
+     */
+    public synchronized void setCompactStorage(boolean compactStorage) {
+        this.compactStorage = compactStorage;
+        changed();
     }
 
     /**
@@ -156,8 +211,9 @@ public class Properties {
     /**
      * @param maxRoundingError the maxRoundingError to set
      */
-    public void setMaxRoundingError(Double maxRoundingError) {
+    public synchronized void setMaxRoundingError(Double maxRoundingError) {
         this.maxRoundingError = maxRoundingError;
+        changed();
     }
 
     /**
@@ -170,8 +226,9 @@ public class Properties {
     /**
      * @param maxUnits the maxUnits to set
      */
-    public void setMaxUnits(Double maxUnits) {
+    public synchronized void setMaxUnits(Double maxUnits) {
         this.maxUnits = maxUnits;
+        changed();
     }
 
     /**
@@ -184,8 +241,9 @@ public class Properties {
     /**
      * @param maxMicroSeconds the maxMicroSeconds to set
      */
-    public void setMaxMicroSeconds(Double maxMicroSeconds) {
+    public synchronized void setMaxMicroSeconds(Double maxMicroSeconds) {
         this.maxMicroSeconds = maxMicroSeconds;
+        changed();
     }
 
     /**
@@ -198,8 +256,9 @@ public class Properties {
     /**
      * @param extent the extent to set
      */
-    public void setExtent(boolean extent) {
+    public synchronized void setExtent(boolean extent) {
         this.extent = extent;
+        changed();
     }
 
     /**
@@ -212,8 +271,9 @@ public class Properties {
     /**
      * @param parameterWidths the parameterWidths to set
      */
-    public void setParameterWidths(List<Integer> parameterWidths) {
+    public synchronized void setParameterWidths(List<Integer> parameterWidths) {
         this.parameterWidths = parameterWidths;
+        changed();
     }
 
     /**
@@ -226,8 +286,9 @@ public class Properties {
     /**
      * @param invert the invert to set
      */
-    public void setInvert(boolean invert) {
+    public synchronized void setInvert(boolean invert) {
         this.invert = invert;
+        changed();
     }
 
     /**
@@ -240,8 +301,9 @@ public class Properties {
     /**
      * @param bitDirection the bitDirection to set
      */
-    public void setBitDirection(BitDirection bitDirection) {
+    public synchronized void setBitDirection(BitDirection bitDirection) {
         this.bitDirection = bitDirection;
+        changed();
     }
 
     /**
@@ -254,8 +316,9 @@ public class Properties {
     /**
      * @param maxParameterWidth the maxParameterWidth to set
      */
-    public void setMaxParameterWidth(int maxParameterWidth) {
+    public synchronized void setMaxParameterWidth(int maxParameterWidth) {
         this.maxParameterWidth = maxParameterWidth;
+        changed();
     }
 
     /**
@@ -268,8 +331,9 @@ public class Properties {
     /**
      * @param timeBaseString the timeBaseString to set
      */
-    public void setTimeBaseString(String timeBaseString) {
+    public synchronized void setTimeBaseString(String timeBaseString) {
         this.timeBaseString = timeBaseString;
+        changed();
     }
 
     /**
@@ -282,8 +346,9 @@ public class Properties {
     /**
      * @param radix the radix to set
      */
-    public void setRadix(int radix) {
+    public synchronized void setRadix(int radix) {
         this.radix = radix;
+        changed();
     }
 
     /**
@@ -296,8 +361,9 @@ public class Properties {
     /**
      * @param usePeriods the usePeriods to set
      */
-    public void setUsePeriods(boolean usePeriods) {
+    public synchronized void setUsePeriods(boolean usePeriods) {
         this.usePeriods = usePeriods;
+        changed();
     }
 
     /**
@@ -306,4 +372,154 @@ public class Properties {
     public boolean isTsvOptimize() {
         return tsvOptimize;
     }
+
+    /**
+     * @return the consoleMaxLines
+     */
+    public int getConsoleMaxLines() {
+        return consoleMaxLines;
+    }
+
+    /**
+     * @param consoleMaxLines the consoleMaxLines to set
+     */
+    public synchronized void setConsoleMaxLines(int consoleMaxLines) {
+        this.consoleMaxLines = consoleMaxLines;
+        changed();
+    }
+
+    /**
+     * @return the consoleBufferLines
+     */
+    public int getConsoleBufferLines() {
+        return consoleBufferLines;
+    }
+
+    /**
+     * @param consoleBufferLines the consoleBufferLines to set
+     */
+    public synchronized void setConsoleBufferLines(int consoleBufferLines) {
+        this.consoleBufferLines = consoleBufferLines;
+        changed();
+    }
+
+    /**
+     * @return the consoleFrameRate
+     */
+    public int getConsoleFrameRate() {
+        return consoleFrameRate;
+    }
+
+    /**
+     * @param consoleFrameRate the consoleFrameRate to set
+     */
+    public synchronized void setConsoleFrameRate(int consoleFrameRate) {
+        this.consoleFrameRate = consoleFrameRate;
+        changed();
+    }
+
+    /**
+     * @return the logQueueSize
+     */
+    public int getLogQueueSize() {
+        return logQueueSize;
+    }
+
+    /**
+     * @param logQueueSize the logQueueSize to set
+     */
+    public synchronized void setLogQueueSize(int logQueueSize) {
+        this.logQueueSize = logQueueSize;
+        changed();
+    }
+
+    /**
+     * @return the logOverflowPolicy
+     */
+    public AsyncLogHandler.OverflowPolicy getLogOverflowPolicy() {
+        return logOverflowPolicy;
+    }
+
+    /**
+     * @param logOverflowPolicy the logOverflowPolicy to set
+     */
+    public synchronized void setLogOverflowPolicy(AsyncLogHandler.OverflowPolicy logOverflowPolicy) {
+        this.logOverflowPolicy = logOverflowPolicy;
+        changed();
+    }
+
+    /**
+     * @return the logFile, pattern as in java.util.logging.FileHandler, or null for no log file
+     */
+    public String getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * @param logFile the logFile to set
+     */
+    public synchronized void setLogFile(String logFile) {
+        this.logFile = logFile;
+        changed();
+    }
+
+    /**
+     * @return the logFileLimit, approximate maximal size in bytes of one log file
+     */
+    public int getLogFileLimit() {
+        return logFileLimit;
+    }
+
+    /**
+     * @param logFileLimit the logFileLimit to set
+     */
+    public synchronized void setLogFileLimit(int logFileLimit) {
+        this.logFileLimit = logFileLimit;
+        changed();
+    }
+
+    /**
+     * @return the logFileCount, number of log files to rotate through
+     */
+    public int getLogFileCount() {
+        return logFileCount;
+    }
+
+    /**
+     * @param logFileCount the logFileCount to set
+     */
+    public synchronized void setLogFileCount(int logFileCount) {
+        this.logFileCount = logFileCount;
+        changed();
+    }
+
+    /**
+     * @return the edtWatchdog, true if the EDT stall watchdog is to be installed at startup
+     */
+    public boolean isEdtWatchdog() {
+        return edtWatchdog;
+    }
+
+    /**
+     * @param edtWatchdog the edtWatchdog to set
+     */
+    public synchronized void setEdtWatchdog(boolean edtWatchdog) {
+        this.edtWatchdog = edtWatchdog;
+        changed();
+    }
+
+    /**
+     * @return the edtWatchdogThreshold, in milliseconds; events taking longer are considered stalls
+     */
+    public int getEdtWatchdogThreshold() {
+        return edtWatchdogThreshold;
+    }
+
+    /**
+     * @param edtWatchdogThreshold the edtWatchdogThreshold to set
+     */
+    public synchronized void setEdtWatchdogThreshold(int edtWatchdogThreshold) {
+        this.edtWatchdogThreshold = edtWatchdogThreshold;
+        changed();
+    }
 }
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.harctoolbox.analyze.Analyzer;
+import org.harctoolbox.analyze.Burst;
+import org.harctoolbox.irp.BitDirection;
+
+/**
+ * Immutable copy of the analysis and import settings of {@link Properties}.
+ * A job running off the EDT should take one snapshot when it starts, and use only that.
+ * Missing (null) numbers are stored and returned as NaN; {@link #orNull} converts for APIs taking null.
+ *
+ * {@link #fingerprint()} is a stable 64-bit hash of the content (not depending on the JVM instance),
+ * usable as cache key.
+ */
+public final class PropertiesSnapshot {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static double unbox(Double x) {
+        return x != null ? x : Double.NaN;
+    }
+
+    /**
+     * @param x number from a getter
+     * @return x, or null if x is NaN, i.e. unset
+     */
+    static Double orNull(double x) {
+        return Double.isNaN(x) ? null : x;
+    }
+
+    private final String encoding;
+    private final boolean repeatFinder;
+    private final double trailingGap;
+    private final double absoluteTolerance;
+    private final double relativeTolerance;
+    private final double frequency;
+    private final double maxRoundingError;
+    private final double maxUnits;
+    private final double maxMicroSeconds;
+    private final String timeBaseString;
+    private final BitDirection bitDirection;
+    private final boolean extent;
+    private final int maxParameterWidth;
+    private final int[] parameterWidths;
+    private final boolean invert;
+    private final int radix;
+    private final boolean usePeriods;
+    private final boolean tsvOptimize;
+    private final long fingerprint;
+
+    PropertiesSnapshot(Properties properties) {
+        encoding = properties.getEncoding();
+        repeatFinder = properties.isRepeatFinder();
+        trailingGap = unbox(properties.getTrailingGap());
+        absoluteTolerance = unbox(properties.getAbsoluteTolerance());
+        relativeTolerance = unbox(properties.getRelativeTolerance());
+        frequency = unbox(properties.getFrequency());
+        maxRoundingError = unbox(properties.getMaxRoundingError());
+        maxUnits = unbox(properties.getMaxUnits());
+        maxMicroSeconds = unbox(properties.getMaxMicroSeconds());
+        timeBaseString = properties.getTimeBaseString();
+        bitDirection = properties.getBitDirection();
+        extent = properties.isExtent();
+        maxParameterWidth = properties.getMaxParameterWidth();
+        List<Integer> widths = properties.getParameterWidths();
+        parameterWidths = new int[widths.size()];
+        for (int i = 0; i < parameterWidths.length; i++)
+            parameterWidths[i] = widths.get(i);
+        invert = properties.isInvert();
+        radix = properties.getRadix();
+        usePeriods = properties.isUsePeriods();
+        tsvOptimize = properties.isTsvOptimize();
+        fingerprint = computeFingerprint();
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write}, for example by another process.
+     * @param in
+     * @throws IOException
+     */
+    PropertiesSnapshot(DataInput in) throws IOException {
+        encoding = readString(in);
+        repeatFinder = in.readBoolean();
+        trailingGap = in.readDouble();
+        absoluteTolerance = in.readDouble();
+        relativeTolerance = in.readDouble();
+        frequency = in.readDouble();
+        maxRoundingError = in.readDouble();
+        maxUnits = in.readDouble();
+        maxMicroSeconds = in.readDouble();
+        timeBaseString = readString(in);
+        String direction = readString(in);
+        try {
+            bitDirection = direction != null ? BitDirection.valueOf(direction) : null;
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Unknown bit direction " + direction);
+        }
+        extent = in.readBoolean();
+        maxParameterWidth = in.readInt();
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Negative parameter width count " + count);
+        parameterWidths = new int[count];
+        for (int i = 0; i < parameterWidths.length; i++)
+            parameterWidths[i] = in.readInt();
+        invert = in.readBoolean();
+        radix = in.readInt();
+        usePeriods = in.readBoolean();
+        tsvOptimize = in.readBoolean();
+        fingerprint = computeFingerprint();
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutput out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if (str != null)
+            out.writeUTF(str);
+    }
+
+    /**
+     * Writes all the settings, in a form read by {@link #PropertiesSnapshot(DataInput)}.
+     * Strings are modified UTF-8 (DataOutput.writeUTF), preceded by a boolean that is false for null.
+     * @param out
+     * @throws IOException
+     */
+    void write(DataOutput out) throws IOException {
+        writeString(out, encoding);
+        out.writeBoolean(repeatFinder);
+        out.writeDouble(trailingGap);
+        out.writeDouble(absoluteTolerance);
+        out.writeDouble(relativeTolerance);
+        out.writeDouble(frequency);
+        out.writeDouble(maxRoundingError);
+        out.writeDouble(maxUnits);
+        out.writeDouble(maxMicroSeconds);
+        writeString(out, timeBaseString);
+        writeString(out, bitDirection != null ? bitDirection.name() : null);
+        out.writeBoolean(extent);
+        out.writeInt(maxParameterWidth);
+        out.writeInt(parameterWidths.length);
+        for (int w : parameterWidths)
+            out.writeInt(w);
+        out.writeBoolean(invert);
+        out.writeInt(radix);
+        out.writeBoolean(usePeriods);
+        out.writeBoolean(tsvOptimize);
+    }
+
+    private long computeFingerprint() {
+        long h = FNV_OFFSET;
+        h = mix(h, encoding);
+        h = mix(h, repeatFinder ? 1L : 0L);
+        h = mix(h, Double.doubleToLongBits(trailingGap));
+        h = mix(h, Double.doubleToLongBits(absoluteTolerance));
+        h = mix(h, Double.doubleToLongBits(relativeTolerance));
+        h = mix(h, Double.doubleToLongBits(frequency));
+        h = mix(h, Double.doubleToLongBits(maxRoundingError));
+        h = mix(h, Double.doubleToLongBits(maxUnits));
+        h = mix(h, Double.doubleToLongBits(maxMicroSeconds));
+        h = mix(h, timeBaseString);
+        h = mix(h, bitDirection != null ? bitDirection.name() : null);
+        h = mix(h, extent ? 1L : 0L);
+        h = mix(h, maxParameterWidth);
+        h = mix(h, parameterWidths.length);
+        for (int w : parameterWidths)
+            h = mix(h, w);
+        h = mix(h, invert ? 1L : 0L);
+        h = mix(h, radix);
+        h = mix(h, usePeriods ? 1L : 0L);
+        h = mix(h, tsvOptimize ? 1L : 0L);
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        long x = h;
+        for (int i = 0; i < 8; i++) {
+            x ^= (value >>> (8 * i)) & 0xffL;
+            x *= FNV_PRIME;
+        }
+        return x;
+    }
+
+    private static long mix(long h, String str) {
+        if (str == null)
+            return mix(h, -1L);
+        long x = mix(h, str.length());
+        for (byte b : str.getBytes(StandardCharsets.UTF_8)) {
+            x ^= b & 0xffL;
+            x *= FNV_PRIME;
+        }
+        return x;
+    }
+
+    /**
+     * @return Stable 64-bit hash of all the settings.
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof PropertiesSnapshot))
+            return false;
+        PropertiesSnapshot other = (PropertiesSnapshot) obj;
+        return fingerprint == other.fingerprint
+                && repeatFinder == other.repeatFinder
+                && Double.compare(trailingGap, other.trailingGap) == 0
+                && Double.compare(absoluteTolerance, other.absoluteTolerance) == 0
+                && Double.compare(relativeTolerance, other.relativeTolerance) == 0
+                && Double.compare(frequency, other.frequency) == 0
+                && Double.compare(maxRoundingError, other.maxRoundingError) == 0
+                && Double.compare(maxUnits, other.maxUnits) == 0
+                && Double.compare(maxMicroSeconds, other.maxMicroSeconds) == 0
+                && extent == other.extent
+                && maxParameterWidth == other.maxParameterWidth
+                && invert == other.invert
+                && radix == other.radix
+                && usePeriods == other.usePeriods
+                && tsvOptimize == other.tsvOptimize
+                && bitDirection == other.bitDirection
+                && equals(encoding, other.encoding)
+                && equals(timeBaseString, other.timeBaseString)
+                && Arrays.equals(parameterWidths, other.parameterWidths);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public Burst.Preferences newBurstPreferences() {
+        return new Burst.Preferences(maxRoundingError, maxUnits, maxMicroSeconds);
+    }
+
+    public Analyzer.AnalyzerParams newAnalyzerParams(Double frequency) {
+        return new Analyzer.AnalyzerParams(frequency, timeBaseString, bitDirection,
+                extent, getParameterWidths(), maxParameterWidth, invert,
+                newBurstPreferences(), new ArrayList<>(0));
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public boolean isRepeatFinder() {
+        return repeatFinder;
+    }
+
+    /**
+     * @return the trailingGap, NaN if unset
+     */
+    public double getTrailingGap() {
+        return trailingGap;
+    }
+
+    /**
+     * @return the absoluteTolerance, NaN if unset
+     */
+    public double getAbsoluteTolerance() {
+        return absoluteTolerance;
+    }
+
+    /**
+     * @return the relativeTolerance, NaN if unset
+     */
+    public double getRelativeTolerance() {
+        return relativeTolerance;
+    }
+
+    /**
+     * @return the frequency, NaN if unset
+     */
+    public double getFrequency() {
+        return frequency;
+    }
+
+    public double getMaxRoundingError() {
+        return maxRoundingError;
+    }
+
+    public double getMaxUnits() {
+        return maxUnits;
+    }
+
+    public double getMaxMicroSeconds() {
+        return maxMicroSeconds;
+    }
+
+    public String getTimeBaseString() {
+        return timeBaseString;
+    }
+
+    public BitDirection getBitDirection() {
+        return bitDirection;
+    }
+
+    public boolean isExtent() {
+        return extent;
+    }
+
+    public int getMaxParameterWidth() {
+        return maxParameterWidth;
+    }
+
+    /**
+     * @return new, modifiable, list
+     */
+    public List<Integer> getParameterWidths() {
+        List<Integer> list = new ArrayList<>(parameterWidths.length);
+        for (int w : parameterWidths)
+            list.add(w);
+        return list;
+    }
+
+    public boolean isInvert() {
+        return invert;
+    }
+
+    public int getRadix() {
+        return radix;
+    }
+
+    public boolean isUsePeriods() {
+        return usePeriods;
+    }
+
+    public boolean isTsvOptimize() {
+        return tsvOptimize;
+    }
+
+    @Override
+    public String toString() {
+        return "PropertiesSnapshot{" + Long.toHexString(fingerprint) + "}";
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.harctoolbox.irp.BitDirection;
+
+/**
+ * Persistence of {@link Properties}.
+ * The file is a short UTF-8 text, one "key=value" per line, read in one go.
+ * Changes are saved after a quiet period (debounced), by writing a temporary file
+ * in the same directory and renaming it over the old one.
+ */
+public class PropertiesStore {
+
+    private final static Logger logger = Logger.getLogger(PropertiesStore.class.getName());
+
+    public static final long DEFAULT_DELAY = 500L; // milliseconds
+    private static final String NULL = "";
+
+    /**
+     * @return Default location of the properties file.
+     */
+    public static Path defaultFile() {
+        String appData = System.getenv("APPDATA");
+        return appData != null
+                ? new File(new File(appData, "IrpTransmogrifier-GUI"), "properties.txt").toPath()
+                : new File(System.getProperty("user.home"), ".irptransmogrifiergui.properties").toPath();
+    }
+
+    /**
+     * Loads the properties from the default file, if present, and saves them whenever they change.
+     * @param properties
+     * @return the store
+     */
+    public static PropertiesStore setup(Properties properties) {
+        PropertiesStore store = new PropertiesStore(properties, defaultFile(), DEFAULT_DELAY);
+        try {
+            store.load();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not read {0}: {1}", new Object[]{store.file, ex.getLocalizedMessage()});
+        }
+        properties.setChangeListener(store::scheduleSave);
+        Runtime.getRuntime().addShutdownHook(new Thread(store::flush, "PropertiesStore-shutdown"));
+        return store;
+    }
+
+    /**
+     * Loads the properties from the default file, if present, without saving changes; for the command line programs.
+     * @param properties
+     * @return snapshot of the properties after loading
+     */
+    public static PropertiesSnapshot loadDefault(Properties properties) {
+        PropertiesStore store = new PropertiesStore(properties, defaultFile(), DEFAULT_DELAY);
+        try {
+            store.load();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not read {0}: {1}", new Object[]{store.file, ex.getLocalizedMessage()});
+        }
+        return properties.snapshot();
+    }
+
+    private final Properties properties;
+    private final Path file;
+    private final long delay;
+    private ScheduledExecutorService executor = null; // started by the first scheduleSave
+    private ScheduledFuture<?> pending = null;
+
+    public PropertiesStore(Properties properties, Path file, long delay) {
+        this.properties = properties;
+        this.file = file;
+        this.delay = delay;
+    }
+
+    /**
+     * Reads the file, if existing, and sets the properties found. Unknown keys are ignored.
+     * @return true if the file was found
+     * @throws IOException
+     */
+    public boolean load() throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+        String content = new String(data, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            if (end < 0)
+                end = content.length();
+            int eq = content.indexOf('=', start);
+            if (eq > start && eq < end && content.charAt(start) != '#') {
+                String key = content.substring(start, eq);
+                String value = content.substring(eq + 1, end > eq + 1 && content.charAt(end - 1) == '\r' ? end - 1 : end);
+                try {
+                    set(key, value);
+                } catch (IllegalArgumentException ex) {
+                    logger.log(Level.WARNING, "Ignoring bad value of {0}: {1}", new Object[]{key, value});
+                }
+            }
+            start = end + 1;
+        }
+        return true;
+    }
+
+    private static Double parseDouble(String value) {
+        return value.equals(NULL) ? null : Double.parseDouble(value);
+    }
+
+    private static String parseString(String value) {
+        return value.equals(NULL) ? null : value;
+    }
+
+    private static List<Integer> parseList(String value) {
+        List<Integer> list = new ArrayList<>(4);
+        for (String s : value.split(","))
+            if (!s.isEmpty())
+                list.add(Integer.parseInt(s));
+        return list;
+    }
+
+    private void set(String key, String value) {
+        switch (key) {
+            case "encoding": properties.setEncoding(value); break;
+            case "repeatFinder": properties.setRepeatFinder(Boolean.parseBoolean(value)); break;
+            case "trailingGap": properties.setTrailingGap(parseDouble(value)); break;
+            case "absoluteTolerance": properties.setAbsoluteTolerance(parseDouble(value)); break;
+            case "relativeTolerance": properties.setRelativeTolerance(parseDouble(value)); break;
+            case "frequency": properties.setFrequency(parseDouble(value)); break;
+            case "sorterOnRawTable": properties.setSorterOnRawTable(Boolean.parseBoolean(value)); break;
+            case "compactStorage": properties.setCompactStorage(Boolean.parseBoolean(value)); break;
+            case "maxRoundingError": properties.setMaxRoundingError(parseDouble(value)); break;
+            case "maxUnits": properties.setMaxUnits(parseDouble(value)); break;
+            case "maxMicroSeconds": properties.setMaxMicroSeconds(parseDouble(value)); break;
+            case "timeBaseString": properties.setTimeBaseString(parseString(value)); break;
+            case "bitDirection": properties.setBitDirection(BitDirection.valueOf(value)); break;
+            case "extent": properties.setExtent(Boolean.parseBoolean(value)); break;
+            case "maxParameterWidth": properties.setMaxParameterWidth(Integer.parseInt(value)); break;
+            case "parameterWidths": properties.setParameterWidths(parseList(value)); break;
+            case "invert": properties.setInvert(Boolean.parseBoolean(value)); break;
+            case "radix": properties.setRadix(Integer.parseInt(value)); break;
+            case "usePeriods": properties.setUsePeriods(Boolean.parseBoolean(value)); break;
+            case "consoleMaxLines": properties.setConsoleMaxLines(Integer.parseInt(value)); break;
+            case "consoleBufferLines": properties.setConsoleBufferLines(Integer.parseInt(value)); break;
+            case "consoleFrameRate": properties.setConsoleFrameRate(Integer.parseInt(value)); break;
+            case "logQueueSize": properties.setLogQueueSize(Integer.parseInt(value)); break;
+            case "logOverflowPolicy": properties.setLogOverflowPolicy(AsyncLogHandler.OverflowPolicy.valueOf(value)); break;
+            case "logFile": properties.setLogFile(parseString(value)); break;
+            case "logFileLimit": properties.setLogFileLimit(Integer.parseInt(value)); break;
+            case "logFileCount": properties.setLogFileCount(Integer.parseInt(value)); break;
+            case "edtWatchdog": properties.setEdtWatchdog(Boolean.parseBoolean(value)); break;
+            case "edtWatchdogThreshold": properties.setEdtWatchdogThreshold(Integer.parseInt(value)); break;
+            default: break;
+        }
+    }
+
+    private static void append(StringBuilder str, String key, Object value) {
+        str.append(key).append('=').append(value != null ? value.toString() : NULL).append('\n');
+    }
+
+    private String serialize() {
+        StringBuilder str = new StringBuilder(1024);
+        synchronized (properties) {
+            append(str, "encoding", properties.getEncoding());
+            append(str, "repeatFinder", properties.isRepeatFinder());
+            append(str, "trailingGap", properties.getTrailingGap());
+            append(str, "absoluteTolerance", properties.getAbsoluteTolerance());
+            append(str, "relativeTolerance", properties.getRelativeTolerance());
+            append(str, "frequency", properties.getFrequency());
+            append(str, "sorterOnRawTable", properties.isSorterOnRawTable());
+            append(str, "compactStorage", properties.isCompactStorage());
+            append(str, "maxRoundingError", properties.getMaxRoundingError());
+            append(str, "maxUnits", properties.getMaxUnits());
+            append(str, "maxMicroSeconds", properties.getMaxMicroSeconds());
+            append(str, "timeBaseString", properties.getTimeBaseString());
+            append(str, "bitDirection", properties.getBitDirection());
+            append(str, "extent", properties.isExtent());
+            append(str, "maxParameterWidth", properties.getMaxParameterWidth());
+            StringBuilder widths = new StringBuilder(16);
+            properties.getParameterWidths().forEach((w) -> {
+                widths.append(widths.length() > 0 ? "," : "").append(w);
+            });
+            append(str, "parameterWidths", widths);
+            append(str, "invert", properties.isInvert());
+            append(str, "radix", properties.getRadix());
+            append(str, "usePeriods", properties.isUsePeriods());
+            append(str, "consoleMaxLines", properties.getConsoleMaxLines());
+            append(str, "consoleBufferLines", properties.getConsoleBufferLines());
+            append(str, "consoleFrameRate", properties.getConsoleFrameRate());
+            append(str, "logQueueSize", properties.getLogQueueSize());
+            append(str, "logOverflowPolicy", properties.getLogOverflowPolicy());
+            append(str, "logFile", properties.getLogFile());
+            append(str, "logFileLimit", properties.getLogFileLimit());
+            append(str, "logFileCount", properties.getLogFileCount());
+            append(str, "edtWatchdog", properties.isEdtWatchdog());
+            append(str, "edtWatchdogThreshold", properties.getEdtWatchdogThreshold());
+        }
+        return str.toString();
+    }
+
+    /**
+     * Writes the properties to a temporary file, then renames it to the real name.
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, serialize().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Saves after the delay, unless there is another change before that, in which case the delay starts over.
+     */
+    public synchronized void scheduleSave() {
+        if (pending != null)
+            pending.cancel(false);
+        if (executor == null)
+            executor = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+                Thread thread = new Thread(r, "PropertiesStore");
+                thread.setDaemon(true);
+                return thread;
+            });
+        pending = executor.schedule(this::saveQuietly, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Saves now if a save is pending.
+     */
+    public void flush() {
+        boolean unsaved;
+        synchronized (this) {
+            unsaved = pending != null && pending.cancel(false);
+            pending = null;
+        }
+        if (unsaved)
+            saveQuietly();
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not save properties to {0}: {1}", new Object[]{file, ex.getLocalizedMessage()});
+        }
+    }
+}
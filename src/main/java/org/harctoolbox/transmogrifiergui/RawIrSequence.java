@@ -17,6 +17,9 @@ this program. If not, see http://www.gnu.org/licenses/.
 
 package org.harctoolbox.transmogrifiergui;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.harctoolbox.ircore.IrSequence;
@@ -48,6 +51,9 @@ public class RawIrSequence extends NamedIrSignal {
 //    }
 
     private IrSequence irSequence;
+    private Supplier<IrSequence> loader = null;
+    private CompactSequence compact = null;
+    private boolean compactStorage = false;
     //private String analyzerString;
     //private DecodeIR.DecodedSignal[] decodes;
 
@@ -56,6 +62,17 @@ public class RawIrSequence extends NamedIrSignal {
         this.irSequence = irSequence;
     }
 
+    /**
+     * Creates a sequence that is not loaded until needed, for example from a session file.
+     * @param name
+     * @param loader called at most once, on first access of the sequence
+     */
+    public RawIrSequence(String name, Supplier<IrSequence> loader) {
+        super(name);
+        this.irSequence = null;
+        this.loader = loader;
+    }
+
 //    public RawIrSignal(Command command, boolean invokeAnalyzer) throws IrpMasterException {
 //        this(command.toIrSignal(), command.getName(), command.getComment(), invokeAnalyzer);
 //    }
@@ -72,8 +89,67 @@ public class RawIrSequence extends NamedIrSignal {
 //        return command;
 //    }
 
-    public IrSequence getIrSequence() {
-        return irSequence;
+    /**
+     * With compact storage, the sequence is decoded anew on every call.
+     * @return the sequence
+     */
+    public synchronized IrSequence getIrSequence() {
+        if (loader != null) {
+            IrSequence loaded = loader.get();
+            loader = null;
+            store(loaded);
+            return loaded;
+        }
+        return compact != null ? compact.toIrSequence() : irSequence;
+    }
+
+    /**
+     * @return the current sequence, as a reference decoding only when called;
+     * a sequence not yet loaded is loaded then too, without storing it, and the loading is shared with this row.
+     */
+    private synchronized Supplier<IrSequence> currentSequence() {
+        if (loader != null) {
+            loader = Memoized.of(loader);
+            return loader;
+        }
+        CompactSequence currentCompact = compact;
+        IrSequence current = irSequence;
+        return currentCompact != null ? currentCompact::toIrSequence : () -> current;
+    }
+
+    private void store(IrSequence sequence) {
+        if (compactStorage) {
+            compact = CompactSequence.encode(sequence);
+            irSequence = null;
+        } else {
+            compact = null;
+            irSequence = isShared() ? SignalStore.getInstance().intern(sequence) : sequence;
+        }
+    }
+
+    /**
+     * A sequence not yet loaded is compacted when loaded.
+     * @param compactStorage
+     */
+    @Override
+    public synchronized void setCompact(boolean compactStorage) {
+        if (compactStorage == this.compactStorage)
+            return;
+        if (loader != null) {
+            this.compactStorage = compactStorage;
+            return;
+        }
+        IrSequence sequence = getIrSequence();
+        if (isShared())
+            SignalStore.getInstance().release(irSequence);
+        this.compactStorage = compactStorage;
+        store(sequence);
+    }
+
+    @Override
+    protected synchronized void addCompactSequences(Collection<CompactSequence> sequences) {
+        if (compact != null)
+            sequences.add(compact);
     }
 
 //    public DecodeIR.DecodedSignal getDecode(int i) {
@@ -96,8 +172,29 @@ public class RawIrSequence extends NamedIrSignal {
 //        irSequence = new IrSignal(irSequence.getIntroSequence(), irSequence.getRepeatSequence(), irSequence.getEndingSequence(), newFrequency, irSequence.getDutyCycle());
 //    }
 
-    public void setSequence(String str) throws OddSequenceLengthException {
-        irSequence = new IrSequence(str, Properties.getInstance().getTrailingGap());
+    /**
+     * @param str durations, as text
+     * @param settings for the trailing gap
+     * @throws OddSequenceLengthException
+     */
+    public synchronized void setSequence(String str, PropertiesSnapshot settings) throws OddSequenceLengthException {
+        IrSequence sequence = new IrSequence(str, PropertiesSnapshot.orNull(settings.getTrailingGap()));
+        loader = null;
+        if (compactStorage)
+            store(sequence);
+        else
+            irSequence = replace(irSequence, sequence);
+    }
+
+    @Override
+    protected void internData(SignalStore store) {
+        if (irSequence != null)
+            irSequence = store.intern(irSequence);
+    }
+
+    @Override
+    protected void releaseData(SignalStore store) {
+        store.release(irSequence);
     }
 
 //    public void setRepeatSequence(String str) throws OddSequenceLengthException {
@@ -110,10 +207,14 @@ public class RawIrSequence extends NamedIrSignal {
 
     @Override
     public String csvString(String separator) { // FIXME
+        return csvString(getName(), getIrSequence(), separator);
+    }
+
+    private static String csvString(String name, IrSequence sequence, String separator) {
         //StringBuilder str = new StringBuilder(super.csvString(separator));
-        StringBuilder str = new StringBuilder(getName());
+        StringBuilder str = new StringBuilder(name);
         str./*append(irSequence.getFrequency()).*/append(separator);
-        str.append(irSequence.toString(true));
+        str.append(sequence.toString(true));
 //        str.append(irSequence.getRepeatSequence().toString(true)).append(separator);
 //        str.append(irSequence.getEndingSequence().toString(true)).append(separator);
         //str.append(DecodeIR.DecodedSignal.toPrintString(decodes, true));
@@ -127,6 +228,61 @@ public class RawIrSequence extends NamedIrSignal {
         return csvString("\t");
     }
 
+    @Override
+    public String compactString() {
+        return compactString(getName(), getIrSequence());
+    }
+
+    private static String compactString(String name, IrSequence sequence) {
+        StringBuilder str = new StringBuilder(name.length() + 6 * sequence.getLength());
+        str.append(name).append('\t');
+        appendCompact(str, sequence);
+        return str.toString();
+    }
+
+    /**
+     * Captures the name, and a reference to the sequence, or to its compact form; rendered only when asked.
+     * @return rendering of the current state
+     */
+    @Override
+    public Rendering capture() {
+        String name = getName();
+        Supplier<IrSequence> sequence = currentSequence();
+        return new Rendering() {
+            @Override
+            public String toPrintString() {
+                return csvString(name, sequence.get(), "\t");
+            }
+
+            @Override
+            public String compactString() {
+                return RawIrSequence.compactString(name, sequence.get());
+            }
+        };
+    }
+
+    /**
+     * A sequence not yet loaded counts as nothing.
+     * @return bytes
+     */
+    @Override
+    public synchronized long estimateMemory() {
+        return super.estimateMemory() + (compact != null ? compact.estimateMemory() : MemoryEstimate.irSequence(irSequence));
+    }
+
+    /**
+     * Appends the durations as unsigned integers (micro seconds) separated by single spaces.
+     * @param str
+     * @param irSequence
+     */
+    static void appendCompact(StringBuilder str, IrSequence irSequence) {
+        for (int i = 0; i < irSequence.getLength(); i++) {
+            if (i > 0)
+                str.append(' ');
+            str.append(Math.round(irSequence.get(i)));
+        }
+    }
+
     private static class CapturedIrSignalColumns extends NamedIrSignal.AbstractColumnFunction {
 
         private static final int[] widths = {
@@ -195,6 +351,11 @@ public class RawIrSequence extends NamedIrSignal {
             return super.uninterestingIfAllEqual(column) /* || column == posFrequency*/;
         }
 
+        @Override
+        public boolean isRendered(int column) {
+            return column == POS_SEQUENCE;
+        }
+
         @Override
         public Object[] toObjectArray(NamedIrSignal signal) {
             if (!RawIrSequence.class.isInstance(signal))
@@ -202,6 +363,13 @@ public class RawIrSequence extends NamedIrSignal {
             return toObjectArray((RawIrSequence) signal);
         }
 
+        @Override
+        public Object render(NamedIrSignal signal, int column) {
+            if (column != POS_SEQUENCE)
+                return super.render(signal, column);
+            return ((RawIrSequence) signal).getIrSequence().toString(true, " ", "", "");
+        }
+
         public Object[] toObjectArray(RawIrSequence cir) {
             IrSequence irSequence = cir.getIrSequence();
             Object[] result = new Object[]{
@@ -240,9 +408,9 @@ public class RawIrSequence extends NamedIrSignal {
 //        }
 
         @Override
-        public String normalize(String text, int c) throws OddSequenceLengthException {
+        public String normalize(String text, int c, PropertiesSnapshot settings) throws OddSequenceLengthException {
             return c == CapturedIrSignalColumns.POS_SEQUENCE
-                    ? IrSequence.normalize(text, Properties.getInstance().getTrailingGap(), true, " ")
+                    ? IrSequence.normalize(text, PropertiesSnapshot.orNull(settings.getTrailingGap()), true, " ")
                     : text;
         }
 
@@ -253,7 +421,7 @@ public class RawIrSequence extends NamedIrSignal {
                 RawIrSequence rawIrSequence = getCapturedIrSequence(row);
                 switch (column) {
                     case CapturedIrSignalColumns.POS_SEQUENCE:
-                        rawIrSequence.setSequence((String) getValueAt(row, column));
+                        rawIrSequence.setSequence((String) getValueAt(row, column), Properties.getInstance().snapshot());
                         break;
 //                    case CapturedIrSignalColumns.posRepetition:
 //                        rawIrSignal.setRepeatSequence((String) getValueAt(row, column));
@@ -295,9 +463,30 @@ public class RawIrSequence extends NamedIrSignal {
         }
 
         synchronized void addSequence(RawIrSequence sequence) {
-            addRow(columnsFunc.toObjectArray(sequence));
+            long start = Metrics.start();
+            addRow(admit(sequence));
+            scrollRequest = true;
+            unsavedChanges = true;
+            Metrics.record(Metrics.Stage.modelInsertion, start);
+        }
+
+        /**
+         * Appends the sequences, with one event for all of them.
+         * @param sequences
+         */
+        @SuppressWarnings("unchecked")
+        synchronized void addSequences(List<RawIrSequence> sequences) {
+            if (sequences.isEmpty())
+                return;
+            long start = Metrics.start();
+            int first = getRowCount();
+            sequences.forEach((sequence) -> {
+                dataVector.add(convertToVector(admit(sequence)));
+            });
+            fireTableRowsInserted(first, getRowCount() - 1);
             scrollRequest = true;
             unsavedChanges = true;
+            Metrics.record(Metrics.Stage.modelInsertion, start, sequences.size());
         }
 
         String getName(int modelRow) {
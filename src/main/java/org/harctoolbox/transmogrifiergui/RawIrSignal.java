@@ -17,6 +17,8 @@ this program. If not, see http://www.gnu.org/licenses/.
 
 package org.harctoolbox.transmogrifiergui;
 
+import java.util.Collection;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.harctoolbox.ircore.IrSequence;
@@ -49,6 +51,9 @@ public class RawIrSignal extends NamedIrSignal {
 //    }
 
     private IrSignal irSignal;
+    private Supplier<IrSignal> loader = null;
+    private CompactSequence.Signal compact = null;
+    private boolean compactStorage = false;
     //private String analyzerString;
     //private DecodeIR.DecodedSignal[] decodes;
 
@@ -57,6 +62,17 @@ public class RawIrSignal extends NamedIrSignal {
         this.irSignal = irSignal;
     }
 
+    /**
+     * Creates a signal that is not loaded until needed, for example from a session file.
+     * @param name
+     * @param loader called at most once, on first access of the signal
+     */
+    public RawIrSignal(String name, Supplier<IrSignal> loader) {
+        super(name);
+        this.irSignal = null;
+        this.loader = loader;
+    }
+
 //    public RawIrSignal(Command command, boolean invokeAnalyzer) throws IrpMasterException {
 //        this(command.toIrSignal(), command.getName(), command.getComment(), invokeAnalyzer);
 //    }
@@ -73,8 +89,69 @@ public class RawIrSignal extends NamedIrSignal {
 //        return command;
 //    }
 
-    public IrSignal getIrSignal() {
-        return irSignal;
+    /**
+     * With compact storage, the signal is decoded anew on every call.
+     * @return the signal
+     */
+    public synchronized IrSignal getIrSignal() {
+        if (loader != null) {
+            IrSignal loaded = loader.get();
+            loader = null;
+            store(loaded);
+            return loaded;
+        }
+        return compact != null ? compact.toIrSignal() : irSignal;
+    }
+
+    /**
+     * @return the current signal, as a reference decoding only when called;
+     * a signal not yet loaded is loaded then too, without storing it, and the loading is shared with this row.
+     */
+    private synchronized Supplier<IrSignal> currentSignal() {
+        if (loader != null) {
+            loader = Memoized.of(loader);
+            return loader;
+        }
+        CompactSequence.Signal currentCompact = compact;
+        IrSignal current = irSignal;
+        return currentCompact != null ? currentCompact::toIrSignal : () -> current;
+    }
+
+    private void store(IrSignal signal) {
+        if (compactStorage) {
+            compact = CompactSequence.Signal.encode(signal);
+            irSignal = null;
+        } else {
+            compact = null;
+            irSignal = signal;
+            if (isShared())
+                internData(SignalStore.getInstance());
+        }
+    }
+
+    /**
+     * A signal not yet loaded is compacted when loaded.
+     * @param compactStorage
+     */
+    @Override
+    public synchronized void setCompact(boolean compactStorage) {
+        if (compactStorage == this.compactStorage)
+            return;
+        if (loader != null) {
+            this.compactStorage = compactStorage;
+            return;
+        }
+        IrSignal signal = getIrSignal();
+        if (isShared())
+            releaseData(SignalStore.getInstance());
+        this.compactStorage = compactStorage;
+        store(signal);
+    }
+
+    @Override
+    protected synchronized void addCompactSequences(Collection<CompactSequence> sequences) {
+        if (compact != null)
+            compact.addSequences(sequences);
     }
 
 //    public DecodeIR.DecodedSignal getDecode(int i) {
@@ -93,29 +170,66 @@ public class RawIrSignal extends NamedIrSignal {
 //        return analyzerString;
 //    }
 
-    public void setFrequency(double newFrequency) {
-        irSignal = new IrSignal(irSignal.getIntroSequence(), irSignal.getRepeatSequence(), irSignal.getEndingSequence(), newFrequency, irSignal.getDutyCycle());
+    public synchronized void setFrequency(double newFrequency) {
+        IrSignal old = getIrSignal();
+        update(new IrSignal(old.getIntroSequence(), old.getRepeatSequence(), old.getEndingSequence(), newFrequency, old.getDutyCycle()));
+    }
+
+    public synchronized void setIntroSequence(String str) throws OddSequenceLengthException {
+        IrSignal old = getIrSignal();
+        update(new IrSignal(replaceSequence(old.getIntroSequence(), new IrSequence(str)), old.getRepeatSequence(), old.getEndingSequence(), old.getFrequency(), old.getDutyCycle()));
+    }
+
+    public synchronized void setRepeatSequence(String str) throws OddSequenceLengthException {
+        IrSignal old = getIrSignal();
+        update(new IrSignal(old.getIntroSequence(), replaceSequence(old.getRepeatSequence(), new IrSequence(str)), old.getEndingSequence(), old.getFrequency(), old.getDutyCycle()));
     }
 
-    public void setIntroSequence(String str) throws OddSequenceLengthException {
-        irSignal = new IrSignal(new IrSequence(str), irSignal.getRepeatSequence(), irSignal.getEndingSequence(), irSignal.getFrequency(), irSignal.getDutyCycle());
+    public synchronized void setEndingSequence(String str) throws OddSequenceLengthException {
+        IrSignal old = getIrSignal();
+        update(new IrSignal(old.getIntroSequence(), old.getRepeatSequence(), replaceSequence(old.getEndingSequence(), new IrSequence(str)), old.getFrequency(), old.getDutyCycle()));
     }
 
-    public void setRepeatSequence(String str) throws OddSequenceLengthException {
-        irSignal = new IrSignal(irSignal.getIntroSequence(), new IrSequence(str), irSignal.getEndingSequence(), irSignal.getFrequency(), irSignal.getDutyCycle());
+    // Compact signals are not in the SignalStore.
+    private IrSequence replaceSequence(IrSequence old, IrSequence sequence) {
+        return compactStorage ? sequence : replace(old, sequence);
     }
 
-    public void setEndingSequence(String str) throws OddSequenceLengthException {
-        irSignal = new IrSignal(irSignal.getIntroSequence(), irSignal.getRepeatSequence(), new IrSequence(str), irSignal.getFrequency(), irSignal.getDutyCycle());
+    private void update(IrSignal signal) {
+        if (compactStorage)
+            compact = CompactSequence.Signal.encode(signal);
+        else
+            irSignal = signal;
+    }
+
+    @Override
+    protected void internData(SignalStore store) {
+        if (irSignal == null)
+            return;
+        irSignal = new IrSignal(store.intern(irSignal.getIntroSequence()), store.intern(irSignal.getRepeatSequence()),
+                store.intern(irSignal.getEndingSequence()), irSignal.getFrequency(), irSignal.getDutyCycle());
+    }
+
+    @Override
+    protected void releaseData(SignalStore store) {
+        if (irSignal == null)
+            return;
+        store.release(irSignal.getIntroSequence());
+        store.release(irSignal.getRepeatSequence());
+        store.release(irSignal.getEndingSequence());
     }
 
     @Override
     public String csvString(String separator) {
-        StringBuilder str = new StringBuilder(super.csvString(separator));
-        str.append(irSignal.getFrequency()).append(separator);
-        str.append(irSignal.getIntroSequence().toString(true)).append(separator); // FIXME
-        str.append(irSignal.getRepeatSequence().toString(true)).append(separator);
-        str.append(irSignal.getEndingSequence().toString(true)).append(separator);
+        return csvString(super.csvString(separator), getIrSignal(), separator);
+    }
+
+    private static String csvString(String head, IrSignal signal, String separator) {
+        StringBuilder str = new StringBuilder(head);
+        str.append(signal.getFrequency()).append(separator);
+        str.append(signal.getIntroSequence().toString(true)).append(separator); // FIXME
+        str.append(signal.getRepeatSequence().toString(true)).append(separator);
+        str.append(signal.getEndingSequence().toString(true)).append(separator);
         //str.append(DecodeIR.DecodedSignal.toPrintString(decodes, true));
         str.append(separator);
         //str.append(analyzerString).append(separator);
@@ -127,6 +241,57 @@ public class RawIrSignal extends NamedIrSignal {
         return csvString(", ");
     }
 
+    @Override
+    public String compactString() {
+        return compactString(getName(), getIrSignal());
+    }
+
+    private static String compactString(String name, IrSignal signal) {
+        StringBuilder str = new StringBuilder(128);
+        str.append(name).append('\t');
+        if (signal.getFrequency() != null)
+            str.append(Math.round(signal.getFrequency()));
+        str.append('\t');
+        RawIrSequence.appendCompact(str, signal.getIntroSequence());
+        str.append('\t');
+        RawIrSequence.appendCompact(str, signal.getRepeatSequence());
+        str.append('\t');
+        RawIrSequence.appendCompact(str, signal.getEndingSequence());
+        return str.toString();
+    }
+
+    /**
+     * Captures the name, number and flag, and a reference to the signal, or to its compact form; rendered only when asked.
+     * @return rendering of the current state
+     */
+    @Override
+    public Rendering capture() {
+        String name = getName();
+        String head = super.csvString(", ");
+        Supplier<IrSignal> signal = currentSignal();
+        return new Rendering() {
+            @Override
+            public String toPrintString() {
+                return csvString(head, signal.get(), ", ");
+            }
+
+            @Override
+            public String compactString() {
+                return RawIrSignal.compactString(name, signal.get());
+            }
+        };
+    }
+
+    @Override
+    public synchronized long estimateMemory() {
+        if (compact != null)
+            return super.estimateMemory() + compact.estimateMemory();
+        if (irSignal == null)
+            return super.estimateMemory();
+        return super.estimateMemory() + MemoryEstimate.irSequence(irSignal.getIntroSequence())
+                + MemoryEstimate.irSequence(irSignal.getRepeatSequence()) + MemoryEstimate.irSequence(irSignal.getEndingSequence());
+    }
+
     private static class CapturedIrSignalColumns extends NamedIrSignal.AbstractColumnFunction {
 
         private static final int[] widths = {
@@ -195,6 +360,11 @@ public class RawIrSignal extends NamedIrSignal {
             return super.uninterestingIfAllEqual(column) /* || column == posFrequency*/;
         }
 
+        @Override
+        public boolean isRendered(int column) {
+            return column == POS_INTRO || column == POS_REPETITION || column == POS_ENDING;
+        }
+
         @Override
         public Object[] toObjectArray(NamedIrSignal signal) {
             if (!RawIrSignal.class.isInstance(signal))
@@ -202,6 +372,16 @@ public class RawIrSignal extends NamedIrSignal {
             return toObjectArray((RawIrSignal) signal);
         }
 
+        @Override
+        public Object render(NamedIrSignal signal, int column) {
+            IrSignal irSignal = ((RawIrSignal) signal).getIrSignal();
+            IrSequence sequence = column == POS_INTRO ? irSignal.getIntroSequence()
+                    : column == POS_REPETITION ? irSignal.getRepeatSequence()
+                    : column == POS_ENDING ? irSignal.getEndingSequence()
+                    : null;
+            return sequence != null ? sequence.toString(true, " ", "", "") : super.render(signal, column);
+        }
+
         public Object[] toObjectArray(RawIrSignal cir) {
             IrSignal irSignal = cir.getIrSignal();
             Object[] result = new Object[]{
@@ -286,7 +466,7 @@ public class RawIrSignal extends NamedIrSignal {
         }
 
         @Override
-        public String normalize(String text, int c) {
+        public String normalize(String text, int c, PropertiesSnapshot settings) {
             throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
         }
     }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.util.Collection;
+
+/**
+ * Bounded buffer between a producer that must not block, and a slower consumer.
+ * When full, the oldest element is dropped, and counted.
+ * @param <T> element type
+ */
+public final class RingBuffer<T> {
+
+    private final Object[] elements;
+    private int head = 0; // oldest element
+    private int size = 0;
+    private long offered = 0L;
+    private long dropped = 0L;
+
+    public RingBuffer(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+        elements = new Object[capacity];
+    }
+
+    /**
+     * Adds the element, dropping the oldest one if full.
+     * @param element
+     * @return false if an element was dropped.
+     */
+    public synchronized boolean offer(T element) {
+        offered++;
+        boolean full = size == elements.length;
+        if (full) {
+            elements[head] = element;
+            head = (head + 1) % elements.length;
+            dropped++;
+        } else {
+            elements[(head + size) % elements.length] = element;
+            size++;
+        }
+        return !full;
+    }
+
+    /**
+     * Moves at most max elements, oldest first, to the collection.
+     * @param collection
+     * @param max
+     * @return number of elements moved.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int drainTo(Collection<? super T> collection, int max) {
+        int n = Math.min(max, size);
+        for (int i = 0; i < n; i++) {
+            collection.add((T) elements[head]);
+            elements[head] = null;
+            head = (head + 1) % elements.length;
+        }
+        size -= n;
+        return n;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * @return number of elements ever offered.
+     */
+    public synchronized long getOffered() {
+        return offered;
+    }
+
+    /**
+     * @return number of elements dropped because the buffer was full.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.harctoolbox.girr.Command;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrCoreException;
+import org.harctoolbox.ircore.IrCoreUtils;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.ircore.ModulatedIrSequence;
+import org.harctoolbox.ircore.MultiParser;
+import org.harctoolbox.ircore.ThingsLineParser;
+import org.harctoolbox.irp.IrpException;
+import org.harctoolbox.irscrutinizer.importer.IctImporter;
+
+/**
+ * Reading of files containing named raw sequences, first tried as ICT, then as text, one named sequence per line.
+ * Does not depend on Swing/AWT, so it can be used headless.
+ */
+public class SequenceImporter {
+
+    private final static Logger logger = Logger.getLogger(SequenceImporter.class.getName());
+
+    public enum Format {
+        ict,
+        text
+    }
+
+    /**
+     * Result of an import: named sequences in file order, and the average modulation frequency, if known.
+     */
+    public static class Imported {
+
+        private final Map<String, IrSequence> sequences;
+        private final Double frequency;
+        private final Format format;
+
+        Imported(Map<String, IrSequence> sequences, Double frequency, Format format) {
+            this.sequences = Collections.unmodifiableMap(sequences);
+            this.frequency = frequency;
+            this.format = format;
+        }
+
+        /**
+         * @return the sequences
+         */
+        public Map<String, IrSequence> getSequences() {
+            return sequences;
+        }
+
+        /**
+         * @return the average frequency, or null if not known
+         */
+        public Double getFrequency() {
+            return frequency;
+        }
+
+        /**
+         * @return the frequency, or the default frequency if not known.
+         */
+        public double getFrequencyWithDefault() {
+            return frequency != null ? frequency : ModulatedIrSequence.DEFAULT_FREQUENCY;
+        }
+
+        /**
+         * @return the format
+         */
+        public Format getFormat() {
+            return format;
+        }
+    }
+
+    public static Imported importFile(File importFile, PropertiesSnapshot settings) throws IOException, InvalidArgumentException {
+        Object event = FlightRecorderEvents.beginImport();
+        long start = Metrics.start();
+        Imported imported = parse(importFile, settings);
+        Metrics.record(Metrics.Stage.importFile, start, imported.getSequences().size());
+        FlightRecorderEvents.commitImport(event, importFile, imported.getFormat(), imported.getSequences().size());
+        return imported;
+    }
+
+    private static Imported parse(File importFile, PropertiesSnapshot settings) throws IOException, InvalidArgumentException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(importFile), IrCoreUtils.UTF8))) {
+            Collection<Command> cmds = IctImporter.importer(reader, importFile.getCanonicalPath());
+            if (cmds.isEmpty())
+                throw new InvalidArgumentException("No parseable sequences found.");
+            return fromCommands(cmds);
+        } catch (IrpException | IrCoreException ex) {
+            logger.log(Level.INFO, "Parsing of {0} as ict failed", importFile);
+            ThingsLineParser<IrSequence> irSignalParser = new ThingsLineParser<>(
+                    (List<String> line) -> {
+                        return (MultiParser.newIrCoreParser(line)).toModulatedIrSequence(ModulatedIrSequence.DEFAULT_FREQUENCY, null); // FIXME
+                    }, "#"
+            );
+            Map<String, IrSequence> sequences = irSignalParser.readNamedThings(importFile.getCanonicalPath(), settings.getEncoding());
+            if (sequences.isEmpty())
+                throw new InvalidArgumentException("No parseable sequences found.");
+            return new Imported(sequences, null, Format.text);
+        }
+    }
+
+    private static Imported fromCommands(Collection<Command> cmds) throws IrpException, IrCoreException {
+        Map<String, IrSequence> sequences = new LinkedHashMap<>(cmds.size());
+        Double sum = 0.0;
+        for (Command cmd : cmds) {
+            ModulatedIrSequence modSeq = cmd.toIrSignal().toModulatedIrSequence();
+            Double freq = modSeq.getFrequency();
+            if (sum != null)
+                sum = freq != null ? sum + freq : null;
+            sequences.put(cmd.getName(), new IrSequence(modSeq));
+        }
+        Double average = sum == null ? null : sum / cmds.size();
+        return new Imported(sequences, average, Format.ict);
+    }
+
+    private SequenceImporter() {
+    }
+}
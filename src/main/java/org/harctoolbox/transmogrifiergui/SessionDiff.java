@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.stream.IntStream;
+import org.harctoolbox.ircore.IrSequence;
+
+/**
+ * Comparison of two sets of named sequences, typically two captures of the same remote.
+ * Sequences are matched by name, equal names in order; the rest are matched by timing, using hashed signatures
+ * to find the candidates, which then have to agree within the tolerances, duration by duration.
+ * For every pair, the differences of the durations are computed, in parallel.
+ * The final gap is not compared, since it depends on when the capture ended.
+ * Does not depend on Swing/AWT.
+ */
+public class SessionDiff {
+
+    // Same defaults as IrpTransmogrifier
+    public static final double DEFAULT_ABSOLUTE_TOLERANCE = 100.0;
+    public static final double DEFAULT_RELATIVE_TOLERANCE = 0.3;
+
+    /**
+     * Maximal number of candidates tried in the coarse signature group, when the fine signature does not find a match.
+     */
+    private static final int MAX_COARSE_CANDIDATES = 64;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    public enum Status {
+        /** Same name, all durations within the tolerances. */
+        unchanged,
+        /** Same name, different length, or some duration outside the tolerances. */
+        changed,
+        /** Different names, all durations within the tolerances. */
+        renamed,
+        /** Only in the second set. */
+        added,
+        /** Only in the first set. */
+        removed
+    }
+
+    /**
+     * One row of the result.
+     */
+    public static class Entry {
+
+        private final Status status;
+        private final String name;
+        private final String otherName;
+        private final int length;
+        private final int otherLength;
+        private final double maxDelta;
+        private final double meanDelta;
+        private final int worstIndex;
+
+        Entry(Status status, String name, String otherName, int length, int otherLength, double maxDelta, double meanDelta, int worstIndex) {
+            this.status = status;
+            this.name = name;
+            this.otherName = otherName;
+            this.length = length;
+            this.otherLength = otherLength;
+            this.maxDelta = maxDelta;
+            this.meanDelta = meanDelta;
+            this.worstIndex = worstIndex;
+        }
+
+        /**
+         * @return the status
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the name in the first set, or null if added
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the name in the second set, or null if removed
+         */
+        public String getOtherName() {
+            return otherName;
+        }
+
+        /**
+         * @return the length in the first set, 0 if added
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return the length in the second set, 0 if removed
+         */
+        public int getOtherLength() {
+            return otherLength;
+        }
+
+        /**
+         * @return the largest absolute difference of durations, in micro seconds, NaN if not comparable
+         */
+        public double getMaxDelta() {
+            return maxDelta;
+        }
+
+        /**
+         * @return the mean of the signed differences (second minus first), in micro seconds, NaN if not comparable
+         */
+        public double getMeanDelta() {
+            return meanDelta;
+        }
+
+        /**
+         * @return index of the duration with the largest difference, -1 if not comparable
+         */
+        public int getWorstIndex() {
+            return worstIndex;
+        }
+    }
+
+    public static SessionDiff compare(Map<String, IrSequence> first, Map<String, IrSequence> second, PropertiesSnapshot properties) {
+        return compare(new ArrayList<>(first.entrySet()), new ArrayList<>(second.entrySet()), properties);
+    }
+
+    /**
+     * @param first named sequences, names need not be unique
+     * @param second named sequences, names need not be unique
+     * @param properties for the tolerances
+     * @return the comparison
+     */
+    public static SessionDiff compare(List<Map.Entry<String, IrSequence>> first, List<Map.Entry<String, IrSequence>> second, PropertiesSnapshot properties) {
+        double absoluteTolerance = properties.getAbsoluteTolerance();
+        double relativeTolerance = properties.getRelativeTolerance();
+        return new SessionDiff(first, second,
+                Double.isNaN(absoluteTolerance) ? DEFAULT_ABSOLUTE_TOLERANCE : absoluteTolerance,
+                Double.isNaN(relativeTolerance) ? DEFAULT_RELATIVE_TOLERANCE : relativeTolerance);
+    }
+
+    private static int compared(IrSequence sequence) {
+        return Math.max(0, sequence.getLength() - 1);
+    }
+
+    /**
+     * Every duration is replaced by the number of its cluster among the flashes or gaps respectively,
+     * where a new cluster starts at every step in the sorted durations larger than the tolerances.
+     * Captures of the same signal normally get the same clusters, even with some jitter.
+     */
+    private long fineSignature(IrSequence sequence) {
+        int n = compared(sequence);
+        double[] flashes = new double[(n + 1) / 2];
+        double[] gaps = new double[n / 2];
+        for (int i = 0; i < n; i++)
+            (i % 2 == 0 ? flashes : gaps)[i / 2] = sequence.get(i);
+        int[] flashClusters = clusters(flashes);
+        int[] gapClusters = clusters(gaps);
+        long h = FNV_OFFSET ^ n;
+        for (int i = 0; i < n; i++) {
+            double[] sorted = i % 2 == 0 ? flashes : gaps;
+            int[] clusters = i % 2 == 0 ? flashClusters : gapClusters;
+            h ^= clusters[Arrays.binarySearch(sorted, sequence.get(i))];
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Sorts the argument, and returns the cluster number of every element.
+     */
+    private int[] clusters(double[] durations) {
+        Arrays.sort(durations);
+        int[] result = new int[durations.length];
+        for (int k = 1; k < durations.length; k++)
+            result[k] = result[k - 1] + (withinTolerance(durations[k - 1], durations[k]) ? 0 : 1);
+        return result;
+    }
+
+    /**
+     * Length and total duration, the latter in steps of the relative tolerance.
+     */
+    private static long coarseSignature(IrSequence sequence, double relativeTolerance) {
+        int n = compared(sequence);
+        double total = 0.0;
+        for (int i = 0; i < n; i++)
+            total += sequence.get(i);
+        long bucket = total > 0.0 ? Math.round(Math.log(total) / Math.log1p(Math.max(relativeTolerance, 0.01))) : 0L;
+        return ((long) n << 32) + bucket;
+    }
+
+    private final double absoluteTolerance;
+    private final double relativeTolerance;
+    private final List<String> firstNames;
+    private final List<IrSequence> firstSequences;
+    private final List<String> secondNames;
+    private final List<IrSequence> secondSequences;
+    private final List<Entry> entries;
+    private final int[] counts = new int[Status.values().length];
+    private final long nanos;
+
+    public SessionDiff(List<Map.Entry<String, IrSequence>> first, List<Map.Entry<String, IrSequence>> second, double absoluteTolerance, double relativeTolerance) {
+        long start = Metrics.start();
+        this.absoluteTolerance = absoluteTolerance;
+        this.relativeTolerance = relativeTolerance;
+        firstNames = new ArrayList<>(first.size());
+        firstSequences = new ArrayList<>(first.size());
+        first.forEach((entry) -> {
+            firstNames.add(entry.getKey());
+            firstSequences.add(entry.getValue());
+        });
+        secondNames = new ArrayList<>(second.size());
+        secondSequences = new ArrayList<>(second.size());
+        second.forEach((entry) -> {
+            secondNames.add(entry.getKey());
+            secondSequences.add(entry.getValue());
+        });
+
+        int[] match = new int[firstNames.size()];
+        boolean[] used = new boolean[secondNames.size()];
+        boolean[] renamed = new boolean[firstNames.size()];
+        matchByName(match, used);
+        matchByTiming(match, used, renamed);
+        entries = Collections.unmodifiableList(createEntries(match, used, renamed));
+        entries.forEach((entry) -> {
+            counts[entry.getStatus().ordinal()]++;
+        });
+        nanos = Metrics.record(Metrics.Stage.diff, start, firstNames.size() + secondNames.size());
+    }
+
+    /**
+     * Rows with the same name are paired in order: the first with the first, and so on.
+     */
+    private void matchByName(int[] match, boolean[] used) {
+        Map<String, Queue<Integer>> secondIndex = new HashMap<>(2 * secondNames.size());
+        for (int j = 0; j < secondNames.size(); j++)
+            secondIndex.computeIfAbsent(secondNames.get(j), (k) -> new ArrayDeque<>(1)).add(j);
+        for (int i = 0; i < firstNames.size(); i++) {
+            Queue<Integer> candidates = secondIndex.get(firstNames.get(i));
+            Integer j = candidates != null ? candidates.poll() : null;
+            match[i] = j != null ? j : -1;
+            if (j != null)
+                used[j] = true;
+        }
+    }
+
+    private void matchByTiming(int[] match, boolean[] used, boolean[] renamed) {
+        Map<Long, List<Integer>> fine = new HashMap<>(64);
+        Map<Long, List<Integer>> coarse = new HashMap<>(64);
+        for (int j = 0; j < secondSequences.size(); j++) {
+            if (used[j])
+                continue;
+            IrSequence sequence = secondSequences.get(j);
+            fine.computeIfAbsent(fineSignature(sequence), (k) -> new ArrayList<>(1)).add(j);
+            coarse.computeIfAbsent(coarseSignature(sequence, relativeTolerance), (k) -> new ArrayList<>(1)).add(j);
+        }
+        if (fine.isEmpty())
+            return;
+
+        // The candidate search only reads, so it can run in parallel; the assignment must be sequential.
+        boolean[] taken = Arrays.copyOf(used, used.length);
+        int[] candidates = IntStream.range(0, match.length).parallel().map((i) -> {
+            return match[i] >= 0 ? -1 : bestCandidate(firstSequences.get(i), fine, coarse, used);
+        }).toArray();
+        for (int i = 0; i < match.length; i++) {
+            if (match[i] >= 0)
+                continue;
+            int j = candidates[i];
+            if (j >= 0 && taken[j])
+                j = bestCandidate(firstSequences.get(i), fine, coarse, taken);
+            if (j >= 0) {
+                match[i] = j;
+                taken[j] = true;
+                renamed[i] = true;
+            }
+        }
+        System.arraycopy(taken, 0, used, 0, used.length);
+    }
+
+    private int bestCandidate(IrSequence sequence, Map<Long, List<Integer>> fine, Map<Long, List<Integer>> coarse, boolean[] used) {
+        int best = bestCandidate(sequence, fine.get(fineSignature(sequence)), used, Integer.MAX_VALUE);
+        if (best >= 0)
+            return best;
+        long signature = coarseSignature(sequence, relativeTolerance);
+        for (long neighbour = signature - 1; neighbour <= signature + 1; neighbour++) {
+            best = bestCandidate(sequence, coarse.get(neighbour), used, MAX_COARSE_CANDIDATES);
+            if (best >= 0)
+                return best;
+        }
+        return -1;
+    }
+
+    private int bestCandidate(IrSequence sequence, List<Integer> group, boolean[] used, int maxCandidates) {
+        if (group == null)
+            return -1;
+        int best = -1;
+        double bestScore = Double.MAX_VALUE;
+        int tried = 0;
+        for (int j : group) {
+            if (used[j])
+                continue;
+            if (++tried > maxCandidates)
+                break;
+            double score = score(sequence, secondSequences.get(j));
+            if (score < bestScore) {
+                bestScore = score;
+                best = j;
+            }
+        }
+        return best;
+    }
+
+    private boolean withinTolerance(double x, double y) {
+        double delta = Math.abs(x - y);
+        return delta <= absoluteTolerance || delta <= relativeTolerance * Math.max(x, y);
+    }
+
+    /**
+     * @return sum of the absolute differences, or MAX_VALUE if some duration is not within the tolerances.
+     */
+    private double score(IrSequence a, IrSequence b) {
+        if (a.getLength() != b.getLength())
+            return Double.MAX_VALUE;
+        double sum = 0.0;
+        for (int i = 0; i < compared(a); i++) {
+            double x = a.get(i);
+            double y = b.get(i);
+            if (!withinTolerance(x, y))
+                return Double.MAX_VALUE;
+            sum += Math.abs(x - y);
+        }
+        return sum;
+    }
+
+    private List<Entry> createEntries(int[] match, boolean[] used, boolean[] renamed) {
+        Entry[] paired = new Entry[match.length];
+        IntStream.range(0, match.length).parallel().forEach((i) -> {
+            paired[i] = match[i] < 0
+                    ? new Entry(Status.removed, firstNames.get(i), null, firstSequences.get(i).getLength(), 0, Double.NaN, Double.NaN, -1)
+                    : pair(i, match[i], renamed[i]);
+        });
+        List<Entry> result = new ArrayList<>(match.length + used.length);
+        result.addAll(Arrays.asList(paired));
+        for (int j = 0; j < used.length; j++)
+            if (!used[j])
+                result.add(new Entry(Status.added, null, secondNames.get(j), 0, secondSequences.get(j).getLength(), Double.NaN, Double.NaN, -1));
+        return result;
+    }
+
+    private Entry pair(int i, int j, boolean renamed) {
+        IrSequence a = firstSequences.get(i);
+        IrSequence b = secondSequences.get(j);
+        String name = firstNames.get(i);
+        String otherName = secondNames.get(j);
+        if (a.getLength() != b.getLength())
+            return new Entry(Status.changed, name, otherName, a.getLength(), b.getLength(), Double.NaN, Double.NaN, -1);
+
+        int n = compared(a);
+        boolean within = true;
+        double maxDelta = 0.0;
+        double sum = 0.0;
+        int worst = n > 0 ? 0 : -1;
+        for (int k = 0; k < n; k++) {
+            double x = a.get(k);
+            double y = b.get(k);
+            double delta = y - x;
+            sum += delta;
+            if (Math.abs(delta) > maxDelta) {
+                maxDelta = Math.abs(delta);
+                worst = k;
+            }
+            within = within && withinTolerance(x, y);
+        }
+        Status status = renamed ? Status.renamed : within ? Status.unchanged : Status.changed;
+        return new Entry(status, name, otherName, a.getLength(), b.getLength(), maxDelta, n > 0 ? sum / n : 0.0, worst);
+    }
+
+    /**
+     * @return the entries: the sequences of the first set in order, then the sequences only in the second set.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param status
+     * @return number of entries with the status
+     */
+    public int count(Status status) {
+        return counts[status.ordinal()];
+    }
+
+    /**
+     * @return time used for the comparison, in nanoseconds.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    public double getAbsoluteTolerance() {
+        return absoluteTolerance;
+    }
+
+    public double getRelativeTolerance() {
+        return relativeTolerance;
+    }
+
+    /**
+     * @return one line summary, with the number of entries per status.
+     */
+    public String summary() {
+        StringBuilder str = new StringBuilder(80);
+        for (Status status : Status.values()) {
+            if (str.length() > 0)
+                str.append(", ");
+            str.append(count(status)).append(' ').append(status);
+        }
+        return str.toString();
+    }
+}
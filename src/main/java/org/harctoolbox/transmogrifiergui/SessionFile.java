@@ -0,0 +1,501 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.JInternalFrame;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.ircore.IrSignal;
+import org.harctoolbox.ircore.OddSequenceLengthException;
+import org.harctoolbox.ircore.ThisCannotHappenException;
+
+/**
+ * Saving and restoring of the tables and analyses of the desktop, in a compact binary file.
+ *
+ * The file consists of a header (magic, version, number of frames), the frames, a directory with kind and offset
+ * of every frame, and finally the offset of the directory. Strings are UTF-8, preceded by their length in bytes.
+ * The durations of a table are rounded to integer micro seconds, and stored as one block of ints.
+ * Analyses are stored as their texts only.
+ *
+ * Restoring reads the file in one go, and copies the durations of every table as one block of ints;
+ * the durations of a row are decoded to an {@link IrSequence} when first needed.
+ * The file is not kept open or mapped, so it can be overwritten by the next save, also on Windows.
+ */
+public final class SessionFile {
+
+    public static final String EXTENSION = "irsession";
+
+    private static final int MAGIC = 0x49525353; // "IRSS"
+    private static final short VERSION = 1;
+    private static final byte SEQUENCES = 1;
+    private static final byte SIGNALS = 2;
+    private static final byte ANALYSIS = 3;
+    private static final byte SELECTED = 0x01;
+
+    /**
+     * @param file
+     * @return true if the file starts like a session file.
+     */
+    public static boolean isSessionFile(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Collects what is to be saved from the frames. Must be called on the EDT; the data of the rows is not copied.
+     * Frames other than tables and analyses are ignored.
+     * @param frames
+     * @param includeAnalyses if false, analyses are ignored too
+     * @return snapshot, that can be written in another thread
+     */
+    public static Snapshot snapshot(JInternalFrame[] frames, boolean includeAnalyses) {
+        List<FrameData> list = new ArrayList<>(frames.length);
+        // Bottom frame first, so that the restored frames get the same order.
+        for (int i = frames.length - 1; i >= 0; i--) {
+            JInternalFrame frame = frames[i];
+            if (frame instanceof TableInternalFrame && !((TableInternalFrame) frame).isClosed()) {
+                TableInternalFrame table = (TableInternalFrame) frame;
+                NamedIrSignal.LearnedIrSignalTableModel model = table.getTableModel();
+                byte kind = model instanceof RawIrSequence.RawTableModel ? SEQUENCES
+                        : model instanceof RawIrSignal.RawTableModel ? SIGNALS
+                        : 0;
+                if (kind == 0)
+                    continue;
+                int[] rows = new int[model.getRowCount()];
+                for (int row = 0; row < rows.length; row++)
+                    rows[row] = row;
+                list.add(new FrameData(kind, table.getSource(), frame.getBounds(), table.getFrequency(), model.getNamedIrSignals(rows), null));
+            } else if (includeAnalyses && frame instanceof AnalyzedFrame && !frame.isClosed()) {
+                AnalyzedFrame analyzed = (AnalyzedFrame) frame;
+                list.add(new FrameData(ANALYSIS, analyzed.getSource(), frame.getBounds(), null, null, analyzed.getTexts()));
+            }
+        }
+        return new Snapshot(list);
+    }
+
+    /**
+     * Reads the file, its directory, the names of the rows, and the undecoded durations.
+     * @param file
+     * @return the session
+     * @throws IOException if the file cannot be read, or is not a valid session file.
+     */
+    public static Session read(File file) throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (OutOfMemoryError ex) {
+            throw new IOException("Session file too large: " + file);
+        }
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IOException(file + " is not a session file");
+            short version = buffer.getShort();
+            if (version != VERSION)
+                throw new IOException("Unsupported version " + version + " of session file " + file);
+            int frames = buffer.getInt();
+            long directory = buffer.getLong(buffer.capacity() - Long.BYTES);
+            buffer.position(checkedOffset(directory, buffer));
+            byte[] kinds = new byte[frames];
+            int[] offsets = new int[frames];
+            for (int i = 0; i < frames; i++) {
+                kinds[i] = buffer.get();
+                offsets[i] = checkedOffset(buffer.getLong(), buffer);
+            }
+            List<Entry> entries = new ArrayList<>(frames);
+            for (int i = 0; i < frames; i++) {
+                ByteBuffer frame = buffer.duplicate();
+                frame.position(offsets[i]);
+                entries.add(kinds[i] == ANALYSIS ? new Entry(frame) : new Entry(kinds[i], frame));
+            }
+            return new Session(file, entries);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException ex) {
+            throw new IOException("Corrupt session file " + file, ex);
+        }
+    }
+
+    private static int checkedOffset(long offset, ByteBuffer buffer) throws IOException {
+        if (offset < 0 || offset >= buffer.capacity())
+            throw new IOException("Corrupt session file, bad offset " + offset);
+        return (int) offset;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBounds(DataOutputStream out, Rectangle bounds) throws IOException {
+        out.writeInt(bounds.x);
+        out.writeInt(bounds.y);
+        out.writeInt(bounds.width);
+        out.writeInt(bounds.height);
+    }
+
+    private static Rectangle readBounds(ByteBuffer buffer) {
+        return new Rectangle(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+    }
+
+    private static void writeDurations(DataOutputStream out, IrSequence sequence) throws IOException {
+        for (int i = 0; i < sequence.getLength(); i++)
+            out.writeInt((int) Math.round(sequence.get(i)));
+    }
+
+    private static int checkedLength(int length) throws IOException {
+        if (length < 0 || length % 2 != 0)
+            throw new IOException("Corrupt session file, bad sequence length " + length);
+        return length;
+    }
+
+    /**
+     * What is saved of one frame.
+     */
+    private static class FrameData {
+
+        private final byte kind;
+        private final String source;
+        private final Rectangle bounds;
+        private final Double frequency;
+        private final NamedIrSignal[] signals;
+        private final String[] texts;
+
+        FrameData(byte kind, String source, Rectangle bounds, Double frequency, NamedIrSignal[] signals, String[] texts) {
+            this.kind = kind;
+            this.source = source;
+            this.bounds = bounds;
+            this.frequency = frequency;
+            this.signals = signals;
+            this.texts = texts;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeString(out, source);
+            writeBounds(out, bounds);
+            if (kind == ANALYSIS) {
+                out.writeInt(texts.length);
+                for (String text : texts)
+                    writeString(out, text);
+                return;
+            }
+
+            // Signals can be loaded and edited meanwhile, so get every one exactly once.
+            List<IrSequence> sequences = new ArrayList<>(kind == SIGNALS ? 3 * signals.length : signals.length);
+            List<Double> frequencies = new ArrayList<>(kind == SIGNALS ? signals.length : 0);
+            int total = 0;
+            for (NamedIrSignal signal : signals) {
+                if (kind == SEQUENCES)
+                    sequences.add(((RawIrSequence) signal).getIrSequence());
+                else {
+                    IrSignal irSignal = ((RawIrSignal) signal).getIrSignal();
+                    frequencies.add(irSignal.getFrequency());
+                    sequences.add(irSignal.getIntroSequence());
+                    sequences.add(irSignal.getRepeatSequence());
+                    sequences.add(irSignal.getEndingSequence());
+                }
+            }
+            for (IrSequence sequence : sequences)
+                total += sequence.getLength();
+
+            out.writeDouble(frequency != null ? frequency : Double.NaN);
+            out.writeInt(signals.length);
+            out.writeInt(total);
+            for (NamedIrSignal signal : signals)
+                writeString(out, signal.getName());
+            for (NamedIrSignal signal : signals)
+                out.writeByte(signal.getValidated() ? SELECTED : 0);
+            if (kind == SIGNALS)
+                for (Double f : frequencies)
+                    out.writeDouble(f != null ? f : Double.NaN);
+            for (IrSequence sequence : sequences)
+                out.writeInt(sequence.getLength());
+            for (IrSequence sequence : sequences)
+                writeDurations(out, sequence);
+        }
+    }
+
+    /**
+     * The data to be saved, collected by {@link SessionFile#snapshot}.
+     */
+    public static class Snapshot {
+
+        private final List<FrameData> frames;
+
+        private Snapshot(List<FrameData> frames) {
+            this.frames = frames;
+        }
+
+        /**
+         * @return the number of frames to be saved
+         */
+        public int size() {
+            return frames.size();
+        }
+
+        /**
+         * Writes to a temporary file in the same directory, and renames it to the real name.
+         * @param file
+         * @throws IOException
+         */
+        public void write(File file) throws IOException {
+            Path path = file.toPath().toAbsolutePath();
+            Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp.toFile()), 65536))) {
+                    write(out);
+                }
+                try {
+                    Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(frames.size());
+            long[] offsets = new long[frames.size()];
+            for (int i = 0; i < frames.size(); i++) {
+                offsets[i] = out.size();
+                frames.get(i).write(out);
+                if (out.size() == Integer.MAX_VALUE) // size() saturates
+                    throw new IOException("Session too large");
+            }
+            long directory = out.size();
+            for (int i = 0; i < frames.size(); i++) {
+                out.writeByte(frames.get(i).kind);
+                out.writeLong(offsets[i]);
+            }
+            out.writeLong(directory);
+        }
+    }
+
+    /**
+     * A restored session.
+     */
+    public static class Session {
+
+        private final File file;
+        private final List<Entry> entries;
+
+        private Session(File file, List<Entry> entries) {
+            this.file = file;
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * @return the file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the frames, the bottom one first
+         */
+        public List<Entry> getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * One frame of a restored session: the names and flags of the rows have been read;
+     * the durations are kept as ints, and decoded when first needed.
+     */
+    public static class Entry {
+
+        private final byte kind;
+        private final String source;
+        private final Rectangle bounds;
+        private final Double frequency;
+        private final String[] names;
+        private final byte[] flags;
+        private final double[] frequencies;
+        private final int[] lengths;
+        private final int[] starts;
+        private final int[] durations;
+        private final String[] texts;
+
+        private Entry(byte kind, ByteBuffer buffer) throws IOException {
+            if (kind != SEQUENCES && kind != SIGNALS)
+                throw new IOException("Corrupt session file, unknown frame kind " + kind);
+            this.kind = kind;
+            source = readString(buffer);
+            bounds = readBounds(buffer);
+            double f = buffer.getDouble();
+            frequency = Double.isNaN(f) ? null : f;
+            int rows = buffer.getInt();
+            int total = buffer.getInt();
+            names = new String[rows];
+            for (int row = 0; row < rows; row++)
+                names[row] = readString(buffer);
+            flags = new byte[rows];
+            buffer.get(flags);
+            frequencies = new double[kind == SIGNALS ? rows : 0];
+            for (int row = 0; row < frequencies.length; row++)
+                frequencies[row] = buffer.getDouble();
+            lengths = new int[kind == SIGNALS ? 3 * rows : rows];
+            starts = new int[lengths.length];
+            int start = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = checkedLength(buffer.getInt());
+                starts[i] = start;
+                start += lengths[i];
+            }
+            if (start != total || total > buffer.remaining() / Integer.BYTES)
+                throw new IOException("Corrupt session file, bad number of durations");
+            // A copy, so that the file content is not referenced by the rows.
+            durations = new int[total];
+            buffer.slice().asIntBuffer().get(durations);
+            texts = null;
+        }
+
+        private Entry(ByteBuffer buffer) {
+            kind = ANALYSIS;
+            source = readString(buffer);
+            bounds = readBounds(buffer);
+            texts = new String[buffer.getInt()];
+            for (int i = 0; i < texts.length; i++)
+                texts[i] = readString(buffer);
+            frequency = null;
+            names = null;
+            flags = null;
+            frequencies = null;
+            lengths = null;
+            starts = null;
+            durations = null;
+        }
+
+        /**
+         * @return true for an analysis, false for a table
+         */
+        public boolean isAnalysis() {
+            return kind == ANALYSIS;
+        }
+
+        /**
+         * @return the source, used as title
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * @return the bounds of the frame when saved
+         */
+        public Rectangle getBounds() {
+            return bounds;
+        }
+
+        /**
+         * @return the texts of an analysis, null for a table
+         */
+        public String[] getTexts() {
+            return texts == null ? null : texts.clone();
+        }
+
+        /**
+         * @return the number of rows, 0 for an analysis
+         */
+        public int getRowCount() {
+            return names == null ? 0 : names.length;
+        }
+
+        private IrSequence decode(int i) {
+            double[] data = new double[lengths[i]];
+            for (int k = 0; k < data.length; k++)
+                data[k] = durations[starts[i] + k];
+            try {
+                return new IrSequence(data);
+            } catch (OddSequenceLengthException ex) {
+                throw new ThisCannotHappenException(ex); // lengths checked when read
+            }
+        }
+
+        private IrSignal decodeSignal(int row) {
+            double f = frequencies[row];
+            return new IrSignal(decode(3 * row), decode(3 * row + 1), decode(3 * row + 2), Double.isNaN(f) ? null : f, null);
+        }
+
+        /**
+         * Creates the models of a table, with rows that are loaded and rendered when needed.
+         * @return models for a {@link TableInternalFrame}
+         */
+        TableInternalFrame.TableKit toTableKit() {
+            List<NamedIrSignal> signals = new ArrayList<>(names.length);
+            for (int row = 0; row < names.length; row++) {
+                int r = row;
+                NamedIrSignal signal = kind == SEQUENCES
+                        ? new RawIrSequence(names[row], () -> decode(r))
+                        : new RawIrSignal(names[row], () -> decodeSignal(r));
+                signal.setValidated((flags[row] & SELECTED) != 0);
+                signals.add(signal);
+            }
+            NamedIrSignal.LearnedIrSignalTableModel model;
+            NamedIrSignal.LearnedIrSignalTableColumnModel columnModel;
+            if (kind == SEQUENCES) {
+                model = new RawIrSequence.RawTableModel();
+                columnModel = new RawIrSequence.RawTableColumnModel();
+            } else {
+                model = new RawIrSignal.RawTableModel();
+                columnModel = new RawIrSignal.RawTableColumnModel();
+            }
+            model.addUnrendered(signals);
+            model.clearUnsavedChanges();
+            return new TableInternalFrame.TableKit(model, columnModel, frequency);
+        }
+    }
+
+    private SessionFile() {
+    }
+}
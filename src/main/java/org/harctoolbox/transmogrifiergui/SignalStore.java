@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.harctoolbox.ircore.IrSequence;
+
+/**
+ * Desktop-wide store of the sequences in the table models.
+ * Sequences with identical durations are interned to one instance, found by a hash of the content,
+ * so that the same captures opened in several frames share their duration arrays.
+ * Every intern is counted, and has to be matched by a release; an entry is dropped when its count reaches zero.
+ */
+public final class SignalStore {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final SignalStore instance = new SignalStore();
+
+    public static SignalStore getInstance() {
+        return instance;
+    }
+
+    static int contentHash(IrSequence sequence) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < sequence.getLength(); i++) {
+            h ^= Double.doubleToLongBits(sequence.get(i));
+            h *= FNV_PRIME;
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    static boolean sameContent(IrSequence a, IrSequence b) {
+        if (a == b)
+            return true;
+        int length = a.getLength();
+        if (length != b.getLength())
+            return false;
+        for (int i = 0; i < length; i++)
+            if (Double.doubleToLongBits(a.get(i)) != Double.doubleToLongBits(b.get(i)))
+                return false;
+        return true;
+    }
+
+    private static final class Key {
+
+        private final IrSequence sequence;
+        private final int hash;
+
+        Key(IrSequence sequence) {
+            this.sequence = sequence;
+            this.hash = contentHash(sequence);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && hash == ((Key) obj).hash && sameContent(sequence, ((Key) obj).sequence);
+        }
+    }
+
+    private static final class Entry {
+
+        private final IrSequence sequence;
+        private final long memory;
+        private int references = 0;
+
+        Entry(IrSequence sequence) {
+            this.sequence = sequence;
+            this.memory = MemoryEstimate.irSequence(sequence);
+        }
+    }
+
+    private final Map<Key, Entry> entries = new HashMap<>(1024);
+    private long references = 0L;
+    private long saved = 0L;
+
+    private SignalStore() {
+    }
+
+    /**
+     * Returns the stored instance with the same durations as the argument, storing the argument if there is none,
+     * and counts a reference to it.
+     * @param sequence
+     * @return the canonical instance, to be used instead of the argument
+     */
+    public synchronized IrSequence intern(IrSequence sequence) {
+        if (sequence == null)
+            return null;
+        Key key = new Key(sequence);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(sequence);
+            entries.put(key, entry);
+        } else
+            saved += entry.memory;
+        entry.references++;
+        references++;
+        return entry.sequence;
+    }
+
+    /**
+     * Gives back a reference obtained from {@link #intern}.
+     * Sequences not in the store are ignored.
+     * @param sequence
+     */
+    public synchronized void release(IrSequence sequence) {
+        if (sequence == null)
+            return;
+        Key key = new Key(sequence);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.sequence != sequence)
+            return;
+        entry.references--;
+        references--;
+        if (entry.references == 0)
+            entries.remove(key);
+        else
+            saved -= entry.memory;
+    }
+
+    /**
+     * @return the number of distinct sequences stored.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of references held by the table models.
+     */
+    public synchronized long getReferences() {
+        return references;
+    }
+
+    /**
+     * @return estimated bytes not allocated, since the sequences are shared.
+     */
+    public synchronized long getSaved() {
+        return saved;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return entries.size() + " sequences, " + references + " references, " + MemoryEstimate.format(saved) + " shared";
+    }
+}
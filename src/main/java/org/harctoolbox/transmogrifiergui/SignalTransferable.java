@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Transferable for table rows, that renders the rows only when the receiver asks for the data.
+ * At creation, the name and references to the sequences (immutable IrSequences, or their compact form)
+ * of every row are captured, see {@link NamedIrSignal#capture()}; later edits of the table do not change the content.
+ *
+ * Two flavors are supported: plain text (as {@link NamedIrSignal#toPrintString()}),
+ * and a compact, tab separated format (as {@link NamedIrSignal#compactString()}),
+ * the latter delivered as a stream that is generated one row at a time.
+ */
+public class SignalTransferable implements Transferable, ClipboardOwner {
+
+    public static final DataFlavor COMPACT_FLAVOR = new DataFlavor("text/tab-separated-values;class=java.io.InputStream;charset=UTF-8", "IR sequences, tab separated");
+
+    private static final DataFlavor[] FLAVORS = new DataFlavor[] { COMPACT_FLAVOR, DataFlavor.stringFlavor };
+
+    private NamedIrSignal.Rendering[] signals;
+
+    /**
+     * @param signals rows, null elements are ignored
+     */
+    public SignalTransferable(NamedIrSignal[] signals) {
+        this.signals = new NamedIrSignal.Rendering[signals.length];
+        for (int i = 0; i < signals.length; i++)
+            this.signals[i] = signals[i] != null ? signals[i].capture() : null;
+    }
+
+    @Override
+    public DataFlavor[] getTransferDataFlavors() {
+        return FLAVORS.clone();
+    }
+
+    @Override
+    public boolean isDataFlavorSupported(DataFlavor flavor) {
+        for (DataFlavor f : FLAVORS)
+            if (f.equals(flavor))
+                return true;
+        return false;
+    }
+
+    @Override
+    public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException {
+        if (COMPACT_FLAVOR.equals(flavor))
+            return new CompactInputStream(signals);
+        if (DataFlavor.stringFlavor.equals(flavor))
+            return toPrintString();
+        throw new UnsupportedFlavorException(flavor);
+    }
+
+    private String toPrintString() {
+        StringBuilder str = new StringBuilder(64 * signals.length);
+        for (NamedIrSignal.Rendering signal : signals)
+            if (signal != null)
+                str.append(signal.toPrintString()).append('\n');
+        return str.toString();
+    }
+
+    /**
+     * Another application took the clipboard; drop the references to the signals.
+     */
+    @Override
+    public void lostOwnership(Clipboard clipboard, Transferable contents) {
+        signals = new NamedIrSignal.Rendering[0];
+    }
+
+    /**
+     * Stream that renders one row at a time, so that the complete text is never in memory.
+     */
+    private static class CompactInputStream extends InputStream {
+
+        private final NamedIrSignal.Rendering[] signals;
+        private int row = 0;
+        private byte[] line = new byte[0];
+        private int pos = 0;
+
+        CompactInputStream(NamedIrSignal.Rendering[] signals) {
+            this.signals = signals;
+        }
+
+        private boolean fill() {
+            while (pos >= line.length) {
+                if (row >= signals.length)
+                    return false;
+                NamedIrSignal.Rendering signal = signals[row++];
+                if (signal != null) {
+                    line = (signal.compactString() + "\n").getBytes(StandardCharsets.UTF_8);
+                    pos = 0;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return fill() ? line[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!fill())
+                return -1;
+            int n = Math.min(len, line.length - pos);
+            System.arraycopy(line, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return line.length - pos;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of one stage. Recording is lock free, and does not allocate.
+ */
+public final class StageMetrics implements StageMetricsMXBean {
+
+    private static final int BUCKETS = 40; // 2^39 micro seconds is more than a week
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final Metrics.Stage stage;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    StageMetrics(Metrics.Stage stage) {
+        this.stage = stage;
+    }
+
+    void record(long duration, long itemCount) {
+        count.increment();
+        items.add(itemCount);
+        nanos.add(duration);
+        long max = maxNanos.get();
+        while (duration > max && !maxNanos.compareAndSet(max, duration))
+            max = maxNanos.get();
+        int bucket = 64 - Long.numberOfLeadingZeros(duration / 1000L);
+        histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    }
+
+    @Override
+    public String getStage() {
+        return stage.name();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getItems() {
+        return items.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return nanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n > 0 ? getTotalMillis() / n : 0.0;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMedianMillis() {
+        return percentileMillis(0.5);
+    }
+
+    @Override
+    public double getP90Millis() {
+        return percentileMillis(0.9);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentileMillis(0.99);
+    }
+
+    @Override
+    public double getItemsPerSecond() {
+        long total = nanos.sum();
+        return total > 0 ? items.sum() * 1000000000.0 / total : 0.0;
+    }
+
+    @Override
+    public long[] getHistogram() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            result[i] = histogram.get(i);
+        return result;
+    }
+
+    /**
+     * @param fraction between 0 and 1
+     * @return Upper bound of the bucket containing the percentile, in milliseconds, or 0 if nothing recorded.
+     */
+    public double percentileMillis(double fraction) {
+        long[] buckets = getHistogram();
+        long total = 0L;
+        for (long n : buckets)
+            total += n;
+        if (total == 0L)
+            return 0.0;
+        long threshold = (long) Math.ceil(fraction * total);
+        long sum = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += buckets[i];
+            if (sum >= threshold)
+                return Math.min((1L << i) / 1000.0, getMaxMillis());
+        }
+        return getMaxMillis();
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        items.reset();
+        nanos.reset();
+        maxNanos.set(0L);
+        for (int i = 0; i < BUCKETS; i++)
+            histogram.set(i, 0L);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+/**
+ * Management interface of the metrics of one stage, see {@link Metrics}.
+ * Times are wall times in milliseconds; percentiles are upper bounds, with a resolution of a factor 2.
+ */
+public interface StageMetricsMXBean {
+
+    String getStage();
+
+    long getCount();
+
+    long getItems();
+
+    double getTotalMillis();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getMedianMillis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getItemsPerSecond();
+
+    /**
+     * @return Number of calls with duration in [2^(i-1), 2^i) microseconds, for bucket i.
+     */
+    long[] getHistogram();
+
+    void reset();
+}
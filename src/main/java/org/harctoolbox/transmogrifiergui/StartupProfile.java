@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Time stamps of the startup phases, and background warming of classes that are expensive to load.
+ */
+public final class StartupProfile {
+
+    private final static Logger logger = Logger.getLogger(StartupProfile.class.getName());
+
+    /**
+     * Classes that are not needed for the first paint, but will be needed as soon as the user does something.
+     */
+    private static final String[] WARMUP_CLASSES = {
+        "org.harctoolbox.irscrutinizer.importer.IctImporter",
+        "org.harctoolbox.ircore.MultiParser",
+        "org.harctoolbox.analyze.Analyzer",
+        "org.harctoolbox.irp.IrpDatabase",
+        "org.harctoolbox.irp.Protocol",
+        "org.harctoolbox.irp.BitCounter"
+    };
+
+    private static final long ORIGIN = System.nanoTime();
+    private static final List<String> phases = new ArrayList<>(16);
+    private static final List<Long> times = new ArrayList<>(16);
+    private static boolean firstPaint = false;
+
+    /**
+     * Records that the phase has been reached.
+     * @param phase
+     */
+    public static synchronized void mark(String phase) {
+        phases.add(phase);
+        times.add(System.nanoTime());
+    }
+
+    /**
+     * Records the first paint; further calls are ignored.
+     */
+    public static synchronized void markFirstPaint() {
+        if (firstPaint)
+            return;
+        firstPaint = true;
+        mark("first paint");
+    }
+
+    /**
+     * Loads and initializes the classes in WARMUP_CLASSES in a low priority daemon thread.
+     */
+    public static void startWarmup() {
+        Thread thread = new Thread(() -> {
+            ClassLoader classLoader = StartupProfile.class.getClassLoader();
+            for (String className : WARMUP_CLASSES) {
+                try {
+                    Class.forName(className, true, classLoader);
+                } catch (ClassNotFoundException | LinkageError ex) {
+                    logger.log(Level.FINE, "Warmup of {0} failed: {1}", new Object[]{className, ex});
+                }
+            }
+            mark("classes warmed");
+        }, "Warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * @return Human readable report, times in milliseconds since the JVM was started, and since the previous phase.
+     */
+    public static synchronized String report() {
+        // Do not use ManagementFactory before this; it is not cheap to load.
+        long jvmToOrigin = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime()
+                - (System.nanoTime() - ORIGIN) / 1000000L;
+        StringBuilder str = new StringBuilder(64 * phases.size());
+        str.append("Startup timing (ms since JVM start; delta):");
+        long previous = ORIGIN;
+        for (int i = 0; i < phases.size(); i++) {
+            long t = times.get(i);
+            str.append("\n  ").append(phases.get(i)).append(": ")
+                    .append(jvmToOrigin + (t - ORIGIN) / 1000000L).append("; +")
+                    .append((t - previous) / 1000000L);
+            previous = t;
+        }
+        return str.toString();
+    }
+
+    private StartupProfile() {
+    }
+}
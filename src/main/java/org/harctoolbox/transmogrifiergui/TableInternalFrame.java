@@ -16,65 +16,55 @@
  */
 package org.harctoolbox.transmogrifiergui;
 
-import java.io.BufferedReader;
+import java.awt.Graphics;
+import java.awt.Toolkit;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.swing.JInternalFrame;
+import javax.swing.JOptionPane;
 import javax.swing.JTable;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.TableModelListener;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableModel;
 import javax.swing.table.TableRowSorter;
-import org.harctoolbox.girr.Command;
 import org.harctoolbox.guicomponents.CopyClipboardText;
 import org.harctoolbox.ircore.InvalidArgumentException;
-import org.harctoolbox.ircore.IrCoreException;
-import org.harctoolbox.ircore.IrCoreUtils;
 import org.harctoolbox.ircore.IrSequence;
 import org.harctoolbox.ircore.IrSignal;
-import org.harctoolbox.ircore.ModulatedIrSequence;
-import org.harctoolbox.ircore.MultiParser;
 import org.harctoolbox.ircore.OddSequenceLengthException;
-import org.harctoolbox.ircore.ThingsLineParser;
-import org.harctoolbox.irp.IrpException;
-import org.harctoolbox.irscrutinizer.importer.IctImporter;
 
-public class TableInternalFrame extends javax.swing.JInternalFrame {
+public class TableInternalFrame extends javax.swing.JInternalFrame implements MemoryAccountable {
 
     private final static Logger logger = Logger.getLogger(TableInternalFrame.class.getName());
     private static Properties properties = Properties.getInstance();
+    private static final int MEMORY_TITLE_DELAY = 500; // milliseconds
+    private static final int LIVE_CAPTURE_INTERVAL = 100; // milliseconds
+    private static final int LIVE_CAPTURE_MAX_ROWS = 200; // per interval
 
-    private static TableKit loadModSequences(Map<String, ModulatedIrSequence> modSequences) {
+    private static TableKit loadModSequences(Map<String, IrSequence> sequences, Double frequency) {
+        long start = Metrics.start();
         RawIrSequence.RawTableModel rawTableModel = new RawIrSequence.RawTableModel();
-        Double sum = 0.0;
-        for (Map.Entry<String, ModulatedIrSequence> kvp : modSequences.entrySet()) {
-            ModulatedIrSequence modSeq = kvp.getValue();
-            Double freq = modSeq.getFrequency();
-            if (sum != null)
-                sum = freq != null ? sum + freq : null;
-            IrSequence irSequence = new IrSequence(modSeq);
-            RawIrSequence sequence = new RawIrSequence(irSequence, kvp.getKey());
+        for (Map.Entry<String, IrSequence> kvp : sequences.entrySet()) {
+            RawIrSequence sequence = new RawIrSequence(kvp.getValue(), kvp.getKey());
             rawTableModel.addSequence(sequence);
         }
-        Double average = sum == null ? null : sum / modSequences.size();
-        return new TableKit(rawTableModel, new RawIrSequence.RawTableColumnModel(), average);
-    }
-
-    private static TableKit loadModSequences(Collection<Command> cmds) throws IrpException, IrCoreException {
-        Map<String, ModulatedIrSequence> map = new HashMap<>(cmds.size());
-        for (Command cmd : cmds)
-            map.put(cmd.getName(), cmd.toIrSignal().toModulatedIrSequence());
-        return loadModSequences(map);
+        Metrics.record(Metrics.Stage.loadModSequences, start, sequences.size());
+        return new TableKit(rawTableModel, new RawIrSequence.RawTableColumnModel(), frequency);
     }
 
     private static TableKit loadSequences(Map<String, IrSequence> signals) {
+        long start = Metrics.start();
         RawIrSignal.RawTableModel rawTableModel = new RawIrSignal.RawTableModel();
         for (Map.Entry<String, IrSequence> kvp : signals.entrySet()) {
             IrSequence sequence = kvp.getValue();
@@ -82,10 +72,16 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
             RawIrSignal signal = new RawIrSignal(irSignal, kvp.getKey());
             rawTableModel.addSignal(signal);
         }
+        Metrics.record(Metrics.Stage.loadModSequences, start, signals.size());
         return new TableKit(rawTableModel, new RawIrSignal.RawTableColumnModel());
     }
 
     private final String source;
+    private final String baseTitle;
+    private final Timer memoryTitleTimer;
+    private final FrameLifecycle lifecycle;
+    private String status = null;
+    private String memoryText = "";
 
     private <T extends TableModel> void enableSorter(JTable table, boolean state) {
         @SuppressWarnings("unchecked")
@@ -132,17 +128,65 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
         System.out.println(str);
     }
 
-    public Map<String, IrSequence> getIrSequences() {
-        LinkedHashMap<String, IrSequence> result = new LinkedHashMap<>(table.getRowCount());
-        NamedIrSignal.LearnedIrSignalTableModel tableMdl = (NamedIrSignal.LearnedIrSignalTableModel) table.getModel();
+    /**
+     * Puts the rows on the clipboard. Only the names, and references to the sequences, are captured here
+     * (rows of a restored session not yet loaded are loaded);
+     * the text is generated by the {@link SignalTransferable} when the receiver asks for it.
+     * @param selectionOnly if true, only the selected rows, otherwise all rows, in view order.
+     * @throws ErroneousSelectionException if selectionOnly and nothing is selected.
+     */
+    private void copyTableToClipboard(boolean selectionOnly) throws ErroneousSelectionException {
+        int[] viewRows;
+        if (selectionOnly) {
+            barfIfNoneSelected(table);
+            viewRows = table.getSelectedRows();
+        } else {
+            viewRows = new int[table.getRowCount()];
+            for (int i = 0; i < viewRows.length; i++)
+                viewRows[i] = i;
+        }
+        int[] modelRows = new int[viewRows.length];
+        for (int i = 0; i < viewRows.length; i++)
+            modelRows[i] = table.convertRowIndexToModel(viewRows[i]);
+
+        SignalTransferable transferable = new SignalTransferable(tableModel.getNamedIrSignals(modelRows));
+        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(transferable, transferable);
+    }
+
+    /**
+     * @return true if the table holds raw sequences (not signals), and is not closed.
+     */
+    public boolean hasIrSequences() {
+        return tableModel instanceof RawIrSequence.RawTableModel;
+    }
+
+    /**
+     * Requires {@link #hasIrSequences}.
+     * @return the named sequences in view order; rows with equal names are all kept.
+     */
+    public List<Map.Entry<String, IrSequence>> getNamedIrSequences() {
+        RawIrSequence.RawTableModel rawTableModel = (RawIrSequence.RawTableModel) tableModel;
+        List<Map.Entry<String, IrSequence>> result = new ArrayList<>(table.getRowCount());
         for (int i = 0; i < table.getRowCount(); i++) {
-            int modelRow = table.convertRowIndexToModel(i);
-            RawIrSequence rawIrSequence = ((RawIrSequence.RawTableModel) tableMdl).getCapturedIrSequence(modelRow);
-            result.put(rawIrSequence.getName(), rawIrSequence.getIrSequence());
+            RawIrSequence rawIrSequence = rawTableModel.getCapturedIrSequence(table.convertRowIndexToModel(i));
+            result.add(new AbstractMap.SimpleImmutableEntry<>(rawIrSequence.getName(), rawIrSequence.getIrSequence()));
         }
         return result;
     }
 
+    /**
+     * Requires {@link #hasIrSequences}.
+     * @return the sequences in view order; of rows with equal names, only the last one is kept.
+     */
+    public Map<String, IrSequence> getIrSequences() {
+        List<Map.Entry<String, IrSequence>> sequences = getNamedIrSequences();
+        LinkedHashMap<String, IrSequence> result = new LinkedHashMap<>(2 * sequences.size());
+        sequences.forEach((entry) -> {
+            result.put(entry.getKey(), entry.getValue());
+        });
+        return result;
+    }
+
 //    public JTable getTable() {
 //        return table;
 //    }
@@ -152,6 +196,8 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
         int row = table.getSelectedRow();
         int column = table.getSelectedColumn();
         if (row >= 0 && column >= 0) {
+            Object event = FlightRecorderEvents.beginCellEdit();
+            long start = Metrics.start();
             int r = table.convertRowIndexToModel(row);
             int c = table.convertColumnIndexToModel(column);
             Class<?> clazz = tableModel.getColumnClass(column);
@@ -161,15 +207,89 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
                     : str;
             tableModel.setValueAt(thing, r, c);
             table.repaint();
+            Metrics.record(Metrics.Stage.edit, start);
+            if (event != null) {
+                NamedIrSignal signal = tableModel.getNamedIrSignal(r);
+                FlightRecorderEvents.commitCellEdit(event, r, c,
+                        signal instanceof RawIrSequence ? ((RawIrSequence) signal).getIrSequence().getLength() : -1);
+            }
         }
     }
 
+    @Override
+    public void paint(Graphics g) {
+        long start = Metrics.start();
+        super.paint(g);
+        Metrics.record(Metrics.Stage.tablePaint, start);
+    }
+
     public void analyze() throws InvalidArgumentException {
         Map<String, IrSequence> irSequences = getIrSequences();
-        AnalyzedFrame frame = new AnalyzedFrame(source, irSequences, frequency);
+        AnalyzedFrame frame = new AnalyzedFrame(source, properties.snapshot(), irSequences, frequency);
         Gui.getInstance().addInternalFrame(frame);
     }
 
+    /**
+     * @return the other open tables of raw sequences, empty if this table has none.
+     */
+    private List<TableInternalFrame> comparableTables() {
+        List<TableInternalFrame> others = new ArrayList<>(4);
+        if (!hasIrSequences())
+            return others;
+        for (JInternalFrame frame : Gui.getInstance().getInternalFrames())
+            if (frame instanceof TableInternalFrame && frame != this && ((TableInternalFrame) frame).hasIrSequences())
+                others.add((TableInternalFrame) frame);
+        return others;
+    }
+
+    /**
+     * Lets the user select another table, and opens a frame with the differences between this table and that one.
+     */
+    public void compare() {
+        List<TableInternalFrame> others = comparableTables();
+        if (others.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "There is no other table of raw sequences to compare with.", "Compare", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        // Numbered, since the same file may be open more than once.
+        String[] choices = new String[others.size()];
+        for (int i = 0; i < choices.length; i++)
+            choices[i] = (i + 1) + ": " + others.get(i).baseTitle;
+        Object choice = JOptionPane.showInputDialog(this, "Compare " + source + " with:", "Compare",
+                JOptionPane.QUESTION_MESSAGE, null, choices, choices[0]);
+        if (choice != null)
+            compare(others.get(Arrays.asList(choices).indexOf(choice)));
+    }
+
+    /**
+     * Compares the sequences, in view order, with those of the other table, in the background.
+     * The result is shown in a new {@link DiffInternalFrame}, unless this frame has been closed meanwhile.
+     * @param other
+     */
+    public void compare(TableInternalFrame other) {
+        List<Map.Entry<String, IrSequence>> first = getNamedIrSequences();
+        List<Map.Entry<String, IrSequence>> second = other.getNamedIrSequences();
+        PropertiesSnapshot snapshot = properties.snapshot();
+        String otherSource = other.source;
+        lifecycle.add(new SwingWorker<SessionDiff, Void>() {
+            @Override
+            protected SessionDiff doInBackground() {
+                return SessionDiff.compare(first, second, snapshot);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || lifecycle.isClosed())
+                    return;
+                try {
+                    Gui.getInstance().addInternalFrame(new DiffInternalFrame(source, otherSource, get()));
+                } catch (InterruptedException | ExecutionException ex) {
+                    logger.log(Level.SEVERE, null, ex);
+                }
+            }
+        }).execute();
+    }
+
     public String normalize(String text) throws OddSequenceLengthException {
         int row = table.getSelectedRow();
         int column = table.getSelectedColumn();
@@ -177,10 +297,10 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
             return "invalid";
 
         int c = table.convertColumnIndexToModel(column);
-        return tableModel.normalize(text, c);
+        return tableModel.normalize(text, c, properties.snapshot());
     }
 
-    private static class TableKit {
+    static class TableKit {
 
         private NamedIrSignal.LearnedIrSignalTableModel tableModel;
         private NamedIrSignal.LearnedIrSignalTableColumnModel tableColumnModel;
@@ -238,12 +358,181 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
         this.tableModel = tableKit.getTableModel();
         this.tableColumnModel = tableKit.getTableColumnModel();
         this.frequency = tableKit.getFrequency();
+        this.baseTitle = source + " [Raw sequences]";
+        tableModel.setCompactStorage(properties.isCompactStorage());
         initComponents();
-        setTitle(source + " [Raw sequences]");
+        lifecycle = FrameLifecycle.attach(this);
+        memoryTitleTimer = lifecycle.add(new Timer(MEMORY_TITLE_DELAY, (evt) -> {
+            updateMemoryTitle();
+        }));
+        memoryTitleTimer.setRepeats(false);
+        TableModelListener memoryListener = (evt) -> {
+            memoryTitleTimer.restart();
+        };
+        tableModel.addTableModelListener(memoryListener);
+        lifecycle.onClose(() -> {
+            tableModel.removeTableModelListener(memoryListener);
+            releaseModels();
+        });
+        updateMemoryTitle();
+    }
+
+    /**
+     * Detaches the table from the models, and empties them.
+     * The frame is not usable after this.
+     */
+    private void releaseModels() {
+        table.setRowSorter(null);
+        table.setModel(new DefaultTableModel());
+        tableModel.clear();
+        tableModel = null;
+        tableColumnModel = null;
+    }
+
+    /**
+     * @return the lifecycle, for registering background work that should end with the frame.
+     */
+    FrameLifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    /**
+     * @return the source, as given to the constructor
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the modulation frequency, null if not known
+     */
+    public Double getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * @return the table model, null after close
+     */
+    NamedIrSignal.LearnedIrSignalTableModel getTableModel() {
+        return tableModel;
+    }
+
+    /**
+     * @return the change generation of the content, -1 after close
+     */
+    long getChangeGeneration() {
+        return tableModel != null ? tableModel.getChangeGeneration() : -1L;
+    }
+
+    /**
+     * Marks the content as saved, unless changed since.
+     * @param generation from {@link #getChangeGeneration}, when the content was collected for saving
+     */
+    void clearUnsavedChanges(long generation) {
+        if (tableModel != null)
+            tableModel.clearUnsavedChanges(generation);
+    }
+
+    private void updateMemoryTitle() {
+        if (tableModel == null)
+            return;
+        memoryText = " (" + MemoryEstimate.format(getMemoryEstimate()) + ")";
+        updateTitle();
+    }
+
+    /**
+     * Shows the status with the last memory estimate, without estimating again.
+     */
+    private void updateTitle() {
+        setTitle(baseTitle + (status != null ? " " + status : "") + memoryText);
+    }
+
+    /**
+     * @return 0 after close
+     */
+    @Override
+    public long getMemoryEstimate() {
+        if (tableModel == null)
+            return 0L;
+        return tableModel.estimateSignalsMemory() + tableModel.estimateRenderedMemory();
+    }
+
+    /**
+     * @return -1 after close
+     */
+    @Override
+    public long getMemoryGeneration() {
+        return tableModel != null ? tableModel.getMemoryGeneration() : -1L;
+    }
+
+    @Override
+    public String getMemoryBreakdown() {
+        if (tableModel == null)
+            return "closed";
+        return "durations " + MemoryEstimate.format(tableModel.estimateSignalsMemory())
+                + ", rendered cells " + MemoryEstimate.format(tableModel.estimateRenderedMemory())
+                + (tableModel.isCompactStorage() ? ", compact storage saves " + MemoryEstimate.format(tableModel.estimateCompactSavings()) : "");
+    }
+
+    /**
+     * Drops the rendered cells. The visible ones are rendered again at the next paint.
+     */
+    @Override
+    public void releaseCaches() {
+        if (tableModel == null)
+            return;
+        tableModel.releaseRenderedCells();
+        table.repaint();
+        updateMemoryTitle();
     }
 
     public TableInternalFrame() {
-        this(new TableKit(), "Unnamed");
+        this("Unnamed");
+    }
+
+    /**
+     * Creates an empty table of raw sequences.
+     * @param source title
+     */
+    public TableInternalFrame(String source) {
+        this(new TableKit(), source);
+    }
+
+    /**
+     * Appends the sequences of the live capture as they arrive, at most LIVE_CAPTURE_MAX_ROWS per LIVE_CAPTURE_INTERVAL;
+     * what the capture cannot buffer meanwhile is dropped, and shown in the title.
+     * The capture is closed with the frame. Requires a table of raw sequences.
+     * @param capture started or not yet started
+     */
+    public void attachLiveCapture(LiveCapture capture) {
+        RawIrSequence.RawTableModel rawTableModel = (RawIrSequence.RawTableModel) tableModel;
+        List<IrSequence> sequences = new ArrayList<>(LIVE_CAPTURE_MAX_ROWS);
+        List<RawIrSequence> rows = new ArrayList<>(LIVE_CAPTURE_MAX_ROWS);
+        int[] counter = new int[1];
+        Timer timer = lifecycle.add(new Timer(LIVE_CAPTURE_INTERVAL, null));
+        timer.addActionListener((evt) -> {
+            capture.drainTo(sequences, LIVE_CAPTURE_MAX_ROWS);
+            sequences.forEach((sequence) -> {
+                rows.add(new RawIrSequence(sequence, capture.getName() + "-" + (++counter[0])));
+            });
+            rawTableModel.addSequences(rows);
+            boolean added = !rows.isEmpty();
+            sequences.clear();
+            rows.clear();
+            String newStatus = "[" + (capture.isRunning() ? "live" : capture.getError() != null ? "failed" : "ended")
+                    + ": " + capture.getReceived() + " received, " + capture.getDropped() + " dropped]";
+            if (added && rawTableModel.getAndResetScrollRequest())
+                table.scrollRectToVisible(table.getCellRect(table.getRowCount() - 1, 0, true));
+            if (!newStatus.equals(status)) {
+                // The counts change at every tick; new rows restart memoryTitleTimer for the estimate.
+                status = newStatus;
+                updateTitle();
+            }
+            if (!capture.isRunning() && capture.getReceived() == counter[0] + capture.getDropped())
+                timer.stop();
+        });
+        lifecycle.onClose(capture::close);
+        timer.start();
     }
 
     public TableInternalFrame(File importFile) throws IOException, InvalidArgumentException {
@@ -251,25 +540,34 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
     }
 
     private static TableKit loadFile(File importFile) throws IOException, InvalidArgumentException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(importFile), IrCoreUtils.UTF8))) {
-            Collection<Command> cmds = IctImporter.importer(reader, importFile.getCanonicalPath());
-
-            //Map<String, ModulatedIrSequence> modSequences = IctImporter.parse(importFile.getCanonicalPath());
-            if (cmds.isEmpty())
-                throw new InvalidArgumentException("No parseable sequences found.");
-            return loadModSequences(cmds);
-        } catch (IrpException | IrCoreException ex) {
-            logger.log(Level.INFO, "Parsing of {0} as ict failed", importFile);
-            ThingsLineParser<IrSequence> irSignalParser = new ThingsLineParser<>(
-                    (List<String> line) -> {
-                        return (MultiParser.newIrCoreParser(line)).toModulatedIrSequence(ModulatedIrSequence.DEFAULT_FREQUENCY, null); // FIXME
-                    }, "#"
-            );
-            Map<String, IrSequence> sequences = irSignalParser.readNamedThings(importFile.getCanonicalPath(), properties.getEncoding());
-            if (sequences.isEmpty())
-                throw new InvalidArgumentException("No parseable sequences found.");
-            return loadSequences(sequences);
-        }
+        return loadFile(importFile, properties.snapshot());
+    }
+
+    /**
+     * Creates a frame from a restored session; the rows are loaded and rendered when needed.
+     * @param entry a table, not an analysis
+     */
+    public TableInternalFrame(SessionFile.Entry entry) {
+        this(entry.toTableKit(), entry.getSource());
+    }
+
+    /**
+     * Creates a frame from already imported data. Must be called on the EDT.
+     * @param imported
+     * @param source title
+     */
+    public TableInternalFrame(SequenceImporter.Imported imported, String source) {
+        this(toTableKit(imported), source);
+    }
+
+    static TableKit loadFile(File importFile, PropertiesSnapshot settings) throws IOException, InvalidArgumentException {
+        return toTableKit(SequenceImporter.importFile(importFile, settings));
+    }
+
+    private static TableKit toTableKit(SequenceImporter.Imported imported) {
+        return imported.getFormat() == SequenceImporter.Format.ict
+                ? loadModSequences(imported.getSequences(), imported.getFrequency())
+                : loadSequences(imported.getSequences());
     }
 
 //    private void analyze(Map<String, ModulatedIrSequence> modulatedIrSequences) {
@@ -315,6 +613,10 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
         hideUninterestingColumnsMenuItem1 = new javax.swing.JMenuItem();
         analyzeMenuItem = new javax.swing.JMenuItem();
         decodeItem = new javax.swing.JMenuItem();
+        compareMenuItem = new javax.swing.JMenuItem();
+        jSeparator2 = new javax.swing.JPopupMenu.Separator();
+        releaseCachesMenuItem = new javax.swing.JMenuItem();
+        compactStorageCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         jScrollPane1 = new javax.swing.JScrollPane();
         table = new javax.swing.JTable();
 
@@ -395,8 +697,7 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
         rawTablePopupMenu.add(jSeparator28);
 
         rawCopyAllMenuItem.setText("Copy all to clipboard");
-        rawCopyAllMenuItem.setToolTipText("Not yet element");
-        rawCopyAllMenuItem.setEnabled(false);
+        rawCopyAllMenuItem.setToolTipText("Copy all rows to the clipboard, as text and as compact durations.");
         rawCopyAllMenuItem.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
                 rawCopyAllMenuItemActionPerformed(evt);
@@ -405,8 +706,7 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
         rawTablePopupMenu.add(rawCopyAllMenuItem);
 
         rawCopySelectionMenuItem.setText("Copy selected to clipboard");
-        rawCopySelectionMenuItem.setToolTipText("Not yet implemented");
-        rawCopySelectionMenuItem.setEnabled(false);
+        rawCopySelectionMenuItem.setToolTipText("Copy the selected rows to the clipboard, as text and as compact durations.");
         rawCopySelectionMenuItem.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
                 rawCopySelectionMenuItemActionPerformed(evt);
@@ -464,6 +764,45 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
         });
         rawTablePopupMenu.add(decodeItem);
 
+        compareMenuItem.setText("Compare with ...");
+        compareMenuItem.setToolTipText("Compare the sequences of this table with those of another table.");
+        compareMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                compareMenuItemActionPerformed(evt);
+            }
+        });
+        rawTablePopupMenu.add(compareMenuItem);
+        rawTablePopupMenu.add(jSeparator2);
+
+        releaseCachesMenuItem.setText("Release caches");
+        releaseCachesMenuItem.setToolTipText("Drop the rendered cells; they are recomputed when shown.");
+        releaseCachesMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                releaseCachesMenuItemActionPerformed(evt);
+            }
+        });
+        rawTablePopupMenu.add(releaseCachesMenuItem);
+
+        compactStorageCheckBoxMenuItem.setSelected(properties.isCompactStorage());
+        compactStorageCheckBoxMenuItem.setText("Compact storage");
+        compactStorageCheckBoxMenuItem.setToolTipText("Keep the durations packed, decoded when needed. Also the default for new tables.");
+        compactStorageCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                compactStorageCheckBoxMenuItemActionPerformed(evt);
+            }
+        });
+        rawTablePopupMenu.add(compactStorageCheckBoxMenuItem);
+
+        rawTablePopupMenu.addPopupMenuListener(new javax.swing.event.PopupMenuListener() {
+            public void popupMenuCanceled(javax.swing.event.PopupMenuEvent evt) {
+            }
+            public void popupMenuWillBecomeInvisible(javax.swing.event.PopupMenuEvent evt) {
+            }
+            public void popupMenuWillBecomeVisible(javax.swing.event.PopupMenuEvent evt) {
+                rawTablePopupMenuPopupMenuWillBecomeVisible(evt);
+            }
+        });
+
         setClosable(true);
         setIconifiable(true);
         setMaximizable(true);
@@ -589,13 +928,19 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
     }//GEN-LAST:event_printTableRowMenuItemActionPerformed
 
     private void rawCopyAllMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_rawCopyAllMenuItemActionPerformed
-//        copyTableToClipboard(rawTable, false);
-        logger.severe("Not yet implemented");
+        try {
+            copyTableToClipboard(false);
+        } catch (ErroneousSelectionException ex) {
+            logger.severe(ex.getLocalizedMessage());
+        }
     }//GEN-LAST:event_rawCopyAllMenuItemActionPerformed
 
     private void rawCopySelectionMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_rawCopySelectionMenuItemActionPerformed
-//        copyTableToClipboard(rawTable, true);
-        logger.severe("Not yet implemented");
+        try {
+            copyTableToClipboard(true);
+        } catch (ErroneousSelectionException ex) {
+            logger.severe(ex.getLocalizedMessage());
+        }
     }//GEN-LAST:event_rawCopySelectionMenuItemActionPerformed
 
     private void hideColumnMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_hideColumnMenuItemActionPerformed
@@ -657,14 +1002,36 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
 
     }//GEN-LAST:event_decodeItemActionPerformed
 
+    private void compareMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_compareMenuItemActionPerformed
+        compare();
+    }//GEN-LAST:event_compareMenuItemActionPerformed
+
     private void addEmptySequenceMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_addEmptySequenceMenuItemActionPerformed
         RawIrSequence rawIrSequence = new RawIrSequence(new IrSequence(), "unnamed");
         tableModel.addSignal(rawIrSequence);
     }//GEN-LAST:event_addEmptySequenceMenuItemActionPerformed
 
+    private void releaseCachesMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_releaseCachesMenuItemActionPerformed
+        releaseCaches();
+    }//GEN-LAST:event_releaseCachesMenuItemActionPerformed
+
+    private void rawTablePopupMenuPopupMenuWillBecomeVisible(javax.swing.event.PopupMenuEvent evt) {//GEN-FIRST:event_rawTablePopupMenuPopupMenuWillBecomeVisible
+        compareMenuItem.setEnabled(!comparableTables().isEmpty());
+    }//GEN-LAST:event_rawTablePopupMenuPopupMenuWillBecomeVisible
+
+    private void compactStorageCheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_compactStorageCheckBoxMenuItemActionPerformed
+        boolean state = compactStorageCheckBoxMenuItem.isSelected();
+        properties.setCompactStorage(state);
+        tableModel.setCompactStorage(state);
+        table.repaint();
+        updateMemoryTitle();
+    }//GEN-LAST:event_compactStorageCheckBoxMenuItemActionPerformed
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JMenuItem addEmptySequenceMenuItem;
     private javax.swing.JMenuItem analyzeMenuItem;
+    private javax.swing.JCheckBoxMenuItem compactStorageCheckBoxMenuItem;
+    private javax.swing.JMenuItem compareMenuItem;
     private javax.swing.JMenuItem decodeItem;
     private javax.swing.JMenuItem deleteMenuItem;
     private javax.swing.JMenuItem hideColumnMenuItem;
@@ -673,6 +1040,7 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
     private javax.swing.JPopupMenu.Separator jSeparator1;
     private javax.swing.JPopupMenu.Separator jSeparator11;
     private javax.swing.JPopupMenu.Separator jSeparator18;
+    private javax.swing.JPopupMenu.Separator jSeparator2;
     private javax.swing.JPopupMenu.Separator jSeparator25;
     private javax.swing.JPopupMenu.Separator jSeparator28;
     private javax.swing.JPopupMenu.Separator jSeparator29;
@@ -685,6 +1053,7 @@ public class TableInternalFrame extends javax.swing.JInternalFrame {
     private javax.swing.JMenuItem rawFromClipboardMenuItem;
     private javax.swing.JCheckBoxMenuItem rawSorterCheckBoxMenuItem;
     private javax.swing.JPopupMenu rawTablePopupMenu;
+    private javax.swing.JMenuItem releaseCachesMenuItem;
     private javax.swing.JMenuItem removeUnusedMenuItem1;
     private javax.swing.JMenuItem resetRawTableColumnsMenuItem;
     private javax.swing.JTable table;
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.File;
+import java.io.IOException;
+import org.harctoolbox.ircore.InvalidArgumentException;
+
+/**
+ * Exercises the code paths of a typical session (import, table, analysis, copy),
+ * without showing any window, and exits.
+ * Used as training run for the class data sharing archive (profile appcds in pom.xml).
+ */
+public final class TrainingRun {
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Gui.setLAF("Nimbus");
+        PropertiesSnapshot settings = Properties.getInstance().snapshot();
+        int status = 0;
+        for (String arg : args) {
+            try {
+                File file = new File(arg);
+                SequenceImporter.Imported imported = SequenceImporter.importFile(file, settings);
+                TableInternalFrame tableFrame = new TableInternalFrame(imported, file.getName());
+                Analysis analysis = new Analysis(imported.getSequences(), imported.getFrequencyWithDefault(), settings);
+                AnalyzedFrame analyzedFrame = new AnalyzedFrame(file.getName(), analysis);
+                SignalTransferable transferable = new SignalTransferable(new NamedIrSignal[0]);
+                System.out.println(file + ": " + analysis.size() + " signals, "
+                        + tableFrame.getTitle() + ", " + analyzedFrame.getTitle() + ", " + transferable.getTransferDataFlavors().length + " flavors");
+            } catch (IOException | InvalidArgumentException ex) {
+                System.err.println(arg + ": " + ex.getLocalizedMessage());
+                status = 1;
+            }
+        }
+        System.exit(status);
+    }
+
+    private TrainingRun() {
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2020 Bengt Martensson
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.harctoolbox.transmogrifiergui;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.harctoolbox.ircore.IrSequence;
+import org.harctoolbox.ircore.OddSequenceLengthException;
+
+/**
+ * Binary framing between the {@link Coordinator} and its {@link AnalysisWorker}s, over the stdin and stdout of the worker.
+ *
+ * <p>At startup, the worker writes MAGIC, and the coordinator answers with its settings, as written by
+ * {@link PropertiesSnapshot#write}; the worker analyzes with these only.
+ * Then every request is answered by exactly one response.
+ * <pre>
+ * request:  FILE id path | SEQUENCES id frequency count (name length duration*)* | END
+ * response: RESULT id count (name protocol? parameterCount (key value)*)* | ERROR id message
+ * </pre>
+ * FILE is only sent to workers known to share the file system of the coordinator.
+ * Types are bytes, id and frequency ints, strings modified UTF-8 (DataOutput.writeUTF),
+ * counts, lengths and durations (in microseconds, rounded) unsigned varints.
+ */
+final class WorkerProtocol {
+
+    static final int MAGIC = 0x49525457; // "IRTW"
+
+    static final byte END = 0;
+    static final byte FILE = 1;
+    static final byte SEQUENCES = 2;
+
+    static final byte RESULT = 1;
+    static final byte ERROR = 2;
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value " + value);
+        while (value >= 0x80) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        long n = readVarint(in);
+        if (n > Integer.MAX_VALUE)
+            throw new IOException("Count too large: " + n);
+        return (int) n;
+    }
+
+    static void writeSettings(DataOutputStream out, PropertiesSnapshot properties) throws IOException {
+        properties.write(out);
+        out.flush();
+    }
+
+    static PropertiesSnapshot readSettings(DataInputStream in) throws IOException {
+        return new PropertiesSnapshot(in);
+    }
+
+    static void writeFileRequest(DataOutputStream out, int id, String path) throws IOException {
+        out.writeByte(FILE);
+        out.writeInt(id);
+        out.writeUTF(path);
+        out.flush();
+    }
+
+    static void writeSequencesRequest(DataOutputStream out, int id, Map<String, IrSequence> sequences, double frequency) throws IOException {
+        out.writeByte(SEQUENCES);
+        out.writeInt(id);
+        out.writeInt((int) Math.round(frequency));
+        writeVarint(out, sequences.size());
+        for (Map.Entry<String, IrSequence> kvp : sequences.entrySet()) {
+            out.writeUTF(kvp.getKey());
+            IrSequence sequence = kvp.getValue();
+            writeVarint(out, sequence.getLength());
+            for (int i = 0; i < sequence.getLength(); i++)
+                writeVarint(out, Math.round(sequence.get(i)));
+        }
+        out.flush();
+    }
+
+    static void writeEnd(DataOutputStream out) throws IOException {
+        out.writeByte(END);
+        out.flush();
+    }
+
+    /**
+     * Reads the body of a SEQUENCES request, after type and id.
+     * @param in
+     * @return named sequences, in the order sent.
+     * @throws IOException
+     */
+    static Map<String, IrSequence> readSequences(DataInputStream in) throws IOException {
+        int count = readCount(in);
+        Map<String, IrSequence> sequences = new LinkedHashMap<>(2 * count);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            double[] durations = new double[readCount(in)];
+            for (int j = 0; j < durations.length; j++)
+                durations[j] = readVarint(in);
+            try {
+                sequences.put(name, new IrSequence(durations));
+            } catch (OddSequenceLengthException ex) {
+                throw new IOException("Odd sequence length for " + name);
+            }
+        }
+        return sequences;
+    }
+
+    static void writeResult(DataOutputStream out, int id, List<BatchAnalyzer.SignalResult> results) throws IOException {
+        out.writeByte(RESULT);
+        out.writeInt(id);
+        writeVarint(out, results.size());
+        for (BatchAnalyzer.SignalResult result : results) {
+            out.writeUTF(result.getName());
+            out.writeBoolean(result.getProtocol() != null);
+            if (result.getProtocol() != null)
+                out.writeUTF(result.getProtocol());
+            writeVarint(out, result.getParameters().size());
+            for (Map.Entry<String, String> kvp : result.getParameters().entrySet()) {
+                out.writeUTF(kvp.getKey());
+                out.writeUTF(kvp.getValue());
+            }
+        }
+        out.flush();
+    }
+
+    static void writeError(DataOutputStream out, int id, String message) throws IOException {
+        out.writeByte(ERROR);
+        out.writeInt(id);
+        out.writeUTF(message != null ? message : "");
+        out.flush();
+    }
+
+    /**
+     * A response, as read by the coordinator.
+     */
+    static class Response {
+
+        static Response read(DataInputStream in) throws IOException {
+            int type = in.read();
+            if (type < 0)
+                throw new EOFException("Worker ended");
+            int id = in.readInt();
+            switch (type) {
+                case RESULT:
+                    int count = readCount(in);
+                    List<BatchAnalyzer.SignalResult> results = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        String name = in.readUTF();
+                        String protocol = in.readBoolean() ? in.readUTF() : null;
+                        int parameterCount = readCount(in);
+                        Map<String, String> parameters = new LinkedHashMap<>(2 * parameterCount);
+                        for (int j = 0; j < parameterCount; j++)
+                            parameters.put(in.readUTF(), in.readUTF());
+                        results.add(new BatchAnalyzer.SignalResult(name, protocol, parameters));
+                    }
+                    return new Response(id, results, null);
+                case ERROR:
+                    return new Response(id, null, in.readUTF());
+                default:
+                    throw new IOException("Unknown response type " + type);
+            }
+        }
+
+        private final int id;
+        private final List<BatchAnalyzer.SignalResult> results;
+        private final String error;
+
+        private Response(int id, List<BatchAnalyzer.SignalResult> results, String error) {
+            this.id = id;
+            this.results = results;
+            this.error = error;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        /**
+         * @return the results, null for an error.
+         */
+        List<BatchAnalyzer.SignalResult> getResults() {
+            return results;
+        }
+
+        /**
+         * @return the error message, null if successful.
+         */
+        String getError() {
+            return error;
+        }
+    }
+
+    private WorkerProtocol() {
+    }
+}
@@ -0,0 +1,91 @@
+#!/bin/sh
+
+# Creates an AppCDS (class data sharing) archive for the fat jar, from a training run
+# importing and analyzing a capture file, compares the startup time with and without
+# the archive, and generates a launcher using the archive when present.
+# Requires JDK 13 or later (-XX:ArchiveClassesAtExit). Only POSIX shell and utilities are used.
+#
+# The archive is only used with the class path it was dumped with. Both the training run
+# and the launcher therefore use the jar by its canonical path, computed the same way (cd, pwd -P).
+#
+# Usage: appcds.sh jar training-file [runs]
+
+JAR="$1"
+TRAINING="$2"
+RUNS=${3:-5}
+MAINCLASS=org.harctoolbox.transmogrifiergui.Main
+
+if [ ! -f "${JAR}" ] ; then
+    echo "appcds: ${JAR} not found" >&2
+    exit 1
+fi
+
+TARGET=$(cd "$(dirname "${JAR}")" && pwd -P)
+JARNAME=$(basename "${JAR}")
+APPCP="${TARGET}/${JARNAME}"
+JSANAME=irptransmogrifiergui.jsa
+JSA="${TARGET}/${JSANAME}"
+LAUNCHER="${TARGET}/irptransmogrifiergui"
+JAVA=${JAVA:-java}
+
+rm -f "${JSA}"
+echo "appcds: training run on ${TRAINING}"
+if ! "${JAVA}" -XX:ArchiveClassesAtExit="${JSA}" -cp "${APPCP}" ${MAINCLASS} --training-run "${TRAINING}" > /dev/null ; then
+    echo "appcds: training run failed, no archive created" >&2
+    rm -f "${JSA}"
+fi
+
+# Prints the average wall time in ms of RUNS training runs, with the JVM options given,
+# using the POSIX time utility (seconds with two decimals).
+measure() {
+    REAL=$( { command time -p sh -c '
+        runs=$1
+        shift
+        i=0
+        while [ $i -lt "${runs}" ] ; do
+            "$@" > /dev/null 2>&1
+            i=$((i + 1))
+        done' sh "${RUNS}" "${JAVA}" "$@" -cp "${APPCP}" ${MAINCLASS} --training-run "${TRAINING}" ; } 2>&1 \
+        | awk '$1 == "real" { print $2 }')
+    awk -v real="${REAL}" -v runs="${RUNS}" 'BEGIN { printf "%d\n", real * 1000 / runs }'
+}
+
+if [ -f "${JSA}" ] ; then
+    if command time -p true > /dev/null 2>&1 ; then
+        BEFORE=$(measure -Xshare:auto)
+        AFTER=$(measure -XX:SharedArchiveFile="${JSA}" -Xshare:auto)
+        echo "appcds: startup + import + analysis, average of ${RUNS} runs:"
+        echo "appcds:   without archive: ${BEFORE} ms"
+        echo "appcds:   with archive:    ${AFTER} ms"
+    else
+        echo "appcds: no time utility, startup times not measured"
+    fi
+fi
+
+cat > "${LAUNCHER}" <<LAUNCHER_EOF
+#!/bin/sh
+
+# Launcher for IrpTransmogrifier-GUI; uses the class data sharing archive if present.
+# The archive matches only when the jar is found at the path it was created with.
+
+SELF="\$0"
+while [ -h "\${SELF}" ] ; do
+    LINK=\$(ls -ld "\${SELF}" | sed 's/.* -> //')
+    case "\${LINK}" in
+        /*) SELF="\${LINK}" ;;
+        *) SELF="\$(dirname "\${SELF}")/\${LINK}" ;;
+    esac
+done
+HERE=\$(cd "\$(dirname "\${SELF}")" && pwd -P)
+JAVA=\${JAVA:-java}
+JAR="\${HERE}/${JARNAME}"
+JSA="\${HERE}/${JSANAME}"
+
+if [ -f "\${JSA}" ] ; then
+    exec "\${JAVA}" -XX:SharedArchiveFile="\${JSA}" -Xshare:auto -cp "\${JAR}" ${MAINCLASS} "\$@"
+else
+    exec "\${JAVA}" -cp "\${JAR}" ${MAINCLASS} "\$@"
+fi
+LAUNCHER_EOF
+chmod +x "${LAUNCHER}"
+echo "appcds: created ${LAUNCHER}"